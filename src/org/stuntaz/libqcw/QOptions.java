@@ -41,6 +41,13 @@ public final class QOptions
      * Set to specify we're in a workspace context. This is true whenever
      * reading and writing QCW files and is false if reading and writing
      * QCL files, etc
+     * 
+     * @deprecated this flag is no longer consulted. The context is now
+     *             determined by the file being parsed, so workspaces and
+     *             layouts can be handled at the same time on any number of
+     *             threads. See
+     *             {@link org.stuntaz.libqcw.blobs.barchart.BarChartBlob#isWorkspaceContext()}.
      */
+    @Deprecated
     public static boolean WORKSPACE_CONTEXT = false;
 }
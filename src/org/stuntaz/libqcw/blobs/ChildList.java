@@ -0,0 +1,139 @@
+/*
+ * libqcw - A library for parsing, manipulating, and writing QCharts (TM) 
+ * workspace files.
+ *
+ * Copyright (C) 2008-2009 Jon Nall
+ * QCharts is a registered service mark of eSignal, Inc.
+ * RagingBull is a registered service mark of eSignal, Inc.
+ *
+ * Licensed under the Open Software License version 3.0 (the "License"); you
+ * may not use this file except in compliance with the License. You should
+ * have received a copy of the License along with this software; if not, you
+ * may obtain a copy of the License at
+ *
+ * http://opensource.org/licenses/osl-3.0.php
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package org.stuntaz.libqcw.blobs;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * A list of child objects owned by a {@link QRecord} or {@link QSection}.
+ * Every modification of the list, whether made directly or through an
+ * iterator or sub-list, invalidates the cached size of the owner (and its
+ * parents), and elements added to the list are adopted by the owner so that
+ * later changes to them are propagated as well.
+ * 
+ * @author nall
+ *
+ * @param <E> the type of child held in this list
+ */
+public final class ChildList<E>
+    extends AbstractList<E>
+    implements RandomAccess
+{
+    private final QPrimitive owner;
+    private final ArrayList<E> elements;
+
+    /**
+     * Creates a new, empty list of children for the specified record.
+     * 
+     * @param owner the record that owns the elements of this list
+     */
+    public ChildList(final QPrimitive owner)
+    {
+        this.owner = owner;
+        this.elements = new ArrayList<E>();
+    }
+
+    /**
+     * Ensures this list can hold the specified number of children without
+     * growing. This is useful when the number of children is read from the
+     * file before the children themselves.
+     * 
+     * @param capacity the number of children expected
+     */
+    public void ensureCapacity(final int capacity)
+    {
+        elements.ensureCapacity(capacity);
+    }
+
+    /**
+     * Replaces the contents of this list with the specified children. This is
+     * safe to call with this list itself.
+     * 
+     * @param children the new children for this list
+     */
+    public void setAll(final List<? extends E> children)
+    {
+        if (children == this) return;
+
+        final List<E> copy = new ArrayList<E>(children);
+        clear();
+        addAll(copy);
+    }
+
+    /**
+     * Returns the number of structural changes made to this list so far.
+     * Owners that keep state derived from the list can compare it against a
+     * previous value to tell whether that state is still current.
+     * 
+     * @return the modification count of this list
+     */
+    public int getModCount()
+    {
+        return modCount;
+    }
+
+    @Override
+    public E get(final int index)
+    {
+        return elements.get(index);
+    }
+
+    @Override
+    public int size()
+    {
+        return elements.size();
+    }
+
+    @Override
+    public E set(final int index, final E element)
+    {
+        final E old = elements.set(index, owner.adopt(element));
+        ++modCount;
+        return old;
+    }
+
+    @Override
+    public void add(final int index, final E element)
+    {
+        elements.add(index, owner.adopt(element));
+        ++modCount;
+    }
+
+    @Override
+    public E remove(final int index)
+    {
+        final E old = elements.remove(index);
+        owner.invalidateSize();
+        ++modCount;
+        return old;
+    }
+
+    @Override
+    public void clear()
+    {
+        elements.clear();
+        owner.invalidateSize();
+        ++modCount;
+    }
+}
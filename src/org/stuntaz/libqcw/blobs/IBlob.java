@@ -23,6 +23,7 @@ package org.stuntaz.libqcw.blobs;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 /**
  * This class represents a generic object as parsed in QCW files. These objects
@@ -60,4 +61,34 @@ public interface IBlob
      */
     public abstract void write(final OutputStream output)
         throws IOException;
-}
\ No newline at end of file
+
+    /**
+     * Parse this object from the given buffer, starting at its current
+     * position. The buffer must be in little endian byte order. On return the
+     * buffer is positioned just past this object.
+     * 
+     * @param buffer the buffer from which to read
+     */
+    public abstract void parse(final ByteBuffer buffer);
+
+    /**
+     * Writes this object to the given buffer at its current position. The
+     * buffer must be in little endian byte order and have at least
+     * {@link #getSize()} bytes remaining.
+     * 
+     * @param buffer the buffer to which to write
+     */
+    public abstract void write(final ByteBuffer buffer);
+
+    /**
+     * Returns a hash of the content of this object. Objects of the same type
+     * which would be written identically have the same hash, and any change
+     * to an object or one of its children changes its hash (barring an
+     * unlikely collision), so two objects can be compared, or an object
+     * checked for changes, by comparing hashes. The hash is cached and only
+     * recomputed for the parts of a tree that changed.
+     * 
+     * @return the content hash of this object
+     */
+    public abstract long getContentHash();
+}
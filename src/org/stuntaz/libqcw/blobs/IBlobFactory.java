@@ -0,0 +1,41 @@
+/*
+ * libqcw - A library for parsing, manipulating, and writing QCharts (TM) 
+ * workspace files.
+ *
+ * Copyright (C) 2008-2009 Jon Nall
+ * QCharts is a registered service mark of eSignal, Inc.
+ * RagingBull is a registered service mark of eSignal, Inc.
+ *
+ * Licensed under the Open Software License version 3.0 (the "License"); you
+ * may not use this file except in compliance with the License. You should
+ * have received a copy of the License along with this software; if not, you
+ * may obtain a copy of the License at
+ *
+ * http://opensource.org/licenses/osl-3.0.php
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package org.stuntaz.libqcw.blobs;
+
+/**
+ * Creates the blob used to decode a given type of section, study or line.
+ * Factories are registered with {@link QCodecRegistry}.
+ * 
+ * @author nall
+ *
+ * @param <T> the type of blob created
+ */
+public interface IBlobFactory<T>
+{
+    /**
+     * Creates a new, unparsed blob for the specified type. The caller parses
+     * it from the file.
+     * 
+     * @param type the type code read from the file
+     * @return a new blob capable of parsing {@code type}
+     */
+    public T create(final int type);
+}
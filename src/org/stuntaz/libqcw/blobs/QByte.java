@@ -23,6 +23,7 @@ package org.stuntaz.libqcw.blobs;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 /**
  * Class representing a 1 byte value as it exists in the file format. There
@@ -95,6 +96,14 @@ public final class QByte
         QUtils.writeQByte(getValue(), output);
     }
 
+    @Override
+    public void write(final ByteBuffer buffer)
+    {
+        if (!isValid()) return;
+
+        QUtils.writeQByte(getValue(), buffer);
+    }
+
     @Override
     protected char getHeaderType()
     {
@@ -106,4 +115,9 @@ public final class QByte
     {
         setValue(QUtils.readQByte(stream));
     }
+
+    public void parse(final ByteBuffer buffer)
+    {
+        setValue(QUtils.readQByte(buffer));
+    }
 }
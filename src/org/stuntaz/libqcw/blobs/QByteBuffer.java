@@ -23,6 +23,7 @@ package org.stuntaz.libqcw.blobs;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 import org.stuntaz.libqcw.QCWException;
 
@@ -126,6 +127,29 @@ public final class QByteBuffer
         output.write(value, 0, byteCount);
     }
 
+    @Override
+    public void write(final ByteBuffer buffer)
+    {
+        if (!isValid()) return;
+
+        super.write(buffer);
+
+        final int byteCount;
+        if (getHeaderType() == QDefines.QBYTE_BUFFER_TYPE8)
+        {
+            QUtils.writeByte(value.length, buffer);
+            byteCount = getInternalSize() - 1;
+        }
+        else
+        {
+            assert (getHeaderType() == QDefines.QBYTE_BUFFER_TYPE16);
+            QUtils.writeWord(value.length, buffer);
+            byteCount = getInternalSize() - 2;
+        }
+
+        buffer.put(value, 0, byteCount);
+    }
+
     @Override
     protected char getHeaderType()
     {
@@ -166,4 +190,29 @@ public final class QByteBuffer
 
         setValue(bytes);
     }
-}
+
+    public void parse(final ByteBuffer buffer)
+    {
+        final int type = QUtils.readByte(buffer);
+
+        final int length;
+        if (type == QDefines.QBYTE_BUFFER_TYPE8)
+        {
+            length = QUtils.readByte(buffer);
+        }
+        else if (type == QDefines.QBYTE_BUFFER_TYPE16)
+        {
+            length = QUtils.readWord(buffer);
+        }
+        else
+        {
+            throw new QCWException("Unsupported Byte Buffer Type: 0x"
+                + Integer.toHexString(type));
+        }
+
+        final byte[] bytes = new byte[length];
+        buffer.get(bytes);
+
+        setValue(bytes);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,403 @@
+/*
+ * libqcw - A library for parsing, manipulating, and writing QCharts (TM) 
+ * workspace files.
+ *
+ * Copyright (C) 2008-2009 Jon Nall
+ * QCharts is a registered service mark of eSignal, Inc.
+ * RagingBull is a registered service mark of eSignal, Inc.
+ *
+ * Licensed under the Open Software License version 3.0 (the "License"); you
+ * may not use this file except in compliance with the License. You should
+ * have received a copy of the License along with this software; if not, you
+ * may obtain a copy of the License at
+ *
+ * http://opensource.org/licenses/osl-3.0.php
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package org.stuntaz.libqcw.blobs;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.stuntaz.libqcw.blobs.barchart.BarChartSectionBlob;
+import org.stuntaz.libqcw.blobs.barchart.ILineBlob;
+import org.stuntaz.libqcw.blobs.barchart.IStudyBlob;
+import org.stuntaz.libqcw.blobs.barchart.LineHeaderBlob;
+import org.stuntaz.libqcw.blobs.barchart.UnsupportedLineBlob;
+import org.stuntaz.libqcw.blobs.barchart.VolumeStudyBlob;
+import org.stuntaz.libqcw.blobs.browser.BrowserBlob;
+import org.stuntaz.libqcw.blobs.hotlist.HotlistBlob;
+import org.stuntaz.libqcw.blobs.islandbook.IslandBookBlob;
+import org.stuntaz.libqcw.blobs.level2.Level2Blob;
+import org.stuntaz.libqcw.blobs.optionsmontage.OptionsMontageBlob;
+import org.stuntaz.libqcw.blobs.quotesheet.QuotesheetBlob;
+import org.stuntaz.libqcw.blobs.ragingbull.RagingBullBlob;
+import org.stuntaz.libqcw.blobs.singlequote.SingleQuoteBlob;
+import org.stuntaz.libqcw.blobs.tabularbar.TabularBarBlob;
+import org.stuntaz.libqcw.blobs.timeandsales.TimeAndSalesBlob;
+import org.stuntaz.libqcw.defines.QLineType;
+import org.stuntaz.libqcw.defines.QStudyType;
+import org.stuntaz.libqcw.defines.QWorkspaceSection;
+
+/**
+ * The registry of blobs used to decode sections, studies and lines, keyed by
+ * the type code stored in the file. Codes need not have a constant in
+ * {@link QWorkspaceSection}, {@link QStudyType} or {@link QLineType}; the
+ * methods taking those enumerations are only a convenience.
+ * 
+ * Every section and line type libqcw knows about is registered by default,
+ * as is the volume study. Tools which decode more of the format can register
+ * their own factories, replacing the defaults or adding new type codes,
+ * before parsing. For example:
+ * 
+ * <pre>
+ * QCodecRegistry.registerStudy(QStudyType.MovingAverage,
+ *     new IBlobFactory&lt;IStudyBlob&gt;()
+ *     {
+ *         public IStudyBlob create(final int type)
+ *         {
+ *             return new MovingAverageBlob();
+ *         }
+ *     });
+ * </pre>
+ * 
+ * Studies and lines without a factory are decoded as
+ * {@link org.stuntaz.libqcw.blobs.barchart.UnsupportedStudyBlob} and
+ * {@link UnsupportedLineBlob}, which keep their bytes and type code. A
+ * section without a factory cannot be decoded, since its extent is only
+ * known to its blob.
+ * 
+ * Registration is thread safe, but a file being parsed while a factory is
+ * registered may be decoded with either the old or the new factory.
+ * 
+ * @author nall
+ *
+ */
+public final class QCodecRegistry
+{
+    private static volatile Map<Integer, IBlobFactory<? extends QSection>> sections = new HashMap<Integer, IBlobFactory<? extends QSection>>();
+    private static volatile Map<Integer, IBlobFactory<? extends IStudyBlob>> studies = new HashMap<Integer, IBlobFactory<? extends IStudyBlob>>();
+    private static volatile Map<Integer, IBlobFactory<? extends ILineBlob>> lines = new HashMap<Integer, IBlobFactory<? extends ILineBlob>>();
+
+    static
+    {
+        registerSection(QWorkspaceSection.BarChart,
+            new IBlobFactory<QSection>()
+            {
+                public QSection create(final int type)
+                {
+                    return new BarChartSectionBlob();
+                }
+            });
+        registerSection(QWorkspaceSection.TimeAndSales,
+            new IBlobFactory<QSection>()
+            {
+                public QSection create(final int type)
+                {
+                    return new TimeAndSalesBlob();
+                }
+            });
+        registerSection(QWorkspaceSection.TabularBar,
+            new IBlobFactory<QSection>()
+            {
+                public QSection create(final int type)
+                {
+                    return new TabularBarBlob();
+                }
+            });
+        registerSection(QWorkspaceSection.QuoteSheet,
+            new IBlobFactory<QSection>()
+            {
+                public QSection create(final int type)
+                {
+                    return new QuotesheetBlob();
+                }
+            });
+        registerSection(QWorkspaceSection.Browser,
+            new IBlobFactory<QSection>()
+            {
+                public QSection create(final int type)
+                {
+                    return new BrowserBlob();
+                }
+            });
+        registerSection(QWorkspaceSection.LevelII,
+            new IBlobFactory<QSection>()
+            {
+                public QSection create(final int type)
+                {
+                    return new Level2Blob();
+                }
+            });
+        registerSection(QWorkspaceSection.HotList,
+            new IBlobFactory<QSection>()
+            {
+                public QSection create(final int type)
+                {
+                    return new HotlistBlob();
+                }
+            });
+        registerSection(QWorkspaceSection.SingleQuote,
+            new IBlobFactory<QSection>()
+            {
+                public QSection create(final int type)
+                {
+                    return new SingleQuoteBlob();
+                }
+            });
+        registerSection(QWorkspaceSection.IslandBook,
+            new IBlobFactory<QSection>()
+            {
+                public QSection create(final int type)
+                {
+                    return new IslandBookBlob();
+                }
+            });
+        registerSection(QWorkspaceSection.OptionsMontage,
+            new IBlobFactory<QSection>()
+            {
+                public QSection create(final int type)
+                {
+                    return new OptionsMontageBlob();
+                }
+            });
+        registerSection(QWorkspaceSection.RagingBull,
+            new IBlobFactory<QSection>()
+            {
+                public QSection create(final int type)
+                {
+                    return new RagingBullBlob();
+                }
+            });
+
+        registerStudy(QStudyType.Volume,
+            new IBlobFactory<IStudyBlob>()
+            {
+                public IStudyBlob create(final int type)
+                {
+                    return new VolumeStudyBlob();
+                }
+            });
+
+        final IBlobFactory<ILineBlob> lineHeader = new IBlobFactory<ILineBlob>()
+        {
+            public ILineBlob create(final int type)
+            {
+                return new LineHeaderBlob(QLineType.forValue(type));
+            }
+        };
+        final IBlobFactory<ILineBlob> unsupportedLine = new IBlobFactory<ILineBlob>()
+        {
+            public ILineBlob create(final int type)
+            {
+                return new UnsupportedLineBlob(type);
+            }
+        };
+        for (final QLineType type : QLineType.values())
+        {
+            switch (type)
+            {
+            case BasicLine:
+            case Note:
+                registerLine(type, lineHeader);
+                break;
+            case Retracement:
+            case Projection:
+            case Fibonacci_Extension:
+            case Fibonacci_Time_Interval:
+            case Fibonacci_Circles:
+            case Fibonacci_Time_Cycles:
+            case Time_Cycles:
+            case Regression_Line:
+            case Andrews_Pitchfork:
+            case Andrews_Pitchfork_Modified_Schiff:
+            case Andrews_Pitchfork_Inside:
+            case Pitchfan:
+                registerLine(type, unsupportedLine);
+                break;
+            default:
+                break;
+            }
+        }
+    }
+
+    private QCodecRegistry()
+    {
+        // Only static methods
+    }
+
+    /**
+     * Registers the factory used to create sections with the specified type
+     * code, replacing any previous factory.
+     * 
+     * @param type the type code of the section
+     * @param factory the factory creating blobs for that type
+     */
+    public static synchronized void registerSection(
+        final int type,
+        final IBlobFactory<? extends QSection> factory)
+    {
+        final Map<Integer, IBlobFactory<? extends QSection>> copy = new HashMap<Integer, IBlobFactory<? extends QSection>>(
+            sections);
+        copy.put(Integer.valueOf(type), factory);
+        sections = copy;
+    }
+
+    /**
+     * Registers the factory used to create sections of the specified type,
+     * replacing any previous factory.
+     * 
+     * @param type the type of section
+     * @param factory the factory creating blobs for that type
+     */
+    public static void registerSection(
+        final QWorkspaceSection type,
+        final IBlobFactory<? extends QSection> factory)
+    {
+        registerSection(type.getValue(), factory);
+    }
+
+    /**
+     * Registers the factory used to create studies with the specified type
+     * code, replacing any previous factory.
+     * 
+     * @param type the type code of the study
+     * @param factory the factory creating blobs for that type
+     */
+    public static synchronized void registerStudy(
+        final int type,
+        final IBlobFactory<? extends IStudyBlob> factory)
+    {
+        final Map<Integer, IBlobFactory<? extends IStudyBlob>> copy = new HashMap<Integer, IBlobFactory<? extends IStudyBlob>>(
+            studies);
+        copy.put(Integer.valueOf(type), factory);
+        studies = copy;
+    }
+
+    /**
+     * Registers the factory used to create studies of the specified type,
+     * replacing any previous factory.
+     * 
+     * @param type the type of study
+     * @param factory the factory creating blobs for that type
+     */
+    public static void registerStudy(
+        final QStudyType type,
+        final IBlobFactory<? extends IStudyBlob> factory)
+    {
+        registerStudy(type.getValue(), factory);
+    }
+
+    /**
+     * Registers the factory used to create lines with the specified type
+     * code, replacing any previous factory.
+     * 
+     * @param type the type code of the line
+     * @param factory the factory creating blobs for that type
+     */
+    public static synchronized void registerLine(
+        final int type,
+        final IBlobFactory<? extends ILineBlob> factory)
+    {
+        final Map<Integer, IBlobFactory<? extends ILineBlob>> copy = new HashMap<Integer, IBlobFactory<? extends ILineBlob>>(
+            lines);
+        copy.put(Integer.valueOf(type), factory);
+        lines = copy;
+    }
+
+    /**
+     * Registers the factory used to create lines of the specified type,
+     * replacing any previous factory.
+     * 
+     * @param type the type of line
+     * @param factory the factory creating blobs for that type
+     */
+    public static void registerLine(
+        final QLineType type,
+        final IBlobFactory<? extends ILineBlob> factory)
+    {
+        registerLine(type.getValue(), factory);
+    }
+
+    /**
+     * Creates a new section with the specified type code.
+     * 
+     * @param type the type code of the section
+     * @return a new section, or null if no factory is registered for
+     *      {@code type}
+     */
+    public static QSection createSection(final int type)
+    {
+        final IBlobFactory<? extends QSection> factory = sections.get(Integer
+            .valueOf(type));
+        return (factory == null) ? null : factory.create(type);
+    }
+
+    /**
+     * Creates a new section of the specified type.
+     * 
+     * @param type the type of section
+     * @return a new section, or null if no factory is registered for
+     *      {@code type}
+     */
+    public static QSection createSection(final QWorkspaceSection type)
+    {
+        return createSection(type.getValue());
+    }
+
+    /**
+     * Creates a new study with the specified type code.
+     * 
+     * @param type the type code of the study
+     * @return a new study, or null if no factory is registered for
+     *      {@code type}
+     */
+    public static IStudyBlob createStudy(final int type)
+    {
+        final IBlobFactory<? extends IStudyBlob> factory = studies.get(Integer
+            .valueOf(type));
+        return (factory == null) ? null : factory.create(type);
+    }
+
+    /**
+     * Creates a new study of the specified type.
+     * 
+     * @param type the type of study
+     * @return a new study, or null if no factory is registered for
+     *      {@code type}
+     */
+    public static IStudyBlob createStudy(final QStudyType type)
+    {
+        return createStudy(type.getValue());
+    }
+
+    /**
+     * Creates a new line with the specified type code.
+     * 
+     * @param type the type code of the line
+     * @return a new line, or null if no factory is registered for
+     *      {@code type}
+     */
+    public static ILineBlob createLine(final int type)
+    {
+        final IBlobFactory<? extends ILineBlob> factory = lines.get(Integer
+            .valueOf(type));
+        return (factory == null) ? null : factory.create(type);
+    }
+
+    /**
+     * Creates a new line of the specified type.
+     * 
+     * @param type the type of line
+     * @return a new line, or null if no factory is registered for
+     *      {@code type}
+     */
+    public static ILineBlob createLine(final QLineType type)
+    {
+        return createLine(type.getValue());
+    }
+}
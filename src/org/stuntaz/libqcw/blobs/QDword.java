@@ -23,6 +23,7 @@ package org.stuntaz.libqcw.blobs;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 /**
  * Class representing a 4 byte value as it exists in the file format. There
@@ -96,6 +97,14 @@ public final class QDword
         QUtils.writeQDword(getValue(), output);
     }
 
+    @Override
+    public void write(final ByteBuffer buffer)
+    {
+        if (!isValid()) return;
+
+        QUtils.writeQDword(getValue(), buffer);
+    }
+
     @Override
     protected char getHeaderType()
     {
@@ -108,4 +117,9 @@ public final class QDword
         setValue(QUtils.readQDword(stream));
     }
 
+    public void parse(final ByteBuffer buffer)
+    {
+        setValue(QUtils.readQDword(buffer));
+    }
+
 }
\ No newline at end of file
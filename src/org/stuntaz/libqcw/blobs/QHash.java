@@ -0,0 +1,119 @@
+/*
+ * libqcw - A library for parsing, manipulating, and writing QCharts (TM) 
+ * workspace files.
+ *
+ * Copyright (C) 2008-2009 Jon Nall
+ * QCharts is a registered service mark of eSignal, Inc.
+ * RagingBull is a registered service mark of eSignal, Inc.
+ *
+ * Licensed under the Open Software License version 3.0 (the "License"); you
+ * may not use this file except in compliance with the License. You should
+ * have received a copy of the License along with this software; if not, you
+ * may obtain a copy of the License at
+ *
+ * http://opensource.org/licenses/osl-3.0.php
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package org.stuntaz.libqcw.blobs;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * The 64-bit hash used for the content hashes of blobs (see
+ * {@link IBlob#getContentHash()}). A hash is started from {@link #SEED},
+ * values are added with {@link #mix(long, long)} and the result is produced
+ * with {@link #finish(long)}:
+ * 
+ * <pre>
+ * long h = QHash.SEED;
+ * h = QHash.mix(h, child.getContentHash());
+ * h = QHash.mix(h, someValue);
+ * return QHash.finish(h);
+ * </pre>
+ * 
+ * The mixing steps are those of MurmurHash3. The hash is not cryptographic:
+ * it detects changes, but can be forced to collide by someone who wants to.
+ * 
+ * @author nall
+ *
+ */
+public final class QHash
+{
+    /**
+     * The initial value of a hash.
+     */
+    public static final long SEED = 0x9E3779B97F4A7C15L;
+
+    private static final long C1 = 0x87C37B91114253D5L;
+    private static final long C2 = 0x4CF5AD432745937FL;
+
+    private QHash()
+    {
+        // Do nothing
+    }
+
+    /**
+     * Adds a value to a hash.
+     * 
+     * @param hash the hash so far
+     * @param value the value to add
+     * @return the new hash
+     */
+    public static long mix(final long hash, final long value)
+    {
+        long k = value * C1;
+        k = Long.rotateLeft(k, 31);
+        k *= C2;
+
+        long h = hash ^ k;
+        h = Long.rotateLeft(h, 27);
+        return h * 5 + 0x52DCE729;
+    }
+
+    /**
+     * Finishes a hash, spreading every bit of it across the result.
+     * 
+     * @param hash the hash so far
+     * @return the final hash
+     */
+    public static long finish(final long hash)
+    {
+        long h = hash;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Returns the hash of the remaining bytes of the specified buffer. The
+     * position of the buffer is not changed.
+     * 
+     * @param bytes the bytes to hash
+     * @return the hash of the bytes
+     */
+    public static long hash(final ByteBuffer bytes)
+    {
+        final ByteBuffer b = bytes.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+
+        long h = mix(SEED, b.remaining());
+        while (b.remaining() >= 8)
+        {
+            h = mix(h, b.getLong());
+        }
+
+        long tail = 0;
+        for (int shift = 0; b.hasRemaining(); shift += 8)
+        {
+            tail |= (b.get() & 0xFFL) << shift;
+        }
+        return finish(mix(h, tail));
+    }
+}
@@ -22,6 +22,7 @@ package org.stuntaz.libqcw.blobs;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 /**
  * This class represents a base class for all primitive types as they exist
@@ -34,10 +35,15 @@ abstract class QPrimitive
     implements IBlob
 {
     private boolean valid = false;
+    private QPrimitive parent = null;
+    private int cachedSize = -1;
+    private long cachedHash;
+    private boolean hashValid = false;
 
     protected void setValid()
     {
         valid = true;
+        invalidateSize();
     }
 
     protected boolean isValid()
@@ -52,6 +58,109 @@ abstract class QPrimitive
      */
     protected abstract int getInternalSize();
 
+    /**
+     * Returns the size of this QPrimitive without header information. The
+     * size is computed with {@link #getInternalSize()} the first time it is
+     * requested and cached until {@link #invalidateSize()} is called.
+     */
+    protected final int getCachedSize()
+    {
+        if (cachedSize < 0)
+        {
+            cachedSize = getInternalSize();
+        }
+        return cachedSize;
+    }
+
+    /**
+     * Discards the cached size of this object and of every object that
+     * contains it. Subclasses must call this whenever a change affects the
+     * value returned by {@link #getInternalSize()}.
+     */
+    protected void invalidateSize()
+    {
+        for (QPrimitive p = this; p != null; p = p.parent)
+        {
+            p.cachedSize = -1;
+            p.hashValid = false;
+        }
+    }
+
+    /**
+     * Discards the cached content hash of this object and of every object
+     * that contains it. Subclasses must call this whenever they change in a
+     * way that does not affect their size (otherwise
+     * {@link #invalidateSize()} takes care of it).
+     */
+    protected final void invalidateHash()
+    {
+        for (QPrimitive p = this; p != null; p = p.parent)
+        {
+            p.hashValid = false;
+        }
+    }
+
+    /**
+     * Returns the content hash of this object. The hash is computed with
+     * {@link #computeContentHash()} the first time it is requested and cached
+     * until this object or one of its children changes.
+     */
+    public final long getContentHash()
+    {
+        if (!hashValid)
+        {
+            cachedHash = computeContentHash();
+            hashValid = true;
+        }
+        return cachedHash;
+    }
+
+    /**
+     * Computes the content hash of this object. By default this is the hash
+     * of the bytes written by {@link #write(ByteBuffer)}. Objects with
+     * children should override this to combine the hashes of their children
+     * instead, so that a change to one child doesn't require the others to
+     * be hashed again.
+     * 
+     * @return the content hash of this object
+     */
+    protected long computeContentHash()
+    {
+        // Hash whatever is written, even if this object was never marked
+        // valid, so that no two different sections hash alike
+        return QHash.hash(QUtils.writeToBuffer(this, getSize()));
+    }
+
+    /**
+     * Returns the object that last adopted this one, or null if it has not
+     * been adopted.
+     * 
+     * @return the parent of this object
+     */
+    protected final IBlob getParent()
+    {
+        return parent;
+    }
+
+    /**
+     * Makes this object the parent of the specified child so that changes to
+     * the child's size invalidate this object's size as well. Objects that are
+     * not QPrimitives are returned unchanged. A child only notifies the last
+     * parent that adopted it.
+     * 
+     * @param child the child to adopt
+     * @return the child
+     */
+    protected final <T> T adopt(final T child)
+    {
+        if (child instanceof QPrimitive)
+        {
+            ((QPrimitive) child).parent = this;
+        }
+        invalidateSize();
+        return child;
+    }
+
     /**
      * Returns the number of bytes this object requires in a QCW/QCL format
      * 
@@ -68,4 +177,9 @@ abstract class QPrimitive
     {
         output.write(getHeaderType());
     }
+
+    public void write(final ByteBuffer buffer)
+    {
+        QUtils.writeByte(getHeaderType(), buffer);
+    }
 }
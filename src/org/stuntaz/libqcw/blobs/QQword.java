@@ -23,6 +23,7 @@ package org.stuntaz.libqcw.blobs;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 /**
  * Class representing an 8 byte value as it exists in the file format. There
@@ -113,6 +114,14 @@ public final class QQword
         QUtils.writeQQword(getValue(), output);
     }
 
+    @Override
+    public void write(final ByteBuffer buffer)
+    {
+        if (!isValid()) return;
+
+        QUtils.writeQQword(getValue(), buffer);
+    }
+
     @Override
     protected char getHeaderType()
     {
@@ -124,4 +133,9 @@ public final class QQword
     {
         setValue(QUtils.readQQword(stream));
     }
+
+    public void parse(final ByteBuffer buffer)
+    {
+        setValue(QUtils.readQQword(buffer));
+    }
 }
\ No newline at end of file
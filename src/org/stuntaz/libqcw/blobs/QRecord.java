@@ -23,11 +23,17 @@ package org.stuntaz.libqcw.blobs;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 /**
  * This class represents the base class of the record format. It is the class
  * from which all useful object model classes are derived.
  * 
+ * Records are parsed and written natively through {@link ByteBuffer}s. The
+ * {@link InputStream} and {@link OutputStream} methods are adapters that read
+ * a single record into a buffer, or write a record from a buffer,
+ * respectively.
+ * 
  * @author nall
  *
  */
@@ -37,26 +43,78 @@ public abstract class QRecord
     @Override
     public int getSize()
     {
-        return isValid() ? (getInternalSize() + QDefines.QRECORD_HEADER_SIZE)
+        return isValid() ? (getCachedSize() + QDefines.QRECORD_HEADER_SIZE)
             : 0;
     }
 
+    /**
+     * Parses this record from the given InputStream by reading exactly one
+     * record into a buffer and calling {@link #parse(ByteBuffer)}.
+     * 
+     * @param stream the stream from which to read
+     * @throws IOException if an I/O error occurs while reading
+     */
+    public final void parse(final InputStream stream)
+        throws IOException
+    {
+        parse(QUtils.readRecord(stream));
+    }
+
+    /**
+     * Writes this record to the given OutputStream by writing it to a buffer
+     * of its (cached) size with {@link #write(ByteBuffer)} and copying that
+     * buffer to the stream.
+     * 
+     * @param output the stream to which to write
+     * @throws IOException if an I/O error occurs while writing
+     */
     @Override
-    public void write(final OutputStream output)
+    public final void write(final OutputStream output)
         throws IOException
     {
-        super.write(output);
+        final ByteBuffer buffer = QUtils.writeToBuffer(this, getSize());
+        output.write(buffer.array(), 0, buffer.limit());
+    }
+
+    /**
+     * Writes this record in a single pass. The length field of the header is
+     * reserved, the body is written with {@link #writeBody(ByteBuffer)} and
+     * the length is then patched in from the number of bytes actually
+     * written, so the size of the record never has to be computed up front.
+     * 
+     * @param buffer the buffer to which to write
+     */
+    @Override
+    public void write(final ByteBuffer buffer)
+    {
+        super.write(buffer);
+
+        final int lengthOffset = buffer.position();
+        QUtils.writeDword(0, buffer);
+        final int bodyOffset = buffer.position();
+
+        writeBody(buffer);
 
-        QUtils.writeDword(getInternalSize(), output);
+        final int length = buffer.position() - bodyOffset;
+        buffer.putInt(lengthOffset, length);
+
+        assert (length == getCachedSize());
     }
 
-    protected int parseRecordHeader(final InputStream stream)
-        throws IOException
+    /**
+     * Writes the body of this record (everything following the record
+     * header) to the specified buffer.
+     * 
+     * @param buffer the buffer to which to write
+     */
+    protected abstract void writeBody(ByteBuffer buffer);
+
+    protected int parseRecordHeader(final ByteBuffer buffer)
     {
-        final int type = QUtils.readByte(stream);
+        final int type = QUtils.readByte(buffer);
         assert (type == getHeaderType());
 
-        final int size = (int) QUtils.readVal(4, stream);
+        final int size = (int) QUtils.readVal(4, buffer);
         return size;
     }
 
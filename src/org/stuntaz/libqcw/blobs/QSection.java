@@ -22,6 +22,7 @@ package org.stuntaz.libqcw.blobs;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 import org.stuntaz.libqcw.IWorkspaceVisitor;
 import org.stuntaz.libqcw.QCWException;
@@ -43,7 +44,7 @@ public abstract class QSection
     public int getSize()
     {
         // No headers on these guys
-        return getInternalSize();
+        return getCachedSize();
     }
 
     @Override
@@ -53,6 +54,12 @@ public abstract class QSection
         // Do nothing -- no type or header to write
     }
 
+    @Override
+    public void write(final ByteBuffer buffer)
+    {
+        // Do nothing -- no type or header to write
+    }
+
     @Override
     public final char getHeaderType()
     {
@@ -66,6 +73,18 @@ public abstract class QSection
      */
     public abstract QWorkspaceSection getSectionType();
 
+    /**
+     * Returns the type code of this section, as stored in the file. Sections
+     * registered for a code without a {@link QWorkspaceSection} constant
+     * override this and return null from {@link #getSectionType()}.
+     * 
+     * @return the section type code
+     */
+    public int getSectionTypeValue()
+    {
+        return getSectionType().getValue();
+    }
+
     /**
      * Accepts a workspace visitor per the visitor pattern.
      * 
@@ -39,16 +39,31 @@ import org.stuntaz.libqcw.QCWException;
  * include the NULL. This is the exceptional case and it is up to the user of
  * QStrings to make sure this mode is set appropriately.
  * 
+ * The bytes of a parsed string are kept as a view of the source buffer. They
+ * are only decoded into a {@link String} the first time {@link #getValue()}
+ * is called, and the result is cached. {@link #contentEquals(CharSequence)},
+ * {@link #equals(Object)} and {@link #hashCode()} work on the bytes directly,
+ * so matching strings does not require decoding them.
+ * 
  * @author nall
  *
  */
 public final class QString
     extends QPrimitive
 {
+    // The forms the data following the length may take
+    private static final int FORM_NONE = 0; // no data at all
+    private static final int FORM_NULL = 1; // a QByte holding the NULL
+    private static final int FORM_BUFFER = 2; // a QByteBuffer
+
     private int qlength;
-    private IBlob qbuf;
+    private int form = FORM_NONE;
+    private ByteBuffer bytes; // includes the trailing NULL
     private boolean goofyLengthMode = false;
 
+    private String decoded;
+    private int hash;
+
     /**
      * Creates a new, invalid QString
      */
@@ -75,8 +90,8 @@ public final class QString
      */
     public QString(final String value, final boolean goofyLengthMode)
     {
-        setValue(value);
         this.goofyLengthMode = goofyLengthMode;
+        setValue(value);
     }
 
     /**
@@ -102,7 +117,7 @@ public final class QString
     {
         assert (isValid());
 
-        if (qbuf instanceof QByte)
+        if (form == FORM_NULL)
         {
             return "";
         }
@@ -112,14 +127,18 @@ public final class QString
         }
         else
         {
-            assert (qbuf instanceof QByteBuffer);
-            final QByteBuffer qbb = (QByteBuffer) qbuf;
+            assert (form == FORM_BUFFER);
 
-            final byte[] bytes = qbb.getValue();
+            if (decoded == null)
+            {
+                final byte[] b = new byte[bytes.limit()];
+                view().get(b);
 
-            // Remove the NULL for the outside world
-            assert (bytes[bytes.length - 1] == 0);
-            return new String(bytes, 0, bytes.length - 1);
+                // Remove the NULL for the outside world
+                assert (b[b.length - 1] == 0);
+                decoded = new String(b, 0, b.length - 1);
+            }
+            return decoded;
         }
     }
 
@@ -133,46 +152,139 @@ public final class QString
      */
     public void setValue(final String value)
     {
-        if (goofyLengthMode)
+        decoded = null;
+        hash = 0;
+
+        if (goofyLengthMode && value == null)
+        {
+            qlength = 0;
+            form = FORM_NONE;
+            bytes = null;
+        }
+        else if (value == null || value.length() == 0)
+        {
+            qlength = 1;
+            form = FORM_NULL;
+            bytes = null;
+        }
+        else
+        {
+            final byte[] b = new byte[value.length() + 1];
+            System.arraycopy(value.getBytes(), 0, b, 0, value.length());
+            b[b.length - 1] = 0;
+
+            // In goofy mode the length does not include the trailing NULL
+            qlength = goofyLengthMode ? value.length() : value.length() + 1;
+            form = FORM_BUFFER;
+            bytes = QUtils.wrap(b);
+        }
+        setValid();
+    }
+
+    /**
+     * Returns true if this string has the same characters as the specified
+     * sequence. Strings made up of 7-bit characters are compared byte by byte
+     * without being decoded.
+     * 
+     * @param cs the sequence to compare against, which may be null
+     * @return true if {@link #getValue()} would equal {@code cs}
+     */
+    public boolean contentEquals(final CharSequence cs)
+    {
+        assert (isValid());
+
+        if (cs == null)
+        {
+            return getValue() == null;
+        }
+        else if (form != FORM_BUFFER)
+        {
+            return form == FORM_NULL && cs.length() == 0;
+        }
+        else if (decoded != null)
+        {
+            return decoded.contentEquals(cs);
+        }
+
+        final int length = bytes.limit() - 1;
+        if (length != cs.length())
+        {
+            return false;
+        }
+
+        for (int i = 0; i < length; ++i)
         {
-            if (value == null)
+            final int b = bytes.get(i) & 0xFF;
+            if (b >= 0x80)
             {
-                qlength = 0;
-                qbuf = null;
+                // Leave anything but 7-bit characters to the decoder
+                return getValue().contentEquals(cs);
             }
-            else if (value.length() == 0)
+            if (b != cs.charAt(i))
             {
-                qlength = 1;
-                qbuf = new QByte(0);
+                return false;
             }
-            else
-            {
-                final byte[] bytes = new byte[value.length() + 1];
-                System.arraycopy(value.getBytes(), 0, bytes, 0, value.length());
-                bytes[bytes.length - 1] = 0;
+        }
+        return true;
+    }
 
-                qlength = value.length() + 1;
-                qbuf = new QByteBuffer(bytes);
-            }
+    /**
+     * Returns true if the specified object is a QString with the same value.
+     * Both strings are compared byte by byte without being decoded.
+     * 
+     * @param o the object to compare against
+     * @return true if {@code o} is a QString with the same value
+     */
+    @Override
+    public boolean equals(final Object o)
+    {
+        if (o == this) return true;
+        if (!(o instanceof QString)) return false;
+
+        final QString other = (QString) o;
+        if (form != FORM_BUFFER || other.form != FORM_BUFFER)
+        {
+            final String value = getValue();
+            return (value == null) ? other.getValue() == null : value
+                .equals(other.getValue());
         }
-        else
+
+        return view().equals(other.view());
+    }
+
+    /**
+     * Returns a hash code for this string. For strings made up of 7-bit
+     * characters this is the same as the hash code of {@link #getValue()}, but
+     * it is computed without decoding the string.
+     * 
+     * @return a hash code for this string
+     */
+    @Override
+    public int hashCode()
+    {
+        if (hash == 0 && form == FORM_BUFFER)
         {
-            if (value == null || value.length() == 0)
-            {
-                qlength = 1;
-                qbuf = new QByte(0);
-            }
-            else
+            int h = 0;
+            final int length = bytes.limit() - 1;
+            for (int i = 0; i < length; ++i)
             {
-                final byte[] bytes = new byte[value.length() + 1];
-                System.arraycopy(value.getBytes(), 0, bytes, 0, value.length());
-                bytes[bytes.length - 1] = 0;
-
-                qlength = value.length() + 1;
-                qbuf = new QByteBuffer(bytes);
+                final int b = bytes.get(i) & 0xFF;
+                if (b >= 0x80)
+                {
+                    h = getValue().hashCode();
+                    break;
+                }
+                h = 31 * h + b;
             }
+            hash = h;
         }
-        setValid();
+        return hash;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.valueOf(getValue());
     }
 
     @Override
@@ -187,31 +299,74 @@ public final class QString
         // QStrings are comprised of a DWord and a ByteBuffer
         assert (isValid());
 
-        final int bufSize = (goofyLengthMode && qlength == 0) ? 0 : qbuf
-            .getSize();
+        final int bufSize;
+        switch (form)
+        {
+        case FORM_NULL:
+            bufSize = QUtils.getSize(QByte.class);
+            break;
+        case FORM_BUFFER:
+            bufSize = 1 + getLengthByteCount() + bytes.limit();
+            break;
+        default:
+            bufSize = 0;
+            break;
+        }
         return QUtils.getSize(QWord.class) + bufSize;
     }
 
+    private int getLengthByteCount()
+    {
+        final int length = bytes.limit();
+        return (length > 0 && length <= 0xFF) ? 1 : 2;
+    }
+
+    /**
+     * Returns a view of the bytes of this string, including the trailing
+     * NULL, positioned at the first byte.
+     */
+    private ByteBuffer view()
+    {
+        final ByteBuffer view = bytes.duplicate();
+        view.rewind();
+        return view;
+    }
+
     @Override
     public void write(final OutputStream output)
         throws IOException
     {
         if (!isValid()) return;
 
-        QUtils.writeQWord(qlength, output);
-        if (goofyLengthMode)
+        final ByteBuffer buffer = QUtils.allocate(getSize());
+        write(buffer);
+        output.write(buffer.array(), 0, buffer.position());
+    }
+
+    @Override
+    public void write(final ByteBuffer buffer)
+    {
+        if (!isValid()) return;
+
+        QUtils.writeQWord(qlength, buffer);
+        if (form == FORM_NULL)
         {
-            if (qlength > 0)
-            {
-                qbuf.write(output);
-            }
-            if (qlength == 1 && !(qbuf instanceof QByte))
-                throw new RuntimeException("hit");
+            QUtils.writeQByte(0, buffer);
         }
-        else
+        else if (form == FORM_BUFFER)
         {
-            assert (qlength > 0);
-            qbuf.write(output);
+            final int length = bytes.limit();
+            if (getLengthByteCount() == 1)
+            {
+                QUtils.writeByte(QDefines.QBYTE_BUFFER_TYPE8, buffer);
+                QUtils.writeByte(length, buffer);
+            }
+            else
+            {
+                QUtils.writeByte(QDefines.QBYTE_BUFFER_TYPE16, buffer);
+                QUtils.writeWord(length, buffer);
+            }
+            buffer.put(view());
         }
     }
 
@@ -224,63 +379,74 @@ public final class QString
     public void parse(final InputStream stream)
         throws IOException
     {
-        qlength = QUtils.readQWord(stream);
+        final int length = QUtils.readQWord(stream);
 
-        if (goofyLengthMode)
+        if (goofyLengthMode && length == 0)
         {
-            if (qlength == 0)
-            {
-                // There is no actual string data
-                qbuf = null;
-            }
-            else if (qlength == 1)
-            {
-                // Just a NULL byte
-                final QByte qb = new QByte(QUtils.readQByte(stream));
-                assert (qb.getValue() == 0);
-                qbuf = qb;
-            }
-            else
-            {
-                final QByteBuffer qbb = new QByteBuffer(QUtils
-                    .readQByteBuffer(stream));
-                final int byteLength = (qbb.getInternalSize() - qbb
-                    .getLengthByteCount());
+            // There is no actual string data
+            setParsed(length, FORM_NONE, null);
+        }
+        else if (length == 1)
+        {
+            // Just a NULL byte
+            final int nul = QUtils.readQByte(stream);
+            assert (nul == 0);
+            setParsed(length, FORM_NULL, null);
+        }
+        else
+        {
+            assert (length > 0);
+            setParsed(length, FORM_BUFFER, QUtils.wrap(QUtils
+                .readQByteBuffer(stream)));
+        }
+    }
 
-                if ((qlength + 1) != byteLength)
-                {
-                    throw new QCWException(
-                        "Unexpected difference while parsing QString [Goofy]");
-                }
-                qbuf = qbb;
-            }
+    public void parse(final ByteBuffer buffer)
+    {
+        final int length = QUtils.readQWord(buffer);
+
+        if (goofyLengthMode && length == 0)
+        {
+            // There is no actual string data
+            setParsed(length, FORM_NONE, null);
+        }
+        else if (length == 1)
+        {
+            // Just a NULL byte
+            final int nul = QUtils.readQByte(buffer);
+            assert (nul == 0);
+            setParsed(length, FORM_NULL, null);
         }
         else
         {
-            assert (qlength > 0);
-            if (qlength == 1)
-            {
-                // Just a NULL byte
-                final QByte qb = new QByte(QUtils.readQByte(stream));
-                assert (qb.getValue() == 0);
-                qbuf = qb;
-            }
-            else
-            {
-                final QByteBuffer qbb = new QByteBuffer(QUtils
-                    .readQByteBuffer(stream));
-                final int byteLength = (qbb.getInternalSize() - qbb
-                    .getLengthByteCount());
+            assert (length > 0);
+            setParsed(length, FORM_BUFFER, QUtils.readQByteBufferView(buffer));
+        }
+    }
 
-                if (qlength != byteLength)
-                {
-                    throw new QCWException(
-                        "Unexpected difference while parsing QString [Normal]");
-                }
-                qbuf = qbb;
+    private void setParsed(
+        final int length,
+        final int form,
+        final ByteBuffer bytes)
+    {
+        if (form == FORM_BUFFER)
+        {
+            // In goofy mode the length does not include the trailing NULL
+            final int expectedLength = goofyLengthMode ? (length + 1)
+                : length;
+            if (expectedLength != bytes.limit())
+            {
+                throw new QCWException("Unexpected difference while parsing QString ["
+                    + (goofyLengthMode ? "Goofy" : "Normal") + "]");
             }
         }
 
+        this.qlength = length;
+        this.form = form;
+        this.bytes = bytes;
+        this.decoded = null;
+        this.hash = 0;
+
         setValid();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,185 @@
+/*
+ * libqcw - A library for parsing, manipulating, and writing QCharts (TM) 
+ * workspace files.
+ *
+ * Copyright (C) 2008-2009 Jon Nall
+ * QCharts is a registered service mark of eSignal, Inc.
+ * RagingBull is a registered service mark of eSignal, Inc.
+ *
+ * Licensed under the Open Software License version 3.0 (the "License"); you
+ * may not use this file except in compliance with the License. You should
+ * have received a copy of the License along with this software; if not, you
+ * may obtain a copy of the License at
+ *
+ * http://opensource.org/licenses/osl-3.0.php
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package org.stuntaz.libqcw.blobs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * Converts between the 32-bit times found in the file format and Java times.
+ * 
+ * File times are the number of 2 second increments since Jan 1, 1801 00:00
+ * local standard time: QCharts does not apply daylight saving time, so an
+ * hour is subtracted from times which fall in daylight saving time.
+ * 
+ * Looking up daylight saving time through {@link Calendar} for each value is
+ * slow and allocates. Instead, the daylight saving time transitions of the
+ * time zone are computed once over the whole range of file times, and each
+ * conversion is a binary search over them which allocates nothing.
+ * 
+ * @author nall
+ *
+ */
+public final class QTime
+{
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+    private static final long MILLIS_PER_HOUR = 60L * 60 * 1000;
+
+    private final long epochSeconds;
+    private final boolean initialDst;
+    private final long[] transitions;
+
+    /**
+     * Creates a new QTime for the specified time zone. This computes the
+     * daylight saving time transitions of {@code zone}, which takes a few
+     * milliseconds, so instances should be reused.
+     * 
+     * @param zone the time zone in which file times are expressed
+     */
+    public QTime(final TimeZone zone)
+    {
+        final Calendar baseDate = Calendar.getInstance(zone);
+        baseDate.clear();
+        baseDate.set(1801, Calendar.JANUARY, 1, 0, 0);
+        epochSeconds = Math.abs(baseDate.getTimeInMillis() / 1000);
+
+        // Scan a day at a time and find each change to the millisecond
+        final long start = -epochSeconds * 1000;
+        final long end = start + (0x0FFFFFFFFL * 2 + 1) * 1000 + MILLIS_PER_DAY;
+        final List<Long> found = new ArrayList<Long>();
+
+        initialDst = zone.inDaylightTime(new Date(start));
+        boolean dst = initialDst;
+        for (long t = start + MILLIS_PER_DAY; t < end; t += MILLIS_PER_DAY)
+        {
+            if (zone.inDaylightTime(new Date(t)) != dst)
+            {
+                long lo = t - MILLIS_PER_DAY;
+                long hi = t;
+                while (hi - lo > 1)
+                {
+                    final long mid = lo + (hi - lo) / 2;
+                    if (zone.inDaylightTime(new Date(mid)) == dst)
+                    {
+                        lo = mid;
+                    }
+                    else
+                    {
+                        hi = mid;
+                    }
+                }
+                found.add(hi);
+                dst = !dst;
+            }
+        }
+
+        transitions = new long[found.size()];
+        for (int i = 0; i < transitions.length; ++i)
+        {
+            transitions[i] = found.get(i);
+        }
+    }
+
+    /**
+     * Returns the QTime for the default time zone. It is created the first
+     * time it is requested; later changes to the default time zone are not
+     * seen.
+     * 
+     * @return the QTime for the default time zone
+     */
+    public static QTime getDefault()
+    {
+        return DefaultHolder.INSTANCE;
+    }
+
+    /**
+     * Converts a file time to milliseconds since the Java epoch.
+     * 
+     * Note that while a long is used, the value should fit in 32 bits.
+     * 
+     * @param qtime the file time to convert
+     * @return the equivalent number of milliseconds since Jan 1, 1970 UTC
+     */
+    public long toMillis(final long qtime)
+    {
+        // Make sure we're not negative
+        final long seconds = (qtime & 0x0FFFFFFFFL) * 2 - epochSeconds;
+        final long millis = seconds * 1000;
+
+        return isDaylightTime(millis) ? millis - MILLIS_PER_HOUR : millis;
+    }
+
+    /**
+     * Converts milliseconds since the Java epoch to a file time.
+     * 
+     * Note that while a long is returned, the value will fit in 32 bits.
+     * 
+     * @param millis the number of milliseconds since Jan 1, 1970 UTC
+     * @return the equivalent file time
+     */
+    public long fromMillis(final long millis)
+    {
+        final long local = isDaylightTime(millis) ? millis + MILLIS_PER_HOUR
+            : millis;
+
+        return (local / 1000 + epochSeconds) / 2;
+    }
+
+    /**
+     * Converts a file time to a {@link Date}.
+     * 
+     * @param qtime the file time to convert
+     * @return a new Date for {@code qtime}
+     */
+    public Date toDate(final long qtime)
+    {
+        return new Date(toMillis(qtime));
+    }
+
+    /**
+     * Converts a {@link Date} to a file time.
+     * 
+     * @param date the date to convert
+     * @return the equivalent file time
+     */
+    public long fromDate(final Date date)
+    {
+        return fromMillis(date.getTime());
+    }
+
+    private boolean isDaylightTime(final long millis)
+    {
+        // Number of transitions at or before millis
+        int i = Arrays.binarySearch(transitions, millis);
+        i = (i >= 0) ? i + 1 : -(i + 1);
+
+        return initialDst ^ ((i & 1) != 0);
+    }
+
+    private static final class DefaultHolder
+    {
+        static final QTime INSTANCE = new QTime(TimeZone.getDefault());
+    }
+}
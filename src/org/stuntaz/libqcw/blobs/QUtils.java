@@ -20,16 +20,21 @@
 
 package org.stuntaz.libqcw.blobs;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.Calendar;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 import java.util.Date;
 
 import org.stuntaz.libqcw.QCWException;
 import org.stuntaz.libqcw.QOptions;
+import org.stuntaz.libqcw.defines.QWorkspaceSection;
 
 /**
  * A collection of static utility methods for helping to read, write, and
@@ -40,22 +45,10 @@ import org.stuntaz.libqcw.QOptions;
  */
 public final class QUtils
 {
-    private static byte[] readBuf = new byte[8];
-    private static byte[] writeBuf = new byte[8];
-
-    private static QByte _qbyte = new QByte(0);
-    private static QWord _qword = new QWord(0);
-    private static QDword _qdword = new QDword(0);
-    private static QQword _qqword = new QQword(0);
-
-    private static long qEpochSeconds;
-    static
-    {
-        final Calendar baseDate = Calendar.getInstance();
-        baseDate.clear();
-        baseDate.set(1801, Calendar.JANUARY, 1, 0, 0);
-        qEpochSeconds = Math.abs(baseDate.getTimeInMillis() / 1000);
-    }
+    private static final QByte _qbyte = new QByte(0);
+    private static final QWord _qword = new QWord(0);
+    private static final QDword _qdword = new QDword(0);
+    private static final QQword _qqword = new QQword(0);
 
     /**
      * Returns the size, in bytes, required by the specified class as it exists
@@ -135,6 +128,7 @@ public final class QUtils
 
         long value = 0;
 
+        final byte[] readBuf = new byte[numBytes];
         final int size = stream.read(readBuf, 0, numBytes);
         assert (size == numBytes);
 
@@ -177,6 +171,7 @@ public final class QUtils
                     .position()) + " Value: 0x" + Long.toHexString(value));
         }
 
+        final byte[] writeBuf = new byte[numBytes];
         for (int i = 0; i < numBytes; ++i)
         {
             writeBuf[i] = (byte) ((value >> (i * 8)) & 0xFF);
@@ -185,6 +180,510 @@ public final class QUtils
         output.write(writeBuf, 0, numBytes);
     }
 
+    /**
+     * Reads the specified number of bytes from the buffer and returns the
+     * value. The buffer must be in little endian byte order (see
+     * {@link #allocate(int)} and {@link #wrap(byte[])}).
+     * 
+     * @param numBytes the number of bytes to read (1, 2, 4 or 8)
+     * @param buffer the buffer from which to read
+     * @return the value read
+     */
+    public static long readVal(final int numBytes, final ByteBuffer buffer)
+    {
+        assert (buffer.order() == ByteOrder.LITTLE_ENDIAN);
+
+        if (QOptions.DEBUG_READ)
+        {
+            System.out.println("READING " + numBytes + " at 0x"
+                + Integer.toHexString(buffer.position()));
+        }
+
+        final long value;
+        switch (numBytes)
+        {
+        case 1:
+            value = buffer.get() & 0xFFL;
+            break;
+        case 2:
+            value = buffer.getShort() & 0xFFFFL;
+            break;
+        case 4:
+            value = buffer.getInt() & 0xFFFFFFFFL;
+            break;
+        case 8:
+            value = buffer.getLong();
+            break;
+        default:
+            throw new QCWException("Unsupported value size: " + numBytes);
+        }
+
+        if (QOptions.DEBUG_READ)
+        {
+            System.out.println("\t 0x" + Long.toHexString(value));
+        }
+
+        return value;
+    }
+
+    /**
+     * Writes the specified value in the specified number of bytes to the
+     * buffer. The buffer must be in little endian byte order (see
+     * {@link #allocate(int)} and {@link #wrap(byte[])}).
+     * 
+     * @param value the value to write
+     * @param numBytes the number of bytes to write (1, 2, 4 or 8)
+     * @param buffer the buffer to which to write
+     */
+    public static void writeVal(
+        final long value,
+        final int numBytes,
+        final ByteBuffer buffer)
+    {
+        assert (buffer.order() == ByteOrder.LITTLE_ENDIAN);
+
+        if (QOptions.DEBUG_WRITE)
+        {
+            System.out.println("WRITING " + numBytes + " at 0x"
+                + Integer.toHexString(buffer.position()) + " Value: 0x"
+                + Long.toHexString(value));
+        }
+
+        switch (numBytes)
+        {
+        case 1:
+            buffer.put((byte) value);
+            break;
+        case 2:
+            buffer.putShort((short) value);
+            break;
+        case 4:
+            buffer.putInt((int) value);
+            break;
+        case 8:
+            buffer.putLong(value);
+            break;
+        default:
+            throw new QCWException("Unsupported value size: " + numBytes);
+        }
+    }
+
+    /**
+     * Allocates a heap buffer of the specified capacity suitable for reading
+     * and writing the file format (that is, in little endian byte order).
+     * 
+     * @param capacity the capacity of the buffer in bytes
+     * @return a new, little endian buffer
+     */
+    public static ByteBuffer allocate(final int capacity)
+    {
+        return ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Wraps the specified bytes in a buffer suitable for reading the file
+     * format (that is, in little endian byte order).
+     * 
+     * @param bytes the bytes to wrap
+     * @return a little endian buffer backed by {@code bytes}
+     */
+    public static ByteBuffer wrap(final byte[] bytes)
+    {
+        return ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Maps the specified file into memory, read-only, as a buffer suitable for
+     * parsing. The mapping remains valid after this method returns, so the OS
+     * page cache serves the file directly without an intermediate copy.
+     * 
+     * Blobs parsed from the buffer may keep views of it, which keep the
+     * mapping alive. Some platforms (notably Windows) cannot replace or
+     * delete a mapped file, so files which will be written back should be
+     * read with {@link #read(File)} instead.
+     * 
+     * @param file the file to map
+     * @return a little endian buffer mapping the entire file
+     * @throws IOException if an I/O error occurs while mapping the file
+     */
+    public static ByteBuffer map(final File file)
+        throws IOException
+    {
+        final FileInputStream stream = new FileInputStream(file);
+        try
+        {
+            final FileChannel channel = stream.getChannel();
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        finally
+        {
+            stream.close();
+        }
+    }
+
+    /**
+     * Reads the specified file into a heap buffer suitable for parsing. Unlike
+     * {@link #map(File)}, nothing refers to the file afterwards, so it can be
+     * replaced while blobs parsed from the buffer are still in use.
+     * 
+     * @param file the file to read
+     * @return a little endian buffer containing the entire file
+     * @throws IOException if an I/O error occurs while reading the file
+     */
+    public static ByteBuffer read(final File file)
+        throws IOException
+    {
+        final FileInputStream stream = new FileInputStream(file);
+        try
+        {
+            return readFully(stream);
+        }
+        finally
+        {
+            stream.close();
+        }
+    }
+
+    /**
+     * Reads the remainder of the input stream into a buffer suitable for
+     * parsing.
+     * 
+     * @param stream the stream from which to read
+     * @return a little endian buffer containing the rest of the stream
+     * @throws IOException if an I/O error occurs while reading
+     */
+    public static ByteBuffer readFully(final InputStream stream)
+        throws IOException
+    {
+        byte[] bytes = new byte[Math.max(stream.available(), 8192)];
+        int length = 0;
+        int count;
+        while ((count = stream.read(bytes, length, bytes.length - length)) >= 0)
+        {
+            length += count;
+            if (length == bytes.length)
+            {
+                final byte[] grown = new byte[bytes.length * 2];
+                System.arraycopy(bytes, 0, grown, 0, length);
+                bytes = grown;
+            }
+        }
+
+        final ByteBuffer buffer = wrap(bytes);
+        buffer.limit(length);
+        return buffer;
+    }
+
+    /**
+     * Reads a single {@link QRecord}, including its header, from the input
+     * stream into a buffer suitable for passing to
+     * {@link QRecord#parse(ByteBuffer)}.
+     * 
+     * @param stream the stream from which to read
+     * @return a little endian buffer containing exactly one record
+     * @throws IOException if an I/O error occurs while reading
+     */
+    public static ByteBuffer readRecord(final InputStream stream)
+        throws IOException
+    {
+        final int type = readByte(stream);
+        final int size = (int) readVal(4, stream);
+
+        final ByteBuffer buffer = allocate(QDefines.QRECORD_HEADER_SIZE
+            + size);
+        writeByte(type, buffer);
+        writeDword(size, buffer);
+
+        int offset = buffer.position();
+        while (offset < buffer.capacity())
+        {
+            final int count = stream.read(buffer.array(), offset, buffer
+                .capacity()
+                - offset);
+            if (count < 0)
+            {
+                throw new QCWException("Unexpected end of stream in record");
+            }
+            offset += count;
+        }
+
+        buffer.rewind();
+        return buffer;
+    }
+
+    /**
+     * Reads the header of the record at the current position of the specified
+     * buffer, leaving the buffer positioned at the start of the record's body.
+     * 
+     * @param buffer the buffer positioned at the start of a record
+     * @return the size of the record's body in bytes
+     * @throws QCWException if there is no record at the current position
+     */
+    public static int readRecordHeader(final ByteBuffer buffer)
+    {
+        final int type = readByte(buffer);
+        if (type != QDefines.QRECORD_TYPE)
+        {
+            throw new QCWException("Expected record at offset 0x"
+                + Integer.toHexString(buffer.position() - 1) + " but found type 0x"
+                + Integer.toHexString(type));
+        }
+
+        return (int) readVal(4, buffer);
+    }
+
+    /**
+     * Advances the specified buffer past the record at its current position
+     * without decoding it.
+     * 
+     * @param buffer the buffer positioned at the start of a record
+     */
+    public static void skipRecord(final ByteBuffer buffer)
+    {
+        final int size = readRecordHeader(buffer);
+        buffer.position(buffer.position() + size);
+    }
+
+    /**
+     * Skips the records of a section with the specified type code. Sections
+     * with a {@link QWorkspaceSection} constant are skipped using its record
+     * count. Any other section is parsed with the blob registered for it in
+     * {@link QCodecRegistry}, since only that blob knows where it ends.
+     * 
+     * @param buffer the buffer positioned at the start of the section
+     * @param type the type code of the section
+     * @return the number of records in the section
+     * @throws QCWException if the section has no constant and no blob is
+     *      registered for it
+     */
+    public static int skipSection(final ByteBuffer buffer, final int type)
+    {
+        final QWorkspaceSection known = QWorkspaceSection.find(type);
+        if (known != null)
+        {
+            for (int r = 0; r < known.getRecordCount(); ++r)
+            {
+                skipRecord(buffer);
+            }
+            return known.getRecordCount();
+        }
+
+        final QSection section = QCodecRegistry.createSection(type);
+        if (section == null)
+        {
+            throw new QCWException("Unknown section type: 0x"
+                + Integer.toHexString(type));
+        }
+
+        final ByteBuffer view = buffer.duplicate().order(buffer.order());
+        section.parse(view);
+
+        int records = 0;
+        while (buffer.position() < view.position())
+        {
+            skipRecord(buffer);
+            ++records;
+        }
+        return records;
+    }
+
+    /**
+     * Returns a read-only, little endian view of the bytes of {@code buffer}
+     * between the specified offsets. No bytes are copied; the view shares the
+     * content of {@code buffer}.
+     * 
+     * @param buffer the buffer to view
+     * @param start the offset of the first byte of the view
+     * @param end the offset just past the last byte of the view
+     * @return a read-only buffer whose position is 0 and limit is
+     *      {@code end - start}
+     */
+    public static ByteBuffer slice(
+        final ByteBuffer buffer,
+        final int start,
+        final int end)
+    {
+        final ByteBuffer view = buffer.duplicate();
+        view.limit(end);
+        view.position(start);
+        return view.slice().asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Writes the specified blob into a new buffer in a single pass. The
+     * returned buffer is flipped, so it holds exactly the bytes written.
+     * Pass the blob's {@link IBlob#getSize()}, which is cached, as
+     * {@code capacityHint} so that the blob is written exactly once. If the
+     * hint turns out to be too small the capacity is doubled and the blob
+     * written again from the start.
+     * 
+     * @param blob the blob to write
+     * @param capacityHint the expected number of bytes
+     * @return a flipped, little endian buffer containing the written blob
+     */
+    public static ByteBuffer writeToBuffer(
+        final IBlob blob,
+        final int capacityHint)
+    {
+        int capacity = Math.max(capacityHint, 16);
+        while (true)
+        {
+            final ByteBuffer buffer = allocate(capacity);
+            try
+            {
+                blob.write(buffer);
+                buffer.flip();
+                return buffer;
+            }
+            catch (final BufferOverflowException e)
+            {
+                if (capacity > (Integer.MAX_VALUE >> 1))
+                {
+                    throw new QCWException("Blob too large to write");
+                }
+                capacity <<= 1;
+            }
+        }
+    }
+
+    /**
+     * Writes the remaining contents of the specified buffers, in order, to a
+     * file through a {@link FileChannel}, replacing any previous contents of
+     * the file. The data is written to a temporary file in the same directory
+     * which then replaces {@code file}, so {@code file} is never left
+     * partially written. On platforms which will not rename over an existing
+     * file, the existing file is first renamed to a backup, which is put back
+     * if the temporary file cannot take its place.
+     * 
+     * Symbolic links are followed, so the file they point to is replaced and
+     * the links are kept. The replacement is a new file, however: it does not
+     * share the hard links of the original, and it has the permissions and
+     * owner of a newly created file. If the file is read-only or the temporary
+     * file cannot be created (e.g. because the directory is not writable), the
+     * file is overwritten in place instead, without that guarantee.
+     * 
+     * @param file the file to which to write
+     * @param buffers the buffers to write
+     * @throws IOException if an I/O error occurs while writing, or if the
+     *      file cannot be replaced (e.g. because it is mapped on Windows; see
+     *      {@link #map(File)})
+     */
+    public static void writeFully(final File file, final ByteBuffer... buffers)
+        throws IOException
+    {
+        final File target = file.getCanonicalFile();
+        if (target.exists() && !target.canWrite())
+        {
+            writeInPlace(target, buffers);
+            return;
+        }
+
+        final File temp;
+        try
+        {
+            temp = File.createTempFile(tempPrefix(target), ".tmp", target
+                .getParentFile());
+        }
+        catch (final IOException e)
+        {
+            writeInPlace(target, buffers);
+            return;
+        }
+
+        boolean replaced = false;
+        try
+        {
+            writeInPlace(temp, buffers);
+
+            replaced = temp.renameTo(target)
+                || replaceWithBackup(target, temp);
+            if (!replaced)
+            {
+                throw new IOException("Unable to replace " + file);
+            }
+        }
+        finally
+        {
+            if (!replaced)
+            {
+                temp.delete();
+            }
+        }
+    }
+
+    private static void writeInPlace(
+        final File file,
+        final ByteBuffer... buffers)
+        throws IOException
+    {
+        final FileOutputStream output = new FileOutputStream(file);
+        try
+        {
+            final FileChannel channel = output.getChannel();
+            for (final ByteBuffer buffer : buffers)
+            {
+                while (buffer.hasRemaining())
+                {
+                    channel.write(buffer);
+                }
+            }
+        }
+        finally
+        {
+            output.close();
+        }
+    }
+
+    /**
+     * Returns the prefix of the temporary files created next to {@code file},
+     * which is long enough for {@link File#createTempFile(String, String)}
+     * even if the file's name is not.
+     */
+    private static String tempPrefix(final File file)
+    {
+        return "." + file.getName() + ".";
+    }
+
+    /**
+     * Replaces {@code file} with {@code replacement} on platforms which will
+     * not rename over an existing file. The original is never deleted before
+     * the replacement is in place.
+     * 
+     * @return true if {@code file} was replaced
+     */
+    private static boolean replaceWithBackup(
+        final File file,
+        final File replacement)
+        throws IOException
+    {
+        if (!file.exists()) return false;
+
+        final File backup = File.createTempFile(tempPrefix(file), ".bak", file
+            .getParentFile());
+        if (!backup.delete() || !file.renameTo(backup))
+        {
+            backup.delete();
+            return false;
+        }
+
+        if (!replacement.renameTo(file))
+        {
+            if (!backup.renameTo(file))
+            {
+                throw new IOException("Unable to replace " + file
+                    + "; the original was left in " + backup);
+            }
+            return false;
+        }
+
+        if (!backup.delete())
+        {
+            backup.deleteOnExit();
+        }
+        return true;
+    }
+
     /**
      * Read 1 bare (non-QByte) byte from the input stream.
      * 
@@ -235,6 +734,48 @@ public final class QUtils
         writeVal(value, 8, output);
     }
 
+    /**
+     * Read 1 bare (non-QByte) byte from the buffer.
+     * 
+     * @param buffer the buffer from which to read
+     * @return the value read
+     */
+    public static int readByte(final ByteBuffer buffer)
+    {
+        return (int) readVal(1, buffer);
+    }
+
+    /**
+     * Read 1 bare (non-QWord) word from the buffer.
+     * 
+     * @param buffer the buffer from which to read
+     * @return the value read
+     */
+    public static int readWord(final ByteBuffer buffer)
+    {
+        return (int) readVal(2, buffer);
+    }
+
+    static void writeByte(final long value, final ByteBuffer buffer)
+    {
+        writeVal(value, 1, buffer);
+    }
+
+    static void writeWord(final long value, final ByteBuffer buffer)
+    {
+        writeVal(value, 2, buffer);
+    }
+
+    static void writeDword(final long value, final ByteBuffer buffer)
+    {
+        writeVal(value, 4, buffer);
+    }
+
+    static void writeQword(final long value, final ByteBuffer buffer)
+    {
+        writeVal(value, 8, buffer);
+    }
+
     /**
      * Writes the value as a {@link QByte} to the specified output stream.
      * 
@@ -326,6 +867,83 @@ public final class QUtils
         writeQString(value, output, false);
     }
 
+    /**
+     * Writes the value as a {@link QByte} to the specified buffer.
+     * 
+     * @param value the value to write
+     * @param buffer the buffer to which to write
+     */
+    public static void writeQByte(final long value, final ByteBuffer buffer)
+    {
+        writeByte(QDefines.QBYTE_TYPE, buffer);
+        writeVal(value, 1, buffer);
+    }
+
+    /**
+     * Writes the value as a {@link QWord} to the specified buffer.
+     * 
+     * @param value the value to write
+     * @param buffer the buffer to which to write
+     */
+    public static void writeQWord(final long value, final ByteBuffer buffer)
+    {
+        writeByte(QDefines.QWORD_TYPE, buffer);
+        writeVal(value, 2, buffer);
+    }
+
+    /**
+     * Writes the value as a {@link QDword} to the specified buffer.
+     * 
+     * @param value the value to write
+     * @param buffer the buffer to which to write
+     */
+    public static void writeQDword(final long value, final ByteBuffer buffer)
+    {
+        writeByte(QDefines.QDWORD_TYPE, buffer);
+        writeVal(value, 4, buffer);
+    }
+
+    /**
+     * Writes the value as a {@link QQword} to the specified buffer.
+     * 
+     * @param value the value to write
+     * @param buffer the buffer to which to write
+     */
+    public static void writeQQword(final long value, final ByteBuffer buffer)
+    {
+        writeByte(QDefines.QQWORD_TYPE, buffer);
+        writeVal(value, 8, buffer);
+    }
+
+    /**
+     * Writes the value as a {@link QString} to the specified buffer.
+     * 
+     * @param value the value to write
+     * @param buffer the buffer to which to write
+     * @param goofyLengthMode whether to use the QString goofy mode when calculating
+     *        the length
+     */
+    public static void writeQString(
+        final String value,
+        final ByteBuffer buffer,
+        final boolean goofyLengthMode)
+    {
+        final QString string = new QString(value, goofyLengthMode);
+        string.write(buffer);
+    }
+
+    /**
+     * This is equivalent to {@link QUtils#writeQString(String, ByteBuffer, boolean)}
+     * with <code>goofyLengthMode</code> set to false.
+     * 
+     * @param value the value to write
+     * @param buffer the buffer to which to write
+     */
+    public static void writeQString(final String value, final ByteBuffer buffer)
+    {
+        writeQString(value, buffer, false);
+    }
+
     /**
      * Reads a {@link QByte} from the input stream.
      * 
@@ -438,50 +1056,151 @@ public final class QUtils
     }
 
     /**
-     * Converts a 32-bit time as present in the file format to a {@link Date}
-     * object.
+     * Reads a {@link QByte} from the buffer.
      * 
-     * Note that while a long is used, the value should fit in 32 bits.
+     * @param buffer the buffer from which to read
+     * @return the value read
+     */
+    public static int readQByte(final ByteBuffer buffer)
+    {
+        final int type = readByte(buffer);
+        assert (type == QDefines.QBYTE_TYPE);
+
+        return (int) readVal(1, buffer);
+    }
+
+    /**
+     * Reads a {@link QWord} from the buffer.
      * 
-     * @param qtime the time to convert
-     * @return the equivalent Date object
+     * @param buffer the buffer from which to read
+     * @return the value read
+     */
+    public static int readQWord(final ByteBuffer buffer)
+    {
+        final int type = readByte(buffer);
+        assert (type == QDefines.QWORD_TYPE);
+
+        return (int) readVal(2, buffer);
+    }
+
+    /**
+     * Reads a {@link QDword} from the buffer.
+     * 
+     * @param buffer the buffer from which to read
+     * @return the value read
+     */
+    public static int readQDword(final ByteBuffer buffer)
+    {
+        final int type = readByte(buffer);
+        assert (type == QDefines.QDWORD_TYPE);
+
+        return (int) readVal(4, buffer);
+    }
+
+    /**
+     * Reads a {@link QQword} from the buffer.
+     * 
+     * @param buffer the buffer from which to read
+     * @return the value read
+     */
+    public static long readQQword(final ByteBuffer buffer)
+    {
+        final int type = readByte(buffer);
+        assert (type == QDefines.QQWORD_TYPE);
+
+        return readVal(8, buffer);
+    }
+
+    /**
+     * Reads a {@link QByteBuffer} from the buffer.
+     * 
+     * @param buffer the buffer from which to read
+     * @return the bytes read
+     */
+    public static byte[] readQByteBuffer(final ByteBuffer buffer)
+    {
+        final QByteBuffer val = new QByteBuffer();
+        val.parse(buffer);
+        return val.getValue();
+    }
+
+    /**
+     * Reads a {@link QByteBuffer} from the buffer without copying its
+     * content.
+     * 
+     * @param buffer the buffer from which to read
+     * @return a read-only view of the bytes read
      */
-    public static Date qtimeToDate(long qtime)
+    public static ByteBuffer readQByteBufferView(final ByteBuffer buffer)
     {
-        // Dates are stored as the # of 2 second increments since Jan 1, 1801 00:00
-        // Make sure we're not negative
-        qtime &= (0x0FFFFFFFFL);
+        final int type = readByte(buffer);
 
-        // Get # seconds
-        // Subtract out baseTime
-        long seconds = (qtime * 2);
-        if (seconds < qEpochSeconds)
+        final int length;
+        if (type == QDefines.QBYTE_BUFFER_TYPE8)
+        {
+            length = readByte(buffer);
+        }
+        else if (type == QDefines.QBYTE_BUFFER_TYPE16)
         {
-            // Date between 1801 and 1970, so subtract it from Qepoch
-            seconds = (qEpochSeconds - seconds) * -1;
+            length = readWord(buffer);
         }
         else
         {
-            // Date >= 1970, so subtract out epoch seconds
-            seconds -= qEpochSeconds;
+            throw new QCWException("Unsupported Byte Buffer Type: 0x"
+                + Integer.toHexString(type));
         }
 
-        final Calendar c = Calendar.getInstance();
-        c.clear();
-        c.setTimeInMillis(seconds * 1000);
+        final int start = buffer.position();
+        final ByteBuffer view = slice(buffer, start, start + length);
+        buffer.position(start + length);
+        return view;
+    }
 
-        if (c.getTimeZone().inDaylightTime(c.getTime()))
-        {
-            // Need to subtract an hour
-            c.add(Calendar.HOUR_OF_DAY, -1);
-        }
+    /**
+     * Reads a {@link QString} from the buffer.
+     * 
+     * @param buffer the buffer from which to read
+     * @param goofyLengthMode whether to read the length in goofy mode or not
+     * @return the value read
+     */
+    public static String readQString(
+        final ByteBuffer buffer,
+        final boolean goofyLengthMode)
+    {
+        final QString val = new QString(goofyLengthMode);
+        val.parse(buffer);
+        return val.getValue();
+    }
 
-        return c.getTime();
+    /**
+     * Reads a {@link QString} from the buffer. The QString read will not use
+     * goofy mode.
+     * 
+     * @param buffer the buffer from which to read
+     * @return the value read
+     */
+    public static String readQString(final ByteBuffer buffer)
+    {
+        return readQString(buffer, false);
+    }
+
+    /**
+     * Converts a 32-bit time as present in the file format to a {@link Date}
+     * object. This uses {@link QTime#getDefault()}.
+     * 
+     * Note that while a long is used, the value should fit in 32 bits.
+     * 
+     * @param qtime the time to convert
+     * @return the equivalent Date object
+     */
+    public static Date qtimeToDate(final long qtime)
+    {
+        return QTime.getDefault().toDate(qtime);
     }
 
     /**
      * Converts a {@link Date} object to a 32-bit value that be used in the
-     * file format.
+     * file format. This uses {@link QTime#getDefault()}.
      * 
      * Note that while a long is returned, the value will fit in 32 bits.
      * 
@@ -490,29 +1209,6 @@ public final class QUtils
      */
     public static long dateToQTime(final Date date)
     {
-        final Calendar c = Calendar.getInstance();
-        c.clear();
-        c.setTime(date);
-        if (c.getTimeZone().inDaylightTime(c.getTime()))
-        {
-            c.add(Calendar.HOUR_OF_DAY, 1);
-        }
-
-        final long seconds = c.getTimeInMillis() / 1000;
-
-        long result;
-        if (seconds >= 0)
-        {
-            // Post-1970. Add qEpoch
-            result = seconds + qEpochSeconds;
-        }
-        else
-        {
-            // Pre-1970.
-            result = qEpochSeconds - (-seconds);
-        }
-        result /= 2;
-
-        return result;
+        return QTime.getDefault().fromDate(date);
     }
 }
@@ -23,6 +23,7 @@ package org.stuntaz.libqcw.blobs;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 /**
  * Class representing a 2 byte value as it exists in the file format. There
@@ -94,6 +95,14 @@ public final class QWord
         QUtils.writeQWord(getValue(), output);
     }
 
+    @Override
+    public void write(final ByteBuffer buffer)
+    {
+        if (!isValid()) return;
+
+        QUtils.writeQWord(getValue(), buffer);
+    }
+
     @Override
     protected char getHeaderType()
     {
@@ -105,4 +114,9 @@ public final class QWord
     {
         setValue(QUtils.readQWord(stream));
     }
+
+    public void parse(final ByteBuffer buffer)
+    {
+        setValue(QUtils.readQWord(buffer));
+    }
 }
@@ -20,9 +20,7 @@
 
 package org.stuntaz.libqcw.blobs;
 
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 import org.stuntaz.libqcw.IWorkspaceVisitor;
 
@@ -30,13 +28,17 @@ import org.stuntaz.libqcw.IWorkspaceVisitor;
  * This class represents an unsupported object type. We know its length, but
  * that's about it.
  * 
+ * When parsed from a buffer, the content of this object is a read-only view
+ * of the source buffer rather than a copy. Such a view is only copied when
+ * {@link #getValue()} is called.
+ * 
  * @author nall
  *
  */
 public class UnsupportedBlob
     extends QRecord
 {
-    private byte[] value = new byte[0];
+    private ByteBuffer value = QUtils.allocate(0);
 
     /**
      * Instantiates a new, invalid unsupported object.
@@ -63,49 +65,88 @@ public class UnsupportedBlob
      * @param value the bytes that should comprise this object
      */
     public final void setValue(final byte[] value)
+    {
+        setValue(QUtils.wrap(value));
+    }
+
+    /**
+     * Sets the content of this object to the bytes between position 0 and the
+     * limit of the specified buffer. The buffer is not copied, so it should not
+     * be modified afterwards.
+     * 
+     * @param value the bytes that should comprise this object
+     */
+    public final void setValue(final ByteBuffer value)
     {
         this.value = value;
         setValid();
     }
 
     /**
-     * Returns the bytes associated with this unsupported object.
+     * Returns the bytes associated with this unsupported object. If this
+     * object was parsed from a buffer, the bytes are copied from it.
      * 
      * @return a byte array of this object's contents
      */
     public final byte[] getValue()
     {
         assert (isValid());
-        return value;
+
+        if (value.hasArray() && value.arrayOffset() == 0
+            && value.array().length == value.limit())
+        {
+            return value.array();
+        }
+
+        final byte[] bytes = new byte[value.limit()];
+        getPayload().get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Returns a read-only view of the bytes associated with this unsupported
+     * object, positioned at its first byte. No bytes are copied.
+     * 
+     * @return a read-only buffer of this object's contents
+     */
+    public final ByteBuffer getPayload()
+    {
+        assert (isValid());
+
+        final ByteBuffer payload = value.asReadOnlyBuffer();
+        payload.rewind();
+        return payload;
     }
 
     @Override
     public final int getInternalSize()
     {
-        return value.length;
+        return value.limit();
     }
 
     @Override
-    public final void write(final OutputStream output)
-        throws IOException
+    public final void write(final ByteBuffer buffer)
     {
         if (!isValid()) return;
 
-        super.write(output);
-        output.write(value);
+        super.write(buffer);
     }
 
-    public final void parse(final InputStream stream)
-        throws IOException
+    @Override
+    protected final void writeBody(final ByteBuffer buffer)
     {
-        final int size = parseRecordHeader(stream);
-
-        final byte[] value = new byte[size];
+        final ByteBuffer payload = value.duplicate();
+        payload.rewind();
+        buffer.put(payload);
+    }
 
-        final int readSize = stream.read(value, 0, size);
-        assert (readSize == size);
+    public final void parse(final ByteBuffer buffer)
+    {
+        final int size = parseRecordHeader(buffer);
 
-        setValue(value);
+        final int start = buffer.position();
+        setValue(QUtils.slice(buffer, start, start + size));
+        buffer.position(start + size);
 
         assert (size == getInternalSize());
     }
@@ -116,7 +157,7 @@ public class UnsupportedBlob
         String s = "UnsupportedBlob valid: " + isValid();
         if (isValid())
         {
-            s += "; [length = 0x" + Integer.toHexString(value.length) + "]";
+            s += "; [length = 0x" + Integer.toHexString(value.limit()) + "]";
         }
         return s;
     }
@@ -20,16 +20,14 @@
 
 package org.stuntaz.libqcw.blobs.barchart;
 
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
 import java.util.List;
 
 import org.stuntaz.libqcw.IBarChartVisitor;
-import org.stuntaz.libqcw.QOptions;
+import org.stuntaz.libqcw.blobs.ChildList;
 import org.stuntaz.libqcw.blobs.QByteBuffer;
 import org.stuntaz.libqcw.blobs.QDword;
+import org.stuntaz.libqcw.blobs.QHash;
 import org.stuntaz.libqcw.blobs.QRecord;
 import org.stuntaz.libqcw.blobs.QString;
 import org.stuntaz.libqcw.blobs.QUtils;
@@ -47,6 +45,10 @@ import org.stuntaz.libqcw.defines.QTimePeriod;
  * This data structure also contains the basic configuration of the chart
  * including colors, fonts, etc.
  * 
+ * Charts found in workspaces (QCW) carry a title, file name and some extra
+ * layout information that charts in layout files (QCL) do not. Which format a
+ * chart uses is fixed when it is created (see {@link #isWorkspaceContext()}).
+ * 
  * It should always be the case that the lists returned from {@link #getStudyLayouts()},
  * {@link #getStudies()}, and {@link #getStudyLines()} should contain the same
  * number of elements.
@@ -59,28 +61,34 @@ public final class BarChartBlob
 {
 	private static final int QC_MAGIC5 = 0x0190;
 	private static final int QC_MAGIC61 = 0x025B;
+
+    private static final int QWORD_SIZE = QUtils.getSize(QWord.class);
+    private static final int QDWORD_SIZE = QUtils.getSize(QDword.class);
 	
-    private QWord magic = new QWord();
+    private int magic;
     private QString chartTitle = new QString(true);
     private QByteBuffer chartFont = new QByteBuffer();
 
-    private QDword unknown1 = new QDword();
-    private QDword unknown2 = new QDword();
-    private QDword unknown3 = new QDword();
+    private int unknown1;
+    private int unknown2;
+    private int unknown3;
     private QChartType chartType = QChartType.Line; // QChartType
-    private QDword unknown4 = new QDword(); // likely a color
-    private QDword unknown5 = new QDword(); // likely a color
-    private QDword unknown6 = new QDword(); // likely a color
-    private QDword unknown7 = new QDword(); // likely a color
-    private QDword unknown8 = new QDword(); // likely a color
-    private QDword unknown9 = new QDword(); // likely a color
-    private QDword unknown10 = new QDword(); // likely a color
-    private QDword unknown11 = new QDword(); // likely a color
-    private QDword unknown12 = new QDword();
-
-    private final List<StudyLayoutBlob> studyLayouts = new ArrayList<StudyLayoutBlob>();
-    private final List<StudyHeaderBlob> studies = new ArrayList<StudyHeaderBlob>();
-    private final List<StudyLineGroupBlob> customLines = new ArrayList<StudyLineGroupBlob>();
+    private int unknown4; // likely a color
+    private int unknown5; // likely a color
+    private int unknown6; // likely a color
+    private int unknown7; // likely a color
+    private int unknown8; // likely a color
+    private int unknown9; // likely a color
+    private int unknown10; // likely a color
+    private int unknown11; // likely a color
+    private int unknown12;
+
+    private final ChildList<StudyLayoutBlob> studyLayouts = new ChildList<StudyLayoutBlob>(
+        this);
+    private final ChildList<StudyHeaderBlob> studies = new ChildList<StudyHeaderBlob>(
+        this);
+    private final ChildList<StudyLineGroupBlob> customLines = new ChildList<StudyLineGroupBlob>(
+        this);
 
     private UnsupportedBlob unknown13 = new UnsupportedBlob(); // 3 16 bit values
 
@@ -90,13 +98,38 @@ public final class BarChartBlob
 
     private QString fileName; // Can be a QByte = 0 or a QString
 
-    private QDword unknown15 = new QDword();
-    private QDword unknown16 = new QDword();
+    private int unknown15;
+    private int unknown16;
 
     // These are valid in Workspace Layouts
-    private QDword unknown17 = new QDword();
-    private QDword unknown18 = new QDword();
-    private QDword unknown19 = new QDword();
+    private int unknown17;
+    private int unknown18;
+    private int unknown19;
+
+    private final boolean workspaceContext;
+
+    /**
+     * Creates a new BarChartBlob.
+     * 
+     * @param workspaceContext true if this chart is part of a workspace (QCW)
+     *      file, false if it is part of a layout (QCL) file
+     */
+    public BarChartBlob(final boolean workspaceContext)
+    {
+        this.workspaceContext = workspaceContext;
+    }
+
+    /**
+     * Returns true if this chart is in the workspace format, false if it is in
+     * the layout format. The title, title symbol and time period of a chart
+     * are only available in the workspace format.
+     * 
+     * @return true if this chart is part of a workspace
+     */
+    public boolean isWorkspaceContext()
+    {
+        return workspaceContext;
+    }
 
     /**
      * Returns true if this is a QC-6.1 style chart, false otherwise
@@ -105,7 +138,7 @@ public final class BarChartBlob
      */
     public boolean isQC61()
     {
-    	return magic.getValue() == QC_MAGIC61;
+    	return magic == QC_MAGIC61;
     }
     
     /**
@@ -146,17 +179,18 @@ public final class BarChartBlob
     public void setChartFont(final byte[] font)
     {
         this.chartFont = new QByteBuffer(font);
+        invalidateSize();
     }
 
     /**
      * Returns the title for this chart. This value is only valid when
-     * {@link QOptions#WORKSPACE_CONTEXT} is {@code true}.
+     * {@link #isWorkspaceContext()} is {@code true}.
      * 
      * @return a String containing the title of this chart
      */
     public String getChartTitle()
     {
-        assert (QOptions.WORKSPACE_CONTEXT);
+        assert (workspaceContext);
 
         return this.chartTitle.getValue();
     }
@@ -170,17 +204,18 @@ public final class BarChartBlob
     {
         // This particular string uses the wrong length
         this.chartTitle = new QString(title, true);
+        invalidateSize();
     }
 
     /**
      * Returns the symbol contained in this chart's title. This value is only
-     * valid when {@link QOptions#WORKSPACE_CONTEXT} is {@code true}.
+     * valid when {@link #isWorkspaceContext()} is {@code true}.
      * 
      * @return the symbol contained in the title of this chart
      */
     public String getChartTitleSymbol()
     {
-        assert (QOptions.WORKSPACE_CONTEXT);
+        assert (workspaceContext);
 
         final String title = chartTitle.getValue();
 
@@ -193,13 +228,13 @@ public final class BarChartBlob
 
     /**
      * Return this chart's time period. This value is only valid when
-     * {@link QOptions#WORKSPACE_CONTEXT} is {@code true}.
+     * {@link #isWorkspaceContext()} is {@code true}.
      * 
      * @return the time period specified in the title of this chart
      */
     public QTimePeriod getChartTimePeriod()
     {
-        assert (QOptions.WORKSPACE_CONTEXT);
+        assert (workspaceContext);
 
         final String title = chartTitle.getValue();
 
@@ -218,337 +253,380 @@ public final class BarChartBlob
     public void setChartType(final QChartType type)
     {
         this.chartType = type;
+        invalidateHash();
     }
 
     private void setDailySnapshot(final UnsupportedBlob value)
     {
-        dailySnapshot = value;
+        dailySnapshot = adopt(value);
     }
 
     private void setDataWindow(final UnsupportedBlob value)
     {
-        dataWindow = value;
+        dataWindow = adopt(value);
     }
 
     private void setMagic(final int magic)
     {
         assert (magic == QC_MAGIC5  || magic == QC_MAGIC61);
-        this.magic = new QWord(magic);
+        this.magic = magic;
     }
 
     private void setUnknown1(final int value)
     {
-        this.unknown1 = new QDword(value);
+        this.unknown1 = value;
     }
 
     private void setUnknown2(final int value)
     {
-        this.unknown2 = new QDword(value);
+        this.unknown2 = value;
     }
 
     private void setUnknown3(final int value)
     {
-        this.unknown3 = new QDword(value);
+        this.unknown3 = value;
     }
 
     private void setUnknown4(final int value)
     {
-        this.unknown4 = new QDword(value);
+        this.unknown4 = value;
     }
 
     private void setUnknown5(final int value)
     {
-        this.unknown5 = new QDword(value);
+        this.unknown5 = value;
     }
 
     private void setUnknown6(final int value)
     {
-        this.unknown6 = new QDword(value);
+        this.unknown6 = value;
     }
 
     private void setUnknown7(final int value)
     {
-        this.unknown7 = new QDword(value);
+        this.unknown7 = value;
     }
 
     private void setUnknown8(final int value)
     {
-        this.unknown8 = new QDword(value);
+        this.unknown8 = value;
     }
 
     private void setUnknown9(final int value)
     {
-        this.unknown9 = new QDword(value);
+        this.unknown9 = value;
     }
 
     private void setUnknown10(final int value)
     {
-        this.unknown10 = new QDword(value);
+        this.unknown10 = value;
     }
 
     private void setUnknown11(final int value)
     {
-        this.unknown11 = new QDword(value);
+        this.unknown11 = value;
     }
 
     private void setUnknown12(final int value)
     {
-        this.unknown12 = new QDword(value);
+        this.unknown12 = value;
     }
 
     private void setUnknown13(final UnsupportedBlob value)
     {
-        this.unknown13 = value;
+        this.unknown13 = adopt(value);
     }
 
     private void setUnknown14(final UnsupportedBlob value)
     {
-        this.unknown14 = value;
+        this.unknown14 = adopt(value);
     }
 
     private void setUnknown15(final int value)
     {
-        this.unknown15 = new QDword(value);
+        this.unknown15 = value;
     }
 
     private void setUnknown16(final int value)
     {
-        this.unknown16 = new QDword(value);
+        this.unknown16 = value;
     }
 
     private void setUnknown17(final int value)
     {
-        this.unknown17 = new QDword(value);
+        this.unknown17 = value;
     }
 
     private void setUnknown18(final int value)
     {
-        this.unknown18 = new QDword(value);
+        this.unknown18 = value;
     }
 
     private void setUnknown19(final int value)
     {
-        this.unknown19 = new QDword(value);
+        this.unknown19 = value;
     }
 
     @Override
     protected int getInternalSize()
     {
-        int totalStudyBytes = 0;
         assert (studyLayouts.size() == studies.size());
         assert (studyLayouts.size() == customLines.size());
 
-        final QDword terminator = new QDword(0);
+        // magic, unknown1-3, chart type, unknown4-11, study count, unknown12,
+        // unknown15-16
+        int totalBytes = (2 * QWORD_SIZE) + (15 * QDWORD_SIZE)
+            + chartFont.getSize();
+
         for (int i = 0; i < studyLayouts.size(); ++i)
         {
-            totalStudyBytes += studyLayouts.get(i).getSize();
-            totalStudyBytes += studies.get(i).getSize();
-            totalStudyBytes += customLines.get(i).getSize();
-
-            // No terminator for the first pane
-            if (i != 0)
-            {
-                totalStudyBytes += terminator.getSize();
-            }
+            totalBytes += studyLayouts.get(i).getSize();
+            totalBytes += studies.get(i).getSize();
+            totalBytes += customLines.get(i).getSize();
+        }
 
-            // No terminator written for the last pane
-            final boolean lastPane = (i + 1) >= studyLayouts.size();
-            if (!lastPane)
-            {
-                totalStudyBytes += terminator.getSize();
-            }
+        // Terminators: one after the header of every pane but the first and
+        // one after the lines of every pane but the last
+        if (studyLayouts.size() > 1)
+        {
+            totalBytes += 2 * (studyLayouts.size() - 1) * QDWORD_SIZE;
         }
 
-        if (QOptions.WORKSPACE_CONTEXT)
+        totalBytes += unknown13.getSize() + dailySnapshot.getSize()
+            + dataWindow.getSize() + unknown14.getSize();
+
+        if (workspaceContext)
         {
             final int chartTitleSize = chartTitle == null ? 0 : chartTitle
                 .getSize();
             final int fileNameSize = fileName == null ? 0 : fileName.getSize();
 
-            totalStudyBytes += chartTitleSize + fileNameSize;
+            // unknown17-19
+            totalBytes += chartTitleSize + fileNameSize + (3 * QDWORD_SIZE);
         }
-        final int totalBytes = magic.getSize() + chartFont.getSize()
-            + unknown1.getSize() + unknown2.getSize() + unknown3.getSize()
-            + new QWord(chartType.getValue()).getSize() + unknown4.getSize()
-            + unknown5.getSize() + unknown6.getSize() + unknown7.getSize()
-            + unknown8.getSize() + unknown9.getSize() + unknown10.getSize()
-            + unknown11.getSize() + new QDword(studyLayouts.size()).getSize()
-            + unknown12.getSize() + unknown13.getSize()
-            + dailySnapshot.getSize() + dataWindow.getSize()
-            + unknown14.getSize() + unknown15.getSize() + unknown16.getSize()
-            + unknown17.getSize() + unknown18.getSize() + unknown19.getSize()
-            + totalStudyBytes;
 
         return totalBytes;
     }
 
+    /**
+     * Returns a hash of the settings of this chart: everything but its
+     * panes. Two versions of a chart whose content hashes differ but whose
+     * settings hashes are equal differ only in their panes.
+     * 
+     * @return the hash of this chart's settings
+     */
+    public long getSettingsHash()
+    {
+        long h = QHash.mix(QHash.SEED, magic);
+        if (workspaceContext)
+        {
+            h = QHash.mix(h, chartTitle.getContentHash());
+        }
+        h = QHash.mix(h, chartFont.getContentHash());
+
+        final int[] values = { unknown1, unknown2, unknown3,
+            chartType.getValue(), unknown4, unknown5, unknown6, unknown7,
+            unknown8, unknown9, unknown10, unknown11, unknown12, unknown15,
+            unknown16 };
+        for (final int value : values)
+        {
+            h = QHash.mix(h, value);
+        }
+
+        h = QHash.mix(h, unknown13.getContentHash());
+        h = QHash.mix(h, dailySnapshot.getContentHash());
+        h = QHash.mix(h, dataWindow.getContentHash());
+        h = QHash.mix(h, unknown14.getContentHash());
+
+        if (workspaceContext)
+        {
+            h = QHash.mix(h, fileName.getContentHash());
+            h = QHash.mix(h, unknown17);
+            h = QHash.mix(h, unknown18);
+            h = QHash.mix(h, unknown19);
+        }
+        return QHash.finish(h);
+    }
+
     @Override
-    public void write(final OutputStream output)
-        throws IOException
+    protected long computeContentHash()
     {
-        super.write(output);
+        long h = QHash.mix(QHash.SEED, getSettingsHash());
+        h = QHash.mix(h, studyLayouts.size());
+        for (int i = 0; i < studyLayouts.size(); ++i)
+        {
+            h = QHash.mix(h, studyLayouts.get(i).getContentHash());
+            h = QHash.mix(h, studies.get(i).getContentHash());
+            h = QHash.mix(h, customLines.get(i).getContentHash());
+        }
+        return QHash.finish(h);
+    }
 
-        magic.write(output);
+    @Override
+    protected void writeBody(final ByteBuffer buffer)
+    {
+        QUtils.writeQWord(magic, buffer);
 
-        if (QOptions.WORKSPACE_CONTEXT)
+        if (workspaceContext)
         {
-            chartTitle.write(output);
+            chartTitle.write(buffer);
         }
 
-        chartFont.write(output);
-        unknown1.write(output);
-        unknown2.write(output);
-        unknown3.write(output);
-        new QWord(chartType.getValue()).write(output);
-        unknown4.write(output);
-        unknown5.write(output);
-        unknown6.write(output);
-        unknown7.write(output);
-        unknown8.write(output);
-        unknown9.write(output);
-        unknown10.write(output);
-        unknown11.write(output);
-        new QDword(studyLayouts.size()).write(output);
-        unknown12.write(output);
+        chartFont.write(buffer);
+        QUtils.writeQDword(unknown1, buffer);
+        QUtils.writeQDword(unknown2, buffer);
+        QUtils.writeQDword(unknown3, buffer);
+        QUtils.writeQWord(chartType.getValue(), buffer);
+        QUtils.writeQDword(unknown4, buffer);
+        QUtils.writeQDword(unknown5, buffer);
+        QUtils.writeQDword(unknown6, buffer);
+        QUtils.writeQDword(unknown7, buffer);
+        QUtils.writeQDword(unknown8, buffer);
+        QUtils.writeQDword(unknown9, buffer);
+        QUtils.writeQDword(unknown10, buffer);
+        QUtils.writeQDword(unknown11, buffer);
+        QUtils.writeQDword(studyLayouts.size(), buffer);
+        QUtils.writeQDword(unknown12, buffer);
 
         assert (studyLayouts.size() == studies.size());
         assert (studyLayouts.size() == customLines.size());
 
-        final QDword terminator = new QDword(0);
         for (int i = 0; i < studyLayouts.size(); ++i)
         {
-            studyLayouts.get(i).write(output);
-            studies.get(i).write(output);
+            studyLayouts.get(i).write(buffer);
+            studies.get(i).write(buffer);
 
             // No terminator written for the first pane
             if (i != 0)
             {
-                terminator.write(output);
+                QUtils.writeQDword(0, buffer);
             }
 
-            customLines.get(i).write(output);
+            customLines.get(i).write(buffer);
 
             // No terminator written for the last pane
             final boolean lastPane = (i + 1) >= studyLayouts.size();
             if (!lastPane)
             {
-                terminator.write(output);
+                QUtils.writeQDword(0, buffer);
             }
 
         }
 
-        unknown13.write(output);
-        dailySnapshot.write(output);
-        dataWindow.write(output);
-        unknown14.write(output);
+        unknown13.write(buffer);
+        dailySnapshot.write(buffer);
+        dataWindow.write(buffer);
+        unknown14.write(buffer);
 
-        if (QOptions.WORKSPACE_CONTEXT)
+        if (workspaceContext)
         {
-            fileName.write(output);
+            fileName.write(buffer);
         }
 
-        unknown15.write(output);
-        unknown16.write(output);
+        QUtils.writeQDword(unknown15, buffer);
+        QUtils.writeQDword(unknown16, buffer);
 
-        if (QOptions.WORKSPACE_CONTEXT)
+        if (workspaceContext)
         {
-            unknown17.write(output);
-            unknown18.write(output);
-            unknown19.write(output);
+            QUtils.writeQDword(unknown17, buffer);
+            QUtils.writeQDword(unknown18, buffer);
+            QUtils.writeQDword(unknown19, buffer);
         }
     }
 
-    public void parse(final InputStream stream)
-        throws IOException
+    public void parse(final ByteBuffer buffer)
     {
-        final int size = parseRecordHeader(stream);
+        final int size = parseRecordHeader(buffer);
 
-        setMagic(QUtils.readQWord(stream));
+        setMagic(QUtils.readQWord(buffer));
 
-        if (QOptions.WORKSPACE_CONTEXT)
+        if (workspaceContext)
         {
             chartTitle = new QString(true);
-            chartTitle.parse(stream);
+            chartTitle.parse(buffer);
         }
 
-        setChartFont(QUtils.readQByteBuffer(stream));
-        setUnknown1(QUtils.readQDword(stream));
-        setUnknown2(QUtils.readQDword(stream));
-        setUnknown3(QUtils.readQDword(stream));
-        setChartType(QChartType.forValue(QUtils.readQWord(stream)));
-        setUnknown4(QUtils.readQDword(stream));
-        setUnknown5(QUtils.readQDword(stream));
-        setUnknown6(QUtils.readQDword(stream));
-        setUnknown7(QUtils.readQDword(stream));
-        setUnknown8(QUtils.readQDword(stream));
-        setUnknown9(QUtils.readQDword(stream));
-        setUnknown10(QUtils.readQDword(stream));
-        setUnknown11(QUtils.readQDword(stream));
-
-        final int numStudies = QUtils.readQDword(stream);
-
-        setUnknown12(QUtils.readQDword(stream));
+        setChartFont(QUtils.readQByteBuffer(buffer));
+        setUnknown1(QUtils.readQDword(buffer));
+        setUnknown2(QUtils.readQDword(buffer));
+        setUnknown3(QUtils.readQDword(buffer));
+        setChartType(QChartType.forValue(QUtils.readQWord(buffer)));
+        setUnknown4(QUtils.readQDword(buffer));
+        setUnknown5(QUtils.readQDword(buffer));
+        setUnknown6(QUtils.readQDword(buffer));
+        setUnknown7(QUtils.readQDword(buffer));
+        setUnknown8(QUtils.readQDword(buffer));
+        setUnknown9(QUtils.readQDword(buffer));
+        setUnknown10(QUtils.readQDword(buffer));
+        setUnknown11(QUtils.readQDword(buffer));
+
+        final int numStudies = QUtils.readQDword(buffer);
+        studyLayouts.ensureCapacity(numStudies);
+        studies.ensureCapacity(numStudies);
+        customLines.ensureCapacity(numStudies);
+
+        setUnknown12(QUtils.readQDword(buffer));
 
         for (int i = 0; i < numStudies; ++i)
         {
             final StudyLayoutBlob layout = new StudyLayoutBlob();
-            layout.parse(stream);
+            layout.parse(buffer);
             studyLayouts.add(layout);
 
             final StudyHeaderBlob header = new StudyHeaderBlob(i == 0);
-            header.parse(stream);
+            header.parse(buffer);
             studies.add(header);
 
             if (i != 0)
             {
                 // Terminator
-                final int t = QUtils.readQDword(stream);
+                final int t = QUtils.readQDword(buffer);
                 assert (t == 0);
             }
 
             final StudyLineGroupBlob lines = new StudyLineGroupBlob();
-            lines.parse(stream);
+            lines.parse(buffer);
             customLines.add(lines);
 
             final boolean lastPane = (i + 1) >= numStudies;
             if (!lastPane)
             {
-                final int t = QUtils.readQDword(stream);
+                final int t = QUtils.readQDword(buffer);
                 assert (t == 0);
             }
 
         }
 
         UnsupportedBlob blob = new UnsupportedBlob();
-        blob.parse(stream);
+        blob.parse(buffer);
         setUnknown13(blob);
 
         blob = new UnsupportedBlob();
-        blob.parse(stream);
+        blob.parse(buffer);
         setDailySnapshot(blob);
 
         blob = new UnsupportedBlob();
-        blob.parse(stream);
+        blob.parse(buffer);
         setDataWindow(blob);
 
         blob = new UnsupportedBlob();
-        blob.parse(stream);
+        blob.parse(buffer);
         setUnknown14(blob);
 
-        if (QOptions.WORKSPACE_CONTEXT)
+        if (workspaceContext)
         {
             fileName = new QString();
-            fileName.parse(stream);
+            fileName.parse(buffer);
         }
 
-        setUnknown15(QUtils.readQDword(stream));
-        setUnknown16(QUtils.readQDword(stream));
+        setUnknown15(QUtils.readQDword(buffer));
+        setUnknown16(QUtils.readQDword(buffer));
 
-        if (QOptions.WORKSPACE_CONTEXT)
+        if (workspaceContext)
         {
-            setUnknown17(QUtils.readQDword(stream));
-            setUnknown18(QUtils.readQDword(stream));
-            setUnknown19(QUtils.readQDword(stream));
+            setUnknown17(QUtils.readQDword(buffer));
+            setUnknown18(QUtils.readQDword(buffer));
+            setUnknown19(QUtils.readQDword(buffer));
         }
 
         setValid();
@@ -23,8 +23,10 @@ package org.stuntaz.libqcw.blobs.barchart;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 import org.stuntaz.libqcw.IWorkspaceVisitor;
+import org.stuntaz.libqcw.blobs.QHash;
 import org.stuntaz.libqcw.blobs.QSection;
 import org.stuntaz.libqcw.blobs.UnsupportedBlob;
 import org.stuntaz.libqcw.defines.QWorkspaceSection;
@@ -41,8 +43,8 @@ import org.stuntaz.libqcw.defines.QWorkspaceSection;
 public final class BarChartSectionBlob
     extends QSection
 {
-    UnsupportedBlob unknown1 = new UnsupportedBlob();
-    BarChartWrapperBlob wrapper = new BarChartWrapperBlob();
+    UnsupportedBlob unknown1 = adopt(new UnsupportedBlob());
+    BarChartWrapperBlob wrapper = adopt(new BarChartWrapperBlob(true));
 
     @Override
     protected int getInternalSize()
@@ -50,6 +52,13 @@ public final class BarChartSectionBlob
         return unknown1.getSize() + wrapper.getSize();
     }
 
+    @Override
+    protected long computeContentHash()
+    {
+        final long h = QHash.mix(QHash.SEED, unknown1.getContentHash());
+        return QHash.finish(QHash.mix(h, wrapper.getContentHash()));
+    }
+
     @Override
     public QWorkspaceSection getSectionType()
     {
@@ -69,15 +78,26 @@ public final class BarChartSectionBlob
     public void parse(final InputStream stream)
         throws IOException
     {
-        unknown1 = new UnsupportedBlob();
+        unknown1 = adopt(new UnsupportedBlob());
         unknown1.parse(stream);
 
-        wrapper = new BarChartWrapperBlob();
+        wrapper = adopt(new BarChartWrapperBlob(true));
         wrapper.parse(stream);
 
         setValid();
     }
 
+    public void parse(final ByteBuffer buffer)
+    {
+        unknown1 = adopt(new UnsupportedBlob());
+        unknown1.parse(buffer);
+
+        wrapper = adopt(new BarChartWrapperBlob(true));
+        wrapper.parse(buffer);
+
+        setValid();
+    }
+
     @Override
     public void write(final OutputStream output)
         throws IOException
@@ -87,6 +107,14 @@ public final class BarChartSectionBlob
         wrapper.write(output);
     }
 
+    @Override
+    public void write(final ByteBuffer buffer)
+    {
+        unknown1.write(buffer);
+
+        wrapper.write(buffer);
+    }
+
     @Override
     public void accept(final IWorkspaceVisitor visitor)
     {
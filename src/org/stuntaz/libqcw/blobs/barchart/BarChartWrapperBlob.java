@@ -20,12 +20,11 @@
 
 package org.stuntaz.libqcw.blobs.barchart;
 
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 import org.stuntaz.libqcw.IBarChartVisitor;
 import org.stuntaz.libqcw.blobs.QByte;
+import org.stuntaz.libqcw.blobs.QHash;
 import org.stuntaz.libqcw.blobs.QRecord;
 import org.stuntaz.libqcw.blobs.QUtils;
 
@@ -40,9 +39,22 @@ import org.stuntaz.libqcw.blobs.QUtils;
 public final class BarChartWrapperBlob
     extends QRecord
 {
-    private BarChartBlob chart = new BarChartBlob();
+    private final boolean workspaceContext;
+    private BarChartBlob chart;
     private QByte unknown1 = new QByte();
 
+    /**
+     * Creates a new BarChartWrapperBlob.
+     * 
+     * @param workspaceContext true if this wrapper is part of a workspace (QCW)
+     *      file, false if it is part of a layout (QCL) file
+     */
+    public BarChartWrapperBlob(final boolean workspaceContext)
+    {
+        this.workspaceContext = workspaceContext;
+        this.chart = adopt(new BarChartBlob(workspaceContext));
+    }
+
     /**
      * Sets the bar chart for this wrapper
      * 
@@ -50,7 +62,8 @@ public final class BarChartWrapperBlob
      */
     public void setLayout(final BarChartBlob chart)
     {
-        this.chart = chart;
+        assert (chart.isWorkspaceContext() == workspaceContext);
+        this.chart = adopt(chart);
     }
 
     /**
@@ -78,28 +91,36 @@ public final class BarChartWrapperBlob
     }
 
     @Override
-    public void write(final OutputStream output)
-        throws IOException
+    protected long computeContentHash()
+    {
+        long h = QHash.mix(QHash.SEED, chart.getContentHash());
+        if (chart.isQC61())
+        {
+            h = QHash.mix(h, unknown1.getContentHash());
+        }
+        return QHash.finish(h);
+    }
+
+    @Override
+    protected void writeBody(final ByteBuffer buffer)
     {
-        super.write(output);
-        chart.write(output);
+        chart.write(buffer);
         
         if(chart.isQC61())
         {
-        	unknown1.write(output);
+        	unknown1.write(buffer);
         }
     }
 
-    public void parse(final InputStream stream)
-        throws IOException
+    public void parse(final ByteBuffer buffer)
     {
-        final int size = parseRecordHeader(stream);
-        setLayout(new BarChartBlob());
-        getChart().parse(stream);
+        final int size = parseRecordHeader(buffer);
+        setLayout(new BarChartBlob(workspaceContext));
+        getChart().parse(buffer);
         
         if(getChart().isQC61())
         {
-        	setUnknown1(QUtils.readQByte(stream));
+        	setUnknown1(QUtils.readQByte(buffer));
         }
 
         setValid();
@@ -20,9 +20,7 @@
 
 package org.stuntaz.libqcw.blobs.barchart;
 
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.text.DecimalFormat;
 import java.util.Date;
 
@@ -30,6 +28,7 @@ import org.stuntaz.libqcw.IBarChartVisitor;
 import org.stuntaz.libqcw.blobs.QDword;
 import org.stuntaz.libqcw.blobs.QQword;
 import org.stuntaz.libqcw.blobs.QRecord;
+import org.stuntaz.libqcw.blobs.QTime;
 import org.stuntaz.libqcw.blobs.QUtils;
 import org.stuntaz.libqcw.defines.QBasicLineType;
 
@@ -43,20 +42,25 @@ import org.stuntaz.libqcw.defines.QBasicLineType;
 public final class BasicLineBlob
     extends QRecord
 {
+    private static final int QDWORD_SIZE = QUtils.getSize(QDword.class);
+    private static final int QQWORD_SIZE = QUtils.getSize(QQword.class);
+
     private QBasicLineType lineSubtype;
     private long options;
     private int width;
     private long rgb;
 
-    private Date timestamp1;
-    private Date timestamp2;
+    // Times as stored in the file; see QTime
+    private long qtime1;
+    private long qtime2;
 
     private double endpoint1;
     private double endpoint2;
 
     private long unknown1;
     private long unknown2;
-    private Integer unknown3 = null; // This DWORD is optional
+    private int unknown3;
+    private boolean hasUnknown3 = false; // This DWORD is optional
 
     /**
      * Returns this line's subtype.
@@ -89,23 +93,45 @@ public final class BasicLineBlob
     }
 
     /**
-     * Returns the starting timestamp for this line
+     * Returns the starting timestamp for this line. A new Date is created on
+     * every call.
      * 
      * @return this line's starting timestamp
      */
     public Date getStartTimestamp()
     {
-        return timestamp1;
+        return QTime.getDefault().toDate(qtime1);
     }
 
     /**
-     * Returns the ending timestamp for this line
+     * Returns the ending timestamp for this line. A new Date is created on
+     * every call.
      * 
-     * @return this line's starting ending
+     * @return this line's ending timestamp
      */
     public Date getEndTimestamp()
     {
-        return timestamp2;
+        return QTime.getDefault().toDate(qtime2);
+    }
+
+    /**
+     * Returns the starting time for this line as stored in the file.
+     * 
+     * @return this line's starting time (see {@link QTime})
+     */
+    public long getStartQTime()
+    {
+        return qtime1;
+    }
+
+    /**
+     * Returns the ending time for this line as stored in the file.
+     * 
+     * @return this line's ending time (see {@link QTime})
+     */
+    public long getEndQTime()
+    {
+        return qtime2;
     }
 
     /**
@@ -136,6 +162,7 @@ public final class BasicLineBlob
     public void setLineSubtype(final QBasicLineType type)
     {
         lineSubtype = type;
+        invalidateHash();
     }
 
     /**
@@ -148,6 +175,7 @@ public final class BasicLineBlob
     public void setOptions(final long options)
     {
         this.options = options;
+        invalidateHash();
     }
 
     /**
@@ -158,6 +186,7 @@ public final class BasicLineBlob
     public void setWidth(final int width)
     {
         this.width = width;
+        invalidateHash();
     }
 
     /**
@@ -168,6 +197,7 @@ public final class BasicLineBlob
     public void setRGB(final long rgb)
     {
         this.rgb = rgb;
+        invalidateHash();
     }
 
     /**
@@ -177,7 +207,8 @@ public final class BasicLineBlob
      */
     public void setStartTimestamp(final Date tstamp)
     {
-        this.timestamp1 = tstamp;
+        this.qtime1 = QTime.getDefault().fromDate(tstamp);
+        invalidateHash();
     }
 
     /**
@@ -187,7 +218,30 @@ public final class BasicLineBlob
      */
     public void setEndTimestamp(final Date tstamp)
     {
-        this.timestamp2 = tstamp;
+        this.qtime2 = QTime.getDefault().fromDate(tstamp);
+        invalidateHash();
+    }
+
+    /**
+     * Sets the starting time for this line as stored in the file.
+     * 
+     * @param qtime the line's starting time (see {@link QTime})
+     */
+    public void setStartQTime(final long qtime)
+    {
+        this.qtime1 = qtime & 0x0FFFFFFFFL;
+        invalidateHash();
+    }
+
+    /**
+     * Sets the ending time for this line as stored in the file.
+     * 
+     * @param qtime the line's ending time (see {@link QTime})
+     */
+    public void setEndQTime(final long qtime)
+    {
+        this.qtime2 = qtime & 0x0FFFFFFFFL;
+        invalidateHash();
     }
 
     /**
@@ -198,6 +252,7 @@ public final class BasicLineBlob
     public void setStartValue(final double value)
     {
         this.endpoint1 = value;
+        invalidateHash();
     }
 
     /**
@@ -208,6 +263,7 @@ public final class BasicLineBlob
     public void setEndValue(final double value)
     {
         this.endpoint2 = value;
+        invalidateHash();
     }
 
     private void setUnknown1(final long value)
@@ -220,60 +276,61 @@ public final class BasicLineBlob
         this.unknown2 = value;
     }
 
-    private void setUnknown3(final Integer value)
+    private void setUnknown3(final int value)
     {
         this.unknown3 = value;
+        this.hasUnknown3 = true;
     }
 
     @Override
     protected int getInternalSize()
     {
-        final int numDwords = 6 + ((unknown3 == null) ? 0 : 1);
+        final int numDwords = 6 + (hasUnknown3 ? 1 : 0);
 
-        return (numDwords * QUtils.getSize(QDword.class))
-            + (4 * QUtils.getSize(QQword.class));
+        return (numDwords * QDWORD_SIZE) + (4 * QQWORD_SIZE);
     }
 
     @Override
-    public void write(final OutputStream output)
-        throws IOException
+    protected void writeBody(final ByteBuffer buffer)
     {
-        super.write(output);
-
-        QUtils.writeQDword(lineSubtype.getValue(), output);
-        QUtils.writeQDword(options, output);
-        QUtils.writeQDword(width, output);
-        QUtils.writeQDword(rgb, output);
-        QUtils.writeQDword(QUtils.dateToQTime(timestamp1), output);
-        QUtils.writeQQword(Double.doubleToLongBits(endpoint1), output);
-        QUtils.writeQDword(QUtils.dateToQTime(timestamp2), output);
-        QUtils.writeQQword(Double.doubleToLongBits(endpoint2), output);
-        QUtils.writeQQword(unknown1, output);
-        QUtils.writeQQword(unknown2, output);
-        QUtils.writeQDword(unknown3, output);
+        QUtils.writeQDword(lineSubtype.getValue(), buffer);
+        QUtils.writeQDword(options, buffer);
+        QUtils.writeQDword(width, buffer);
+        QUtils.writeQDword(rgb, buffer);
+        QUtils.writeQDword(qtime1, buffer);
+        QUtils.writeQQword(Double.doubleToLongBits(endpoint1), buffer);
+        QUtils.writeQDword(qtime2, buffer);
+        QUtils.writeQQword(Double.doubleToLongBits(endpoint2), buffer);
+        QUtils.writeQQword(unknown1, buffer);
+        QUtils.writeQQword(unknown2, buffer);
+
+        if (hasUnknown3)
+        {
+            QUtils.writeQDword(unknown3, buffer);
+        }
     }
 
-    public void parse(final InputStream stream)
-        throws IOException
+    public void parse(final ByteBuffer buffer)
     {
-        final int size = parseRecordHeader(stream);
+        final int size = parseRecordHeader(buffer);
+        hasUnknown3 = false;
 
-        setLineSubtype(QBasicLineType.forValue(QUtils.readQDword(stream)));
-        setOptions(QUtils.readQDword(stream));
-        setWidth(QUtils.readQDword(stream));
-        setRGB(QUtils.readQDword(stream));
+        setLineSubtype(QBasicLineType.forValue(QUtils.readQDword(buffer)));
+        setOptions(QUtils.readQDword(buffer));
+        setWidth(QUtils.readQDword(buffer));
+        setRGB(QUtils.readQDword(buffer));
 
-        setStartTimestamp(QUtils.qtimeToDate(QUtils.readQDword(stream)));
-        setStartValue(Double.longBitsToDouble(QUtils.readQQword(stream)));
-        setEndTimestamp(QUtils.qtimeToDate(QUtils.readQDword(stream)));
-        setEndValue(Double.longBitsToDouble(QUtils.readQQword(stream)));
+        setStartQTime(QUtils.readQDword(buffer));
+        setStartValue(Double.longBitsToDouble(QUtils.readQQword(buffer)));
+        setEndQTime(QUtils.readQDword(buffer));
+        setEndValue(Double.longBitsToDouble(QUtils.readQQword(buffer)));
 
-        setUnknown1(QUtils.readQQword(stream));
-        setUnknown2(QUtils.readQQword(stream));
+        setUnknown1(QUtils.readQQword(buffer));
+        setUnknown2(QUtils.readQQword(buffer));
 
         if (getInternalSize() != size)
         {
-            setUnknown3(QUtils.readQDword(stream));
+            setUnknown3(QUtils.readQDword(buffer));
         }
 
         setValid();
@@ -287,8 +344,8 @@ public final class BasicLineBlob
         final String s = "Type: BasicLine; Subtype: " + lineSubtype
             + "; Options: 0x" + Long.toHexString(options) + "; Width: " + width
             + "; RGB: 0x" + Long.toHexString(rgb) + "; Coordinates("
-            + fmt.format(endpoint1) + " @ [" + timestamp1 + "] x "
-            + fmt.format(endpoint2) + " @ [" + timestamp2 + "])";
+            + fmt.format(endpoint1) + " @ [" + getStartTimestamp() + "] x "
+            + fmt.format(endpoint2) + " @ [" + getEndTimestamp() + "])";
         return s;
     }
 
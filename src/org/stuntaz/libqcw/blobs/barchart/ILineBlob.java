@@ -22,8 +22,10 @@ package org.stuntaz.libqcw.blobs.barchart;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 import org.stuntaz.libqcw.IBarChartVisitor;
+import org.stuntaz.libqcw.blobs.IBlob;
 import org.stuntaz.libqcw.blobs.QRecord;
 import org.stuntaz.libqcw.defines.QLineType;
 
@@ -34,14 +36,23 @@ import org.stuntaz.libqcw.defines.QLineType;
  *
  */
 public interface ILineBlob
+    extends IBlob
 {
     /**
      * Returns the type of line.
      * 
-     * @return the line's type
+     * @return the line's type, or null if its type code has no
+     *      {@link QLineType} constant
      */
     public QLineType getLineType();
 
+    /**
+     * Returns the type code of the line, as stored in the file.
+     * 
+     * @return the line's type code
+     */
+    public int getLineTypeValue();
+
     /**
      * @see QRecord#getSize()
      * 
@@ -58,6 +69,13 @@ public interface ILineBlob
     public void write(final OutputStream output)
         throws IOException;
 
+    /**
+     * @see QRecord#write(ByteBuffer)
+     * 
+     * @param buffer the buffer to which to write
+     */
+    public void write(final ByteBuffer buffer);
+
     /**
      * Accept the specified bar chart visitor.
      * 
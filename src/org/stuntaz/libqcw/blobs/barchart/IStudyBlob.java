@@ -36,10 +36,18 @@ public interface IStudyBlob
     /**
      * Returns the type of study.
      * 
-     * @return the study's type
+     * @return the study's type, or null if its type code has no
+     *      {@link QStudyType} constant
      */
     public QStudyType getStudyType();
 
+    /**
+     * Returns the type code of the study, as stored in the file.
+     * 
+     * @return the study's type code
+     */
+    public int getStudyTypeValue();
+
     /**
      * Returns the number of substudies included in this study.
      *  
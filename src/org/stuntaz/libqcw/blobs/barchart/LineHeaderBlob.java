@@ -20,9 +20,7 @@
 
 package org.stuntaz.libqcw.blobs.barchart;
 
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 import org.stuntaz.libqcw.IBarChartVisitor;
 import org.stuntaz.libqcw.blobs.QByteBuffer;
@@ -49,7 +47,7 @@ public final class LineHeaderBlob
     private int unknown2;
     private int unknown3;
 
-    private final BasicLineBlob lineInfo = new BasicLineBlob();
+    private final BasicLineBlob lineInfo = adopt(new BasicLineBlob());
 
     /**
      * Creates a new LineHeaderBlob with the specified line type.
@@ -66,6 +64,11 @@ public final class LineHeaderBlob
         return lineType;
     }
 
+    public int getLineTypeValue()
+    {
+        return lineType.getValue();
+    }
+
     /**
      * Returns the basic line information for this header.
 
@@ -97,6 +100,7 @@ public final class LineHeaderBlob
     public void setNoteFont(final byte[] noteFont)
     {
         this.noteFont = new QByteBuffer(noteFont);
+        invalidateSize();
     }
 
     /**
@@ -108,6 +112,7 @@ public final class LineHeaderBlob
     public void setNoteText(final String noteText)
     {
         this.noteText = noteText;
+        invalidateSize();
     }
 
     private void setUnknown2(final int value)
@@ -135,37 +140,33 @@ public final class LineHeaderBlob
     }
 
     @Override
-    public void write(final OutputStream output)
-        throws IOException
+    protected void writeBody(final ByteBuffer buffer)
     {
-        super.write(output);
-
         if (lineType == QLineType.Note)
         {
-            noteFont.write(output);
-            QUtils.writeQString(noteText, output);
+            noteFont.write(buffer);
+            QUtils.writeQString(noteText, buffer);
         }
 
-        QUtils.writeQDword(unknown2, output);
-        QUtils.writeQDword(unknown3, output);
-        lineInfo.write(output);
+        QUtils.writeQDword(unknown2, buffer);
+        QUtils.writeQDword(unknown3, buffer);
+        lineInfo.write(buffer);
     }
 
-    public void parse(final InputStream stream)
-        throws IOException
+    public void parse(final ByteBuffer buffer)
     {
-        final int size = parseRecordHeader(stream);
+        final int size = parseRecordHeader(buffer);
 
         if (lineType == QLineType.Note)
         {
-            setNoteFont(QUtils.readQByteBuffer(stream));
-            setNoteText(QUtils.readQString(stream));
+            setNoteFont(QUtils.readQByteBuffer(buffer));
+            setNoteText(QUtils.readQString(buffer));
         }
 
-        setUnknown2(QUtils.readQDword(stream));
-        setUnknown3(QUtils.readQDword(stream));
+        setUnknown2(QUtils.readQDword(buffer));
+        setUnknown3(QUtils.readQDword(buffer));
 
-        lineInfo.parse(stream);
+        lineInfo.parse(buffer);
 
         setValid();
         assert (size == getInternalSize());
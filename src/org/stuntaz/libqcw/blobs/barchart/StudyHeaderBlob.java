@@ -20,13 +20,12 @@
 
 package org.stuntaz.libqcw.blobs.barchart;
 
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
 import java.util.List;
 
 import org.stuntaz.libqcw.IBarChartVisitor;
+import org.stuntaz.libqcw.blobs.ChildList;
+import org.stuntaz.libqcw.blobs.QCodecRegistry;
 import org.stuntaz.libqcw.blobs.QDword;
 import org.stuntaz.libqcw.blobs.QRecord;
 import org.stuntaz.libqcw.blobs.QUtils;
@@ -41,7 +40,7 @@ import org.stuntaz.libqcw.defines.QStudyType;
 public final class StudyHeaderBlob
     extends QRecord
 {
-    private final List<IStudyBlob> studies = new ArrayList<IStudyBlob>();
+    private final ChildList<IStudyBlob> studies = new ChildList<IStudyBlob>(this);
     private final boolean isPriceStudy;
 
     /**
@@ -100,55 +99,48 @@ public final class StudyHeaderBlob
     }
 
     @Override
-    public void write(final OutputStream output)
-        throws IOException
+    protected void writeBody(final ByteBuffer buffer)
     {
-        super.write(output);
-
-        QUtils.writeQDword(studies.size(), output);
+        QUtils.writeQDword(studies.size(), buffer);
 
         for (final IStudyBlob study : studies)
         {
-            final QStudyType type = study.getStudyType();
-            QUtils.writeQDword(type.getValue(), output);
+            QUtils.writeQDword(study.getStudyTypeValue(), buffer);
 
-            study.write(output);
+            study.write(buffer);
         }
     }
 
-    public void parse(final InputStream stream)
-        throws IOException
+    public void parse(final ByteBuffer buffer)
     {
-        final int size = parseRecordHeader(stream);
-        final int numTypes = QUtils.readQDword(stream);
+        final int size = parseRecordHeader(buffer);
+        final int end = buffer.position() + size;
+        final int numTypes = QUtils.readQDword(buffer);
+        studies.ensureCapacity(numTypes);
 
         for (int i = 0; i < numTypes; ++i)
         {
-            final QStudyType typeID = QStudyType.forValue(QUtils
-                .readQDword(stream));
+            final int typeID = QUtils.readQDword(buffer);
 
-            final IStudyBlob study;
-            if (typeID == QStudyType.Volume)
-            {
-                study = new VolumeStudyBlob();
-            }
-            else
+            IStudyBlob study = QCodecRegistry.createStudy(typeID);
+            if (study == null)
             {
                 study = new UnsupportedStudyBlob(typeID);
             }
-            study.parse(stream);
+            study.parse(buffer);
             addStudy(study);
 
             // Only Volume can have sub-studies and as best I can tell
             // the only way to know is if we haven't reached blobSize
             // yet.
-            final boolean hasSubstudies = (typeID == QStudyType.Volume)
-                && (getInternalSize() < size);
+            final boolean hasSubstudies = (typeID == QStudyType.Volume
+                .getValue())
+                && (buffer.position() < end);
             if (hasSubstudies)
             {
                 assert (study instanceof VolumeStudyBlob);
                 final VolumeStudyBlob s = (VolumeStudyBlob) study;
-                s.parseSubstudies(stream);
+                s.parseSubstudies(buffer);
             }
         }
 
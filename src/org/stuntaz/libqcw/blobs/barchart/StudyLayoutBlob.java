@@ -20,9 +20,7 @@
 
 package org.stuntaz.libqcw.blobs.barchart;
 
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 import org.stuntaz.libqcw.IBarChartVisitor;
 import org.stuntaz.libqcw.blobs.QDword;
@@ -39,6 +37,8 @@ import org.stuntaz.libqcw.blobs.QUtils;
 public final class StudyLayoutBlob
     extends QRecord
 {
+    private static final int QDWORD_SIZE = QUtils.getSize(QDword.class);
+
     private int unknown1;
     private int verticalPct;
 
@@ -56,6 +56,7 @@ public final class StudyLayoutBlob
     public void setVerticalPct(final int value)
     {
         this.verticalPct = value;
+        invalidateHash();
     }
 
     /**
@@ -73,25 +74,22 @@ public final class StudyLayoutBlob
     @Override
     protected int getInternalSize()
     {
-        return (2 * QUtils.getSize(QDword.class));
+        return (2 * QDWORD_SIZE);
     }
 
     @Override
-    public void write(final OutputStream output)
-        throws IOException
+    protected void writeBody(final ByteBuffer buffer)
     {
-        super.write(output);
-        QUtils.writeQDword(unknown1, output);
-        QUtils.writeQDword(verticalPct, output);
+        QUtils.writeQDword(unknown1, buffer);
+        QUtils.writeQDword(verticalPct, buffer);
     }
 
-    public void parse(final InputStream stream)
-        throws IOException
+    public void parse(final ByteBuffer buffer)
     {
-        final int size = parseRecordHeader(stream);
+        final int size = parseRecordHeader(buffer);
 
-        setUnknown1(QUtils.readQDword(stream));
-        setVerticalPct(QUtils.readQDword(stream));
+        setUnknown1(QUtils.readQDword(buffer));
+        setVerticalPct(QUtils.readQDword(buffer));
 
         setValid();
         assert (size == getInternalSize());
@@ -20,30 +20,50 @@
 
 package org.stuntaz.libqcw.blobs.barchart;
 
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.stuntaz.libqcw.IBarChartVisitor;
 import org.stuntaz.libqcw.QCWException;
+import org.stuntaz.libqcw.blobs.ChildList;
 import org.stuntaz.libqcw.blobs.QDword;
+import org.stuntaz.libqcw.blobs.QHash;
 import org.stuntaz.libqcw.blobs.QRecord;
+import org.stuntaz.libqcw.blobs.QString;
 import org.stuntaz.libqcw.blobs.QUtils;
 
 /**
  * Represents a group of lines associated with a bar chart study.
  * 
+ * Symbols are kept in the order they appear in the file. An index of the
+ * symbols by name is built the first time a symbol is looked up and is kept
+ * current by {@link #addSymbolEntry(SymbolEntryBlob)},
+ * {@link #renameSymbol(String, String)}, {@link #removeSymbol(String)} and
+ * {@link SymbolEntryBlob#setSymbolName(String)}. Changes made directly to the
+ * list returned by {@link #getSymbols()} cause it to be rebuilt on the next
+ * lookup.
+ * 
  * @author nall
  *
  */
 public final class StudyLineGroupBlob
     extends QRecord
 {
-    private final List<SymbolEntryBlob> symbols = new ArrayList<SymbolEntryBlob>();
+    private final ChildList<SymbolEntryBlob> symbols = new ChildList<SymbolEntryBlob>(
+        this);
+
+    // The first entry for each symbol name; valid while indexModCount matches.
+    // It is only published once built, so that an unmodified group can be
+    // searched by several threads.
+    private volatile Map<QString, SymbolEntryBlob> index = null;
+    private int indexModCount;
 
     /**
      * Return the symbol entries for this study.
@@ -55,6 +75,29 @@ public final class StudyLineGroupBlob
         return symbols;
     }
 
+    /**
+     * Returns the entry for the specified symbol. Note that {@code symName}
+     * must be the fully qualified symbol name (e.g. INDEX:OEX.X).
+     * 
+     * @param symName the name of the symbol to find
+     * @return the symbol's entry, or null if this study has no lines for it
+     */
+    public SymbolEntryBlob getSymbol(final String symName)
+    {
+        return getIndex().get(new NameKey(symName));
+    }
+
+    /**
+     * Returns true if this study has an entry for the specified symbol.
+     * 
+     * @param symName the fully qualified name of the symbol to find
+     * @return true if the symbol has an entry
+     */
+    public boolean containsSymbol(final String symName)
+    {
+        return getIndex().containsKey(new NameKey(symName));
+    }
+
     /**
      * Adds a symbol entry to this study
      * 
@@ -62,16 +105,44 @@ public final class StudyLineGroupBlob
      */
     public void addSymbolEntry(final SymbolEntryBlob symbol)
     {
-        for (final SymbolEntryBlob s : symbols)
+        final Map<QString, SymbolEntryBlob> idx = getIndex();
+        if (idx.containsKey(symbol.getQSymbolName()))
         {
-            if (s.getSymbolName().equals(symbol.getSymbolName()))
-            {
-                throw new QCWException("Cannot add symbol " + s.getSymbolName()
-                    + " to lines group since an entry already exists");
-            }
+            throw new QCWException("Cannot add symbol "
+                + symbol.getSymbolName()
+                + " to lines group since an entry already exists");
         }
 
         symbols.add(symbol);
+        idx.put(symbol.getQSymbolName(), symbol);
+        indexModCount = symbols.getModCount();
+    }
+
+    /**
+     * Renames the entry for the specified symbol, keeping its position.
+     * 
+     * @param oldName the fully qualified name of the symbol to rename
+     * @param newName the new fully qualified name
+     * @return true if an entry was renamed
+     * @throws QCWException if there is already an entry for {@code newName}
+     */
+    public boolean renameSymbol(final String oldName, final String newName)
+    {
+        final SymbolEntryBlob symbol = getSymbol(oldName);
+        if (symbol == null)
+        {
+            return false;
+        }
+
+        final SymbolEntryBlob existing = getSymbol(newName);
+        if (existing != null && existing != symbol)
+        {
+            throw new QCWException("Cannot rename symbol " + oldName + " to "
+                + newName + " since an entry already exists");
+        }
+
+        symbol.setSymbolName(newName);
+        return true;
     }
 
     /**
@@ -79,23 +150,101 @@ public final class StudyLineGroupBlob
      * {@code symName} must be the fully qualified symbol name (e.g. INDEX:OEX.X).
      * 
      * @param symName the name of the symbol to remove
+     * @return true if an entry was removed
+     */
+    public boolean removeSymbol(final String symName)
+    {
+        return removeSymbols(Collections.singleton(symName));
+    }
+
+    /**
+     * Removes the specified symbols from this study's symbol entries. The
+     * entries are removed in a single pass, so this should be preferred over
+     * repeated calls to {@link #removeSymbol(String)}.
+     * 
+     * @param symNames the fully qualified names of the symbols to remove
+     * @return true if any entry was removed
      */
-    public void removeSymbol(final String symName)
+    public boolean removeSymbols(final Collection<String> symNames)
     {
-        final Set<Integer> idxToRemove = new HashSet<Integer>();
-        for (int i = 0; i < symbols.size(); ++i)
+        final Map<QString, SymbolEntryBlob> idx = getIndex();
+        final Set<QString> names = new HashSet<QString>();
+        for (final String symName : symNames)
+        {
+            final SymbolEntryBlob symbol = idx.get(new NameKey(symName));
+            if (symbol != null)
+            {
+                names.add(symbol.getQSymbolName());
+            }
+        }
+
+        if (names.isEmpty())
+        {
+            return false;
+        }
+
+        final List<SymbolEntryBlob> kept = new ArrayList<SymbolEntryBlob>(
+            symbols.size() - names.size());
+        for (final SymbolEntryBlob symbol : symbols)
         {
-            if (symbols.get(i).getSymbolName().equals(symName))
+            if (!names.contains(symbol.getQSymbolName()))
             {
-                idxToRemove.add(i);
+                kept.add(symbol);
             }
         }
 
-        assert (idxToRemove.size() <= 1);
-        for (final int i : idxToRemove)
+        symbols.setAll(kept);
+        idx.keySet().removeAll(names);
+        indexModCount = symbols.getModCount();
+        return true;
+    }
+
+    /**
+     * Called by a symbol entry of this group when its name changes.
+     */
+    void symbolRenamed(final SymbolEntryBlob symbol, final QString oldName)
+    {
+        if (index == null || indexModCount != symbols.getModCount())
         {
-            symbols.remove(i);
+            return;
+        }
+
+        final SymbolEntryBlob existing = index.get(symbol.getQSymbolName());
+        if (existing == symbol)
+        {
+            // Renamed to the same name
+            return;
+        }
+        else if (index.get(oldName) == symbol && existing == null)
+        {
+            index.remove(oldName);
+            index.put(symbol.getQSymbolName(), symbol);
+        }
+        else
+        {
+            // Duplicate names are involved; let the next lookup sort them out
+            index = null;
+        }
+    }
+
+    private Map<QString, SymbolEntryBlob> getIndex()
+    {
+        Map<QString, SymbolEntryBlob> idx = index;
+        if (idx == null || indexModCount != symbols.getModCount())
+        {
+            idx = new HashMap<QString, SymbolEntryBlob>(
+                symbols.size() * 4 / 3 + 1);
+            for (final SymbolEntryBlob symbol : symbols)
+            {
+                if (!idx.containsKey(symbol.getQSymbolName()))
+                {
+                    idx.put(symbol.getQSymbolName(), symbol);
+                }
+            }
+            indexModCount = symbols.getModCount();
+            index = idx;
         }
+        return idx;
     }
 
     @Override
@@ -105,37 +254,42 @@ public final class StudyLineGroupBlob
 
         for (final SymbolEntryBlob symbol : symbols)
         {
-            System.out.println("Add size for symbol " + symbol.getSymbolName()
-                + ": " + symbol.getSize());
             totalBytes += symbol.getSize();
         }
         return totalBytes;
     }
 
     @Override
-    public void write(final OutputStream output)
-        throws IOException
+    protected long computeContentHash()
     {
-        super.write(output);
+        long h = QHash.mix(QHash.SEED, symbols.size());
+        for (final SymbolEntryBlob symbol : symbols)
+        {
+            h = QHash.mix(h, symbol.getContentHash());
+        }
+        return QHash.finish(h);
+    }
 
-        QUtils.writeQDword(symbols.size(), output);
+    @Override
+    protected void writeBody(final ByteBuffer buffer)
+    {
+        QUtils.writeQDword(symbols.size(), buffer);
         for (final SymbolEntryBlob symbol : symbols)
         {
-            System.out.println("Writing symbol: " + symbol.getSymbolName());
-            symbol.write(output);
+            symbol.write(buffer);
         }
     }
 
-    public void parse(final InputStream stream)
-        throws IOException
+    public void parse(final ByteBuffer buffer)
     {
-        final int size = parseRecordHeader(stream);
+        final int size = parseRecordHeader(buffer);
 
-        final int numSyms = QUtils.readQDword(stream);
+        final int numSyms = QUtils.readQDword(buffer);
+        symbols.ensureCapacity(numSyms);
 
         for (int i = 0; i < numSyms; ++i)
         {
-            final SymbolEntryBlob sym = new SymbolEntryBlob(stream);
+            final SymbolEntryBlob sym = new SymbolEntryBlob(buffer);
             symbols.add(sym);
         }
 
@@ -152,4 +306,32 @@ public final class StudyLineGroupBlob
     {
         visitor.visit(this);
     }
+
+    /**
+     * A key for looking up a name in the index without encoding it as a
+     * QString. It hashes like {@link QString#hashCode()} and equals the
+     * QStrings with the same characters, which is all the index needs of a
+     * lookup key.
+     */
+    private static final class NameKey
+    {
+        private final String name;
+
+        NameKey(final String name)
+        {
+            this.name = name;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return (name == null) ? 0 : name.hashCode();
+        }
+
+        @Override
+        public boolean equals(final Object o)
+        {
+            return (o instanceof QString) && ((QString) o).contentEquals(name);
+        }
+    }
 }
@@ -22,16 +22,18 @@ package org.stuntaz.libqcw.blobs.barchart;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
 import org.stuntaz.libqcw.IBarChartVisitor;
-import org.stuntaz.libqcw.QCWException;
+import org.stuntaz.libqcw.blobs.ChildList;
+import org.stuntaz.libqcw.blobs.QCodecRegistry;
 import org.stuntaz.libqcw.blobs.QDword;
+import org.stuntaz.libqcw.blobs.QHash;
 import org.stuntaz.libqcw.blobs.QRecord;
+import org.stuntaz.libqcw.blobs.QString;
 import org.stuntaz.libqcw.blobs.QUtils;
-import org.stuntaz.libqcw.defines.QLineType;
 
 /**
  * Represents a symbol entry that exists within a study. This symbol includes a
@@ -43,9 +45,11 @@ import org.stuntaz.libqcw.defines.QLineType;
 public final class SymbolEntryBlob
     extends QRecord
 {
-    private String sybolName;
+    private static final int QDWORD_SIZE = QUtils.getSize(QDword.class);
 
-    List<ILineBlob> headers = new ArrayList<ILineBlob>();
+    private QString symbolName;
+
+    final ChildList<ILineBlob> headers = new ChildList<ILineBlob>(this);
 
     /**
      * Creates a new SymbolEntryBlob with the specified name and collection of lines.
@@ -55,7 +59,7 @@ public final class SymbolEntryBlob
      */
     public SymbolEntryBlob(final String name, final List<ILineBlob> headers)
     {
-        this.sybolName = name;
+        this.symbolName = new QString(name);
         this.headers.addAll(headers);
         setValid();
     }
@@ -71,6 +75,16 @@ public final class SymbolEntryBlob
         parse(input);
     }
 
+    /**
+     * Creates a new SymbolEntryBlob by parsing the specified buffer.
+     * 
+     * @param buffer the buffer to parse
+     */
+    public SymbolEntryBlob(final ByteBuffer buffer)
+    {
+        parse(buffer);
+    }
+
     /**
      * Sets the symbol name.
      * 
@@ -78,7 +92,15 @@ public final class SymbolEntryBlob
      */
     public void setSymbolName(final String name)
     {
-        this.sybolName = name;
+        final QString oldName = symbolName;
+        this.symbolName = new QString(name);
+        invalidateSize();
+
+        // Keep the symbol index of the owning group current
+        if (getParent() instanceof StudyLineGroupBlob)
+        {
+            ((StudyLineGroupBlob) getParent()).symbolRenamed(this, oldName);
+        }
     }
 
     /**
@@ -88,7 +110,39 @@ public final class SymbolEntryBlob
      */
     public String getSymbolName()
     {
-        return sybolName;
+        return symbolName.getValue();
+    }
+
+    /**
+     * Returns the symbol name as it is stored in the file.
+     */
+    QString getQSymbolName()
+    {
+        return symbolName;
+    }
+
+    /**
+     * Returns true if this entry is for the specified symbol. The comparison
+     * is made without decoding this entry's symbol name.
+     * 
+     * @param name the fully qualified symbol name (e.g. INDEX:OEX.X)
+     * @return true if this entry's symbol name equals {@code name}
+     */
+    public boolean hasSymbolName(final CharSequence name)
+    {
+        return symbolName.contentEquals(name);
+    }
+
+    /**
+     * Returns true if this entry is for the same symbol as the specified
+     * entry. The comparison is made without decoding either symbol name.
+     * 
+     * @param other the entry to compare against
+     * @return true if both entries have the same symbol name
+     */
+    public boolean hasSameSymbol(final SymbolEntryBlob other)
+    {
+        return symbolName.equals(other.symbolName);
     }
 
     /**
@@ -117,7 +171,42 @@ public final class SymbolEntryBlob
      */
     public void setLineHeaders(final List<ILineBlob> headers)
     {
-        this.headers = headers;
+        this.headers.setAll(headers);
+    }
+
+    /**
+     * Returns a copy of this symbol's entry, including copies of its lines.
+     * Blobs are owned by a single parent, so an entry or line must be copied
+     * rather than shared to appear in another group or symbol.
+     * 
+     * @return a new entry equal to this one
+     */
+    public SymbolEntryBlob copy()
+    {
+        return new SymbolEntryBlob(QUtils.writeToBuffer(this, getSize()));
+    }
+
+    /**
+     * Returns copies of this symbol's lines (see {@link #copy()}).
+     * 
+     * @return a new list of lines equal to this symbol's lines
+     */
+    public List<ILineBlob> copyLineHeaders()
+    {
+        final List<ILineBlob> copies = new ArrayList<ILineBlob>(headers.size());
+        for (final ILineBlob header : headers)
+        {
+            final ILineBlob line = createLine(header.getLineTypeValue());
+            line.parse(QUtils.writeToBuffer(header, header.getSize()));
+            copies.add(line);
+        }
+        return copies;
+    }
+
+    private static ILineBlob createLine(final int type)
+    {
+        final ILineBlob line = QCodecRegistry.createLine(type);
+        return (line == null) ? new UnsupportedLineBlob(type) : line;
     }
 
     @Override
@@ -126,91 +215,68 @@ public final class SymbolEntryBlob
         int totalBytes = 0;
         for (final ILineBlob header : headers)
         {
-            totalBytes += QUtils.getSize(QDword.class); // header.getLineType()
+            totalBytes += QDWORD_SIZE; // header.getLineTypeValue()
             totalBytes += header.getSize();
         }
 
         // Terminator
-        totalBytes += QUtils.getSize(QDword.class); // terminator
+        totalBytes += QDWORD_SIZE; // terminator
 
         // Number of custom lines
-        totalBytes += QUtils.getSize(QDword.class); // headers.size()
+        totalBytes += QDWORD_SIZE; // headers.size()
 
         // Symbol name
-        totalBytes += QUtils.getQStringSize(sybolName);
+        totalBytes += symbolName.getSize();
 
         return totalBytes;
     }
 
     @Override
-    public void write(final OutputStream output)
-        throws IOException
+    protected long computeContentHash()
     {
-        super.write(output);
+        long h = QHash.mix(QHash.SEED, symbolName.getContentHash());
+        h = QHash.mix(h, headers.size());
+        for (final ILineBlob header : headers)
+        {
+            h = QHash.mix(h, header.getContentHash());
+        }
+        return QHash.finish(h);
+    }
 
-        QUtils.writeQString(sybolName, output);
-        new QDword(headers.size()).write(output);
+    @Override
+    protected void writeBody(final ByteBuffer buffer)
+    {
+        symbolName.write(buffer);
+        QUtils.writeQDword(headers.size(), buffer);
 
         for (final ILineBlob header : headers)
         {
-            QUtils.writeQDword(header.getLineType().getValue(), output);
-            header.write(output);
+            QUtils.writeQDword(header.getLineTypeValue(), buffer);
+            header.write(buffer);
         }
 
         // Terminator
-        QUtils.writeQDword(0, output); // terminator
+        QUtils.writeQDword(0, buffer); // terminator
     }
 
-    public void parse(final InputStream stream)
-        throws IOException
+    public void parse(final ByteBuffer buffer)
     {
-        final int size = parseRecordHeader(stream);
+        final int size = parseRecordHeader(buffer);
 
-        setSymbolName(QUtils.readQString(stream));
+        symbolName = new QString();
+        symbolName.parse(buffer);
 
-        final int numLines = QUtils.readQDword(stream);
+        final int numLines = QUtils.readQDword(buffer);
+        headers.ensureCapacity(numLines);
 
         for (int i = 0; i < numLines; ++i)
         {
-            final QLineType type = QLineType
-                .forValue(QUtils.readQDword(stream));
-
-            switch (type)
-            {
-            case BasicLine:
-            case Note:
-            {
-                final LineHeaderBlob line = new LineHeaderBlob(type);
-                line.parse(stream);
-                addLine(line);
-                break;
-            }
-
-            case Retracement:
-            case Projection:
-            case Fibonacci_Extension:
-            case Fibonacci_Time_Interval:
-            case Fibonacci_Circles:
-            case Fibonacci_Time_Cycles:
-            case Time_Cycles:
-            case Regression_Line:
-            case Andrews_Pitchfork:
-            case Andrews_Pitchfork_Modified_Schiff:
-            case Andrews_Pitchfork_Inside:
-            case Pitchfan:
-            {
-                final UnsupportedLineBlob line = new UnsupportedLineBlob(type);
-                line.parse(stream);
-                addLine(line);
-                break;
-            }
-            default:
-                throw new QCWException("Unknown line type: " + type + " in "
-                    + getSymbolName());
-            }
+            final ILineBlob line = createLine(QUtils.readQDword(buffer));
+            line.parse(buffer);
+            addLine(line);
         }
 
-        final int terminator = QUtils.readQDword(stream);
+        final int terminator = QUtils.readQDword(buffer);
         assert (terminator == 0);
 
         setValid();
@@ -34,7 +34,7 @@ public final class UnsupportedLineBlob
     extends UnsupportedBlob
     implements ILineBlob
 {
-    private final QLineType lineType;
+    private final int lineType;
 
     /**
      * Creates a new UnsupportedLineBlob with the specified line type
@@ -42,11 +42,27 @@ public final class UnsupportedLineBlob
      * @param lineType the line type of this unsupported line
      */
     public UnsupportedLineBlob(final QLineType lineType)
+    {
+        this(lineType.getValue());
+    }
+
+    /**
+     * Creates a new UnsupportedLineBlob with the specified type code, which
+     * need not have a {@link QLineType} constant.
+     * 
+     * @param lineType the type code of this unsupported line
+     */
+    public UnsupportedLineBlob(final int lineType)
     {
         this.lineType = lineType;
     }
 
     public QLineType getLineType()
+    {
+        return QLineType.find(lineType);
+    }
+
+    public int getLineTypeValue()
     {
         return lineType;
     }
@@ -34,19 +34,35 @@ public class UnsupportedStudyBlob
     extends UnsupportedBlob
     implements IStudyBlob
 {
-    private final QStudyType studyType;
+    private final int studyType;
 
     /**
      * Creates a new UnsupportedStudyBlob with the specified study type
      * 
-     * @param studyType the study type of this unsupported line
+     * @param studyType the study type of this unsupported study
      */
     public UnsupportedStudyBlob(final QStudyType studyType)
+    {
+        this(studyType.getValue());
+    }
+
+    /**
+     * Creates a new UnsupportedStudyBlob with the specified type code, which
+     * need not have a {@link QStudyType} constant.
+     * 
+     * @param studyType the type code of this unsupported study
+     */
+    public UnsupportedStudyBlob(final int studyType)
     {
         this.studyType = studyType;
     }
 
     public QStudyType getStudyType()
+    {
+        return QStudyType.find(studyType);
+    }
+
+    public int getStudyTypeValue()
     {
         return studyType;
     }
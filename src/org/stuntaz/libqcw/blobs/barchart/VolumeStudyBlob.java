@@ -22,7 +22,7 @@ package org.stuntaz.libqcw.blobs.barchart;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 import org.stuntaz.libqcw.IBarChartVisitor;
 import org.stuntaz.libqcw.blobs.QDword;
@@ -42,8 +42,8 @@ public final class VolumeStudyBlob
     implements IStudyBlob
 {
     private int unknown1;
-    private final UnsupportedBlob unknown2 = new UnsupportedBlob();
-    private final UnsupportedBlob substudies = new UnsupportedBlob();
+    private final UnsupportedBlob unknown2 = adopt(new UnsupportedBlob());
+    private final UnsupportedBlob substudies = adopt(new UnsupportedBlob());
 
     @Override
     protected int getInternalSize()
@@ -61,24 +61,33 @@ public final class VolumeStudyBlob
         return QStudyType.Volume;
     }
 
+    public int getStudyTypeValue()
+    {
+        return QStudyType.Volume.getValue();
+    }
+
     @Override
-    public void write(final OutputStream output)
-        throws IOException
+    public void write(final ByteBuffer buffer)
     {
-        super.write(output);
+        super.write(buffer);
 
-        QUtils.writeQDword(unknown1, output);
-        unknown2.write(output);
-        substudies.write(output);
+        // Substudies follow the study record rather than being part of it
+        substudies.write(buffer);
     }
 
-    public void parse(final InputStream stream)
-        throws IOException
+    @Override
+    protected void writeBody(final ByteBuffer buffer)
     {
-        final int size = parseRecordHeader(stream);
+        QUtils.writeQDword(unknown1, buffer);
+        unknown2.write(buffer);
+    }
 
-        setUnknown1(QUtils.readQDword(stream));
-        unknown2.parse(stream);
+    public void parse(final ByteBuffer buffer)
+    {
+        final int size = parseRecordHeader(buffer);
+
+        setUnknown1(QUtils.readQDword(buffer));
+        unknown2.parse(buffer);
 
         setValid();
         assert (size == getInternalSize());
@@ -96,6 +105,16 @@ public final class VolumeStudyBlob
         substudies.parse(stream);
     }
 
+    /**
+     * Parses the specified buffer for volume substudies.
+     * 
+     * @param buffer the buffer to parse
+     */
+    public void parseSubstudies(final ByteBuffer buffer)
+    {
+        substudies.parse(buffer);
+    }
+
     private void setUnknown1(final int value)
     {
         unknown1 = value;
@@ -23,6 +23,7 @@ package org.stuntaz.libqcw.blobs.browser;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 import org.stuntaz.libqcw.IWorkspaceVisitor;
 import org.stuntaz.libqcw.blobs.QSection;
@@ -39,7 +40,7 @@ import org.stuntaz.libqcw.defines.QWorkspaceSection;
 public final class BrowserBlob
     extends QSection
 {
-    UnsupportedBlob unknown1 = new UnsupportedBlob();
+    UnsupportedBlob unknown1 = adopt(new UnsupportedBlob());
 
     @Override
     public QWorkspaceSection getSectionType()
@@ -57,6 +58,13 @@ public final class BrowserBlob
         throws IOException
     {
         unknown1.parse(stream);
+        setValid();
+    }
+
+    public void parse(final ByteBuffer buffer)
+    {
+        unknown1.parse(buffer);
+        setValid();
     }
 
     @Override
@@ -66,6 +74,12 @@ public final class BrowserBlob
         unknown1.write(output);
     }
 
+    @Override
+    public void write(final ByteBuffer buffer)
+    {
+        unknown1.write(buffer);
+    }
+
     @Override
     public void accept(final IWorkspaceVisitor visitor)
     {
@@ -20,11 +20,16 @@
 
 package org.stuntaz.libqcw.blobs.files;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 import org.stuntaz.libqcw.QCWException;
+import org.stuntaz.libqcw.blobs.QUtils;
 import org.stuntaz.libqcw.blobs.barchart.BarChartBlob;
 import org.stuntaz.libqcw.blobs.barchart.BarChartWrapperBlob;
 
@@ -38,7 +43,9 @@ import org.stuntaz.libqcw.blobs.barchart.BarChartWrapperBlob;
  */
 public final class LayoutFileBlob
 {
-    private BarChartWrapperBlob wrapper = new BarChartWrapperBlob();
+    private static final byte[] FILE_MAGIC = { 1, 0 };
+
+    private BarChartWrapperBlob wrapper = new BarChartWrapperBlob(false);
 
     /**
      * Sets the Bar Chart for this QCL file.
@@ -61,23 +68,66 @@ public final class LayoutFileBlob
     }
 
     /**
-     * Writes this file to the specified output stream
+     * Returns the size, in bytes, of this file.
+     * 
+     * @return the size of this file
+     */
+    public int getSize()
+    {
+        return this.wrapper.getSize() + 2;
+    }
+
+    /**
+     * Writes this file to the specified output stream. The chart is written in
+     * a single pass into a buffer sized from its cached size.
      * 
      * @param output the stream to which to write
      * @throws IOException if an I/O error occurs while writing
      */
     public void write(final OutputStream output)
         throws IOException
+    {
+        final ByteBuffer body = writeWrapper();
+        output.write(FILE_MAGIC);
+        output.write(body.array(), 0, body.limit());
+    }
+
+    /**
+     * Writes this file to the specified file. The chart is written in a single
+     * pass into a buffer sized from its cached size.
+     * 
+     * @param file the file to which to write
+     * @throws IOException if an I/O error occurs while writing
+     */
+    public void write(final File file)
+        throws IOException
+    {
+        QUtils.writeFully(file, ByteBuffer.wrap(FILE_MAGIC),
+            writeWrapper());
+    }
+
+    /**
+     * Writes this file to the specified buffer, which must have at least
+     * {@link #getSize()} bytes remaining.
+     * 
+     * @param buffer the little endian buffer to which to write
+     */
+    public void write(final ByteBuffer buffer)
     {
         // All files start with 01 00
-        output.write(1);
-        output.write(0);
+        buffer.put(FILE_MAGIC);
 
-        wrapper.write(output);
+        wrapper.write(buffer);
+    }
+
+    private ByteBuffer writeWrapper()
+    {
+        return QUtils.writeToBuffer(wrapper, wrapper.getSize());
     }
 
     /**
-     * Populates this object from the specified input stream
+     * Populates this object from the specified input stream. The rest of the
+     * stream is read into memory and parsed with {@link #parse(ByteBuffer)}.
      * 
      * @param stream the stream from which to read
      * @throws IOException if an I/O error occurs while reading
@@ -85,14 +135,48 @@ public final class LayoutFileBlob
     public void parse(final InputStream stream)
         throws IOException
     {
-        final int magic = stream.read() | (stream.read() << 8);
+        parse(QUtils.readFully(stream));
+    }
 
-        if (magic != 0x0001)
+    /**
+     * Populates this object from the specified file. The file is mapped into
+     * memory and parsed with {@link #parse(ByteBuffer)}.
+     * 
+     * @param file the file from which to read
+     * @throws IOException if an I/O error occurs while reading
+     */
+    public void parse(final File file)
+        throws IOException
+    {
+        parse(QUtils.map(file));
+    }
+
+    /**
+     * Populates this object from the specified buffer, starting at its
+     * current position.
+     * 
+     * @param buffer the buffer from which to read
+     * @throws QCWException if the buffer does not contain a valid layout
+     */
+    public void parse(final ByteBuffer buffer)
+    {
+        final ByteBuffer input = buffer.order(ByteOrder.LITTLE_ENDIAN);
+        try
         {
-            throw new QCWException("Unexpected magic number in header");
-        }
+            final int magic = QUtils.readWord(input);
+
+            if (magic != 0x0001)
+            {
+                throw new QCWException("Unexpected magic number in header");
+            }
 
-        wrapper = new BarChartWrapperBlob();
-        wrapper.parse(stream);
+            wrapper = new BarChartWrapperBlob(false);
+            wrapper.parse(input);
+        }
+        catch (final BufferUnderflowException e)
+        {
+            throw new QCWException("Unexpected end of file at offset 0x"
+                + Integer.toHexString(input.position()));
+        }
     }
 }
@@ -20,11 +20,16 @@
 
 package org.stuntaz.libqcw.blobs.files;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 import org.stuntaz.libqcw.QCWException;
+import org.stuntaz.libqcw.blobs.QUtils;
 import org.stuntaz.libqcw.blobs.workspace.WorkspaceBlob;
 
 /**
@@ -37,7 +42,32 @@ import org.stuntaz.libqcw.blobs.workspace.WorkspaceBlob;
  */
 public final class WorkspaceFileBlob
 {
+    private static final byte[] FILE_MAGIC = { 1, 0 };
+
     private WorkspaceBlob workspace = new WorkspaceBlob();
+    private final boolean lazySections;
+
+    /**
+     * Creates a new WorkspaceFileBlob that decodes all sections when parsed.
+     */
+    public WorkspaceFileBlob()
+    {
+        this(false);
+    }
+
+    /**
+     * Creates a new WorkspaceFileBlob. When {@code lazySections} is true,
+     * parsing only records where each section is and a section is decoded
+     * the first time it is requested. This is much faster for tools which
+     * only look at some sections (e.g. bar charts).
+     * 
+     * @param lazySections true if sections should only be decoded when they
+     *      are requested
+     */
+    public WorkspaceFileBlob(final boolean lazySections)
+    {
+        this.lazySections = lazySections;
+    }
 
     /**
      * Sets the workspace included by this file wrapper.
@@ -70,21 +100,40 @@ public final class WorkspaceFileBlob
     }
 
     /**
-     * Writes this file to the specified output stream
+     * Writes this file to the specified output stream. The workspace is
+     * written in a single pass into a buffer sized from its cached size.
      * 
      * @param output the stream to which to write
-     * @throws IOException if an I/O error occurs while writing
+     * @throws QCWException if an I/O error occurs while writing
      */
     public void write(final OutputStream output)
     {
         try
         {
+            final ByteBuffer body = writeWorkspace();
+            output.write(FILE_MAGIC);
+            output.write(body.array(), 0, body.limit());
+        }
+        catch (final IOException e)
+        {
+            throw new QCWException("I/O error detected while writing file: "
+                + e.getMessage());
+        }
+    }
 
-            // All files start with 01 00
-            output.write(1);
-            output.write(0);
-
-            getWorkspace().write(output);
+    /**
+     * Writes this file to the specified file. The workspace is written in a
+     * single pass into a buffer sized from its cached size.
+     * 
+     * @param file the file to which to write
+     * @throws QCWException if an I/O error occurs while writing
+     */
+    public void write(final File file)
+    {
+        try
+        {
+            QUtils.writeFully(file, ByteBuffer.wrap(FILE_MAGIC),
+                writeWorkspace());
         }
         catch (final IOException e)
         {
@@ -94,29 +143,112 @@ public final class WorkspaceFileBlob
     }
 
     /**
-     * Populates this object from the specified input stream
+     * Writes this file to the specified buffer, which must have at least
+     * {@link #getSize()} bytes remaining.
+     * 
+     * @param buffer the little endian buffer to which to write
+     */
+    public void write(final ByteBuffer buffer)
+    {
+        // All files start with 01 00
+        buffer.put(FILE_MAGIC);
+
+        getWorkspace().write(buffer);
+    }
+
+    private ByteBuffer writeWorkspace()
+    {
+        return QUtils.writeToBuffer(getWorkspace(), getWorkspace().getSize());
+    }
+
+    /**
+     * Populates this object from the specified input stream. The rest of the
+     * stream is read into memory and parsed with {@link #parse(ByteBuffer)}.
      * 
      * @param stream the stream from which to read
-     * @throws IOException if an I/O error occurs while reading
+     * @throws QCWException if an I/O error occurs while reading
      */
     public void parse(final InputStream stream)
     {
         try
         {
-            final int magic = stream.read() | (stream.read() << 8);
+            parse(QUtils.readFully(stream));
+        }
+        catch (final IOException e)
+        {
+            throw new QCWException("I/O error detected while parsing file: "
+                + e.getMessage());
+        }
+    }
+
+    /**
+     * Populates this object from the specified file. The file is mapped into
+     * memory and parsed with {@link #parse(ByteBuffer)}.
+     * 
+     * @param file the file from which to read
+     * @throws QCWException if an I/O error occurs while reading
+     */
+    public void parse(final File file)
+    {
+        try
+        {
+            parse(QUtils.map(file));
+        }
+        catch (final IOException e)
+        {
+            throw new QCWException("I/O error detected while parsing file: "
+                + e.getMessage());
+        }
+    }
+
+    /**
+     * Populates this object from a copy of the specified file read into
+     * memory. Unlike {@link #parse(File)} this keeps no mapping of the file,
+     * so use this when the workspace will be written back to the same file
+     * (see {@link QUtils#map(File)}).
+     * 
+     * @param file the file from which to read
+     * @throws QCWException if an I/O error occurs while reading
+     */
+    public void parseCopy(final File file)
+    {
+        try
+        {
+            parse(QUtils.read(file));
+        }
+        catch (final IOException e)
+        {
+            throw new QCWException("I/O error detected while parsing file: "
+                + e.getMessage());
+        }
+    }
+
+    /**
+     * Populates this object from the specified buffer, starting at its
+     * current position.
+     * 
+     * @param buffer the buffer from which to read
+     * @throws QCWException if the buffer does not contain a valid workspace
+     */
+    public void parse(final ByteBuffer buffer)
+    {
+        final ByteBuffer input = buffer.order(ByteOrder.LITTLE_ENDIAN);
+        try
+        {
+            final int magic = QUtils.readWord(input);
 
             if (magic != 0x0001)
             {
                 throw new QCWException("Unexpected magic number in header: " + magic);
             }
 
-            setWorkspace(new WorkspaceBlob());
-            getWorkspace().parse(stream);
+            setWorkspace(new WorkspaceBlob(lazySections));
+            getWorkspace().parse(input);
         }
-        catch (final IOException e)
+        catch (final BufferUnderflowException e)
         {
-            throw new QCWException("I/O error detected while parsing file: "
-                + e.getMessage());
+            throw new QCWException("Unexpected end of file at offset 0x"
+                + Integer.toHexString(input.position()));
         }
     }
 }
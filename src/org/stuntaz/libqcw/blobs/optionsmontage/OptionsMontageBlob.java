@@ -23,6 +23,7 @@ package org.stuntaz.libqcw.blobs.optionsmontage;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 import org.stuntaz.libqcw.IWorkspaceVisitor;
 import org.stuntaz.libqcw.blobs.QSection;
@@ -39,12 +40,12 @@ import org.stuntaz.libqcw.defines.QWorkspaceSection;
 public final class OptionsMontageBlob
     extends QSection
 {
-    private final UnsupportedBlob unknown1 = new UnsupportedBlob();
-    private final UnsupportedBlob unknown2 = new UnsupportedBlob();
-    private final UnsupportedBlob unknown3 = new UnsupportedBlob();
-    private final UnsupportedBlob unknown4 = new UnsupportedBlob();
-    private final UnsupportedBlob unknown5 = new UnsupportedBlob();
-    private final UnsupportedBlob unknown6 = new UnsupportedBlob();
+    private final UnsupportedBlob unknown1 = adopt(new UnsupportedBlob());
+    private final UnsupportedBlob unknown2 = adopt(new UnsupportedBlob());
+    private final UnsupportedBlob unknown3 = adopt(new UnsupportedBlob());
+    private final UnsupportedBlob unknown4 = adopt(new UnsupportedBlob());
+    private final UnsupportedBlob unknown5 = adopt(new UnsupportedBlob());
+    private final UnsupportedBlob unknown6 = adopt(new UnsupportedBlob());
 
     @Override
     protected int getInternalSize()
@@ -72,6 +73,18 @@ public final class OptionsMontageBlob
         setValid();
     }
 
+    public void parse(final ByteBuffer buffer)
+    {
+        unknown1.parse(buffer);
+        unknown2.parse(buffer);
+        unknown3.parse(buffer);
+        unknown4.parse(buffer);
+        unknown5.parse(buffer);
+        unknown6.parse(buffer);
+
+        setValid();
+    }
+
     @Override
     public void write(final OutputStream output)
         throws IOException
@@ -84,6 +97,17 @@ public final class OptionsMontageBlob
         unknown6.write(output);
     }
 
+    @Override
+    public void write(final ByteBuffer buffer)
+    {
+        unknown1.write(buffer);
+        unknown2.write(buffer);
+        unknown3.write(buffer);
+        unknown4.write(buffer);
+        unknown5.write(buffer);
+        unknown6.write(buffer);
+    }
+
     @Override
     public void accept(final IWorkspaceVisitor visitor)
     {
@@ -23,6 +23,7 @@ package org.stuntaz.libqcw.blobs.quotesheet;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 import org.stuntaz.libqcw.IWorkspaceVisitor;
 import org.stuntaz.libqcw.blobs.QSection;
@@ -39,9 +40,9 @@ import org.stuntaz.libqcw.defines.QWorkspaceSection;
 public final class QuotesheetBlob
     extends QSection
 {
-    private final UnsupportedBlob unknown1 = new UnsupportedBlob();
-    private final UnsupportedBlob unknown2 = new UnsupportedBlob();
-    private final UnsupportedBlob unknown3 = new UnsupportedBlob();
+    private final UnsupportedBlob unknown1 = adopt(new UnsupportedBlob());
+    private final UnsupportedBlob unknown2 = adopt(new UnsupportedBlob());
+    private final UnsupportedBlob unknown3 = adopt(new UnsupportedBlob());
 
     @Override
     protected int getInternalSize()
@@ -65,6 +66,15 @@ public final class QuotesheetBlob
         setValid();
     }
 
+    public void parse(final ByteBuffer buffer)
+    {
+        unknown1.parse(buffer);
+        unknown2.parse(buffer);
+        unknown3.parse(buffer);
+
+        setValid();
+    }
+
     @Override
     public void write(final OutputStream output)
         throws IOException
@@ -74,6 +84,14 @@ public final class QuotesheetBlob
         unknown3.write(output);
     }
 
+    @Override
+    public void write(final ByteBuffer buffer)
+    {
+        unknown1.write(buffer);
+        unknown2.write(buffer);
+        unknown3.write(buffer);
+    }
+
     @Override
     public void accept(final IWorkspaceVisitor visitor)
     {
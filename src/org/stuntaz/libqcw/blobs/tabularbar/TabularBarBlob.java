@@ -23,6 +23,7 @@ package org.stuntaz.libqcw.blobs.tabularbar;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 import org.stuntaz.libqcw.IWorkspaceVisitor;
 import org.stuntaz.libqcw.blobs.QSection;
@@ -39,8 +40,8 @@ import org.stuntaz.libqcw.defines.QWorkspaceSection;
 public final class TabularBarBlob
     extends QSection
 {
-    private final UnsupportedBlob unknown1 = new UnsupportedBlob();
-    private final UnsupportedBlob unknown2 = new UnsupportedBlob();
+    private final UnsupportedBlob unknown1 = adopt(new UnsupportedBlob());
+    private final UnsupportedBlob unknown2 = adopt(new UnsupportedBlob());
 
     @Override
     protected int getInternalSize()
@@ -63,6 +64,14 @@ public final class TabularBarBlob
         setValid();
     }
 
+    public void parse(final ByteBuffer buffer)
+    {
+        unknown1.parse(buffer);
+        unknown2.parse(buffer);
+
+        setValid();
+    }
+
     @Override
     public void write(final OutputStream output)
         throws IOException
@@ -71,6 +80,13 @@ public final class TabularBarBlob
         unknown2.write(output);
     }
 
+    @Override
+    public void write(final ByteBuffer buffer)
+    {
+        unknown1.write(buffer);
+        unknown2.write(buffer);
+    }
+
     @Override
     public void accept(final IWorkspaceVisitor visitor)
     {
@@ -20,31 +20,34 @@
 
 package org.stuntaz.libqcw.blobs.workspace;
 
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
 import java.util.List;
+import java.util.RandomAccess;
 
 import org.stuntaz.libqcw.IWorkspaceVisitor;
+import org.stuntaz.libqcw.QCWException;
+import org.stuntaz.libqcw.blobs.ChildList;
+import org.stuntaz.libqcw.blobs.QCodecRegistry;
+import org.stuntaz.libqcw.blobs.QHash;
 import org.stuntaz.libqcw.blobs.QRecord;
 import org.stuntaz.libqcw.blobs.QSection;
-import org.stuntaz.libqcw.blobs.barchart.BarChartSectionBlob;
-import org.stuntaz.libqcw.blobs.browser.BrowserBlob;
-import org.stuntaz.libqcw.blobs.hotlist.HotlistBlob;
-import org.stuntaz.libqcw.blobs.islandbook.IslandBookBlob;
-import org.stuntaz.libqcw.blobs.level2.Level2Blob;
-import org.stuntaz.libqcw.blobs.optionsmontage.OptionsMontageBlob;
-import org.stuntaz.libqcw.blobs.quotesheet.QuotesheetBlob;
-import org.stuntaz.libqcw.blobs.ragingbull.RagingBullBlob;
-import org.stuntaz.libqcw.blobs.singlequote.SingleQuoteBlob;
-import org.stuntaz.libqcw.blobs.tabularbar.TabularBarBlob;
-import org.stuntaz.libqcw.blobs.timeandsales.TimeAndSalesBlob;
+import org.stuntaz.libqcw.blobs.QUtils;
+import org.stuntaz.libqcw.defines.QWorkspaceSection;
 
 /**
  * Represents a section container blob. This object is a thin wrapper around
  * the actual {@link QSection} objects.
  * 
+ * A container may be created in lazy mode. A lazy container only records the
+ * byte range of each section while parsing and decodes a section the first
+ * time it is retrieved from {@link #getSections()} (which includes being
+ * visited). Sections that are never retrieved are written back as their
+ * original bytes. The type of a section is always available through
+ * {@link #getSectionType(int)} without decoding it. Sections whose type code
+ * has no {@link QWorkspaceSection} constant are always decoded while parsing,
+ * since only their blob knows where they end.
+ * 
  * @author nall
  *
  */
@@ -52,7 +55,10 @@ public final class SectionContainerBlob
     extends QRecord
 {
     private final SectionHeaderBlob headers;
-    private final List<QSection> sections = new ArrayList<QSection>();
+    private final boolean lazy;
+    private final ChildList<QSection> sections = new ChildList<QSection>(
+        this);
+    private final List<QSection> sectionView = new SectionList();
 
     /**
      * Creates a new SectionContainerBlob with the specified headers.
@@ -60,18 +66,111 @@ public final class SectionContainerBlob
      * @param headers the section header blob to use in initialization
      */
     public SectionContainerBlob(final SectionHeaderBlob headers)
+    {
+        this(headers, false);
+    }
+
+    /**
+     * Creates a new SectionContainerBlob with the specified headers.
+     * 
+     * @param headers the section header blob to use in initialization
+     * @param lazy true if sections should only be decoded when requested
+     */
+    public SectionContainerBlob(
+        final SectionHeaderBlob headers,
+        final boolean lazy)
     {
         this.headers = headers;
+        this.lazy = lazy;
+    }
+
+    /**
+     * Returns true if sections are decoded only when they are requested.
+     * 
+     * @return true if this container is lazy
+     */
+    public boolean isLazy()
+    {
+        return lazy;
     }
 
     /**
-     * Returns the {@link QSection} instances contained in this blob.
+     * Returns the {@link QSection} instances contained in this blob. In lazy
+     * mode, each section is decoded when it is first retrieved from the
+     * returned list.
      * 
      * @return a list of {@link QSection} instances.
      */
     public List<QSection> getSections()
     {
-        return sections;
+        return sectionView;
+    }
+
+    /**
+     * Returns the type of the section at the specified index without decoding
+     * it.
+     * 
+     * @param index the index of the section
+     * @return the type of the section, or null if its type code has no
+     *      {@link QWorkspaceSection} constant
+     */
+    public QWorkspaceSection getSectionType(final int index)
+    {
+        return sections.get(index).getSectionType();
+    }
+
+    /**
+     * Returns the type code of the section at the specified index without
+     * decoding it.
+     * 
+     * @param index the index of the section
+     * @return the type code of the section
+     */
+    public int getSectionTypeValue(final int index)
+    {
+        return sections.get(index).getSectionTypeValue();
+    }
+
+    /**
+     * Returns true if the section at the specified index has been decoded.
+     * This is always true for containers that are not lazy.
+     * 
+     * @param index the index of the section
+     * @return true if the section has been decoded
+     */
+    public boolean isDecoded(final int index)
+    {
+        return !(sections.get(index) instanceof UndecodedSectionBlob);
+    }
+
+    /**
+     * Supplies the content hashes of the sections, so that sections which
+     * have not been decoded yet can be hashed without decoding them (see
+     * {@link #getContentHash()}). The hashes must have been computed from
+     * the same bytes, e.g. when the workspace was saved in a snapshot.
+     * Sections that have already been decoded are not affected.
+     * 
+     * @param hashes the content hash of each section
+     * @throws QCWException if there is not one hash per section
+     */
+    public void setSectionHashes(final long[] hashes)
+    {
+        if (hashes.length != sections.size())
+        {
+            throw new QCWException("Expected " + sections.size()
+                + " section hashes, got " + hashes.length);
+        }
+
+        for (int i = 0; i < hashes.length; ++i)
+        {
+            if (!isDecoded(i))
+            {
+                final UndecodedSectionBlob undecoded = (UndecodedSectionBlob) sections
+                    .get(i);
+                sections.set(i, new UndecodedSectionBlob(undecoded
+                    .getSectionType(), undecoded.getBytes(), hashes[i]));
+            }
+        }
     }
 
     @Override
@@ -86,69 +185,83 @@ public final class SectionContainerBlob
         return totalBytes;
     }
 
-    public void parse(final InputStream stream)
-        throws IOException
+    @Override
+    protected long computeContentHash()
     {
-        final int size = parseRecordHeader(stream);
+        long h = QHash.mix(QHash.SEED, sections.size());
+        for (final QSection section : sections)
+        {
+            h = QHash.mix(h, section.getContentHash());
+        }
+        return QHash.finish(h);
+    }
+
+    public void parse(final ByteBuffer buffer)
+    {
+        final int size = parseRecordHeader(buffer);
 
         final List<SectionHeaderInfoBlob> infos = headers.getSections();
+        sections.ensureCapacity(headers.getSectionCount());
         for (int i = 0; i < headers.getSectionCount(); ++i)
         {
-            QSection section = null;
-            switch (infos.get(i).getSectionType())
+            final SectionHeaderInfoBlob info = infos.get(i);
+            final QWorkspaceSection type = info.getSectionType();
+
+            if (lazy && type != null)
             {
-            case BarChart:
-                section = new BarChartSectionBlob();
-                break;
-            case TimeAndSales:
-                section = new TimeAndSalesBlob();
-                break;
-            case TabularBar:
-                section = new TabularBarBlob();
-                break;
-            case QuoteSheet:
-                section = new QuotesheetBlob();
-                break;
-            case Browser:
-                section = new BrowserBlob();
-                break;
-            case LevelII:
-                section = new Level2Blob();
-                break;
-            case HotList:
-                section = new HotlistBlob();
-                break;
-            case SingleQuote:
-                section = new SingleQuoteBlob();
-                break;
-            case IslandBook:
-                section = new IslandBookBlob();
-                break;
-            case OptionsMontage:
-                section = new OptionsMontageBlob();
-                break;
-            case RagingBull:
-                section = new RagingBullBlob();
-                break;
-            }
+                final int start = buffer.position();
+                for (int r = 0; r < type.getRecordCount(); ++r)
+                {
+                    QUtils.skipRecord(buffer);
+                }
 
-            section.parse(stream);
-            sections.add(section);
+                sections.add(new UndecodedSectionBlob(type, QUtils.slice(
+                    buffer, start, buffer.position())));
+            }
+            else
+            {
+                final QSection section = createSection(info
+                    .getSectionTypeValue());
+                section.parse(buffer);
+                sections.add(section);
+            }
         }
 
         setValid();
         assert (size == getInternalSize());
     }
 
-    @Override
-    public void write(final OutputStream output)
-        throws IOException
+    private QSection decode(final int index)
     {
-        super.write(output);
+        final QSection section = sections.get(index);
+        if (!(section instanceof UndecodedSectionBlob)) return section;
+
+        final UndecodedSectionBlob undecoded = (UndecodedSectionBlob) section;
+        final QSection decoded = createSection(undecoded
+            .getSectionTypeValue());
+        decoded.parse(undecoded.getBytes());
+        sections.set(index, decoded);
+
+        return decoded;
+    }
+
+    private static QSection createSection(final int type)
+    {
+        final QSection section = QCodecRegistry.createSection(type);
+        if (section == null)
+        {
+            throw new QCWException("Unknown section type: 0x"
+                + Integer.toHexString(type));
+        }
+        return section;
+    }
 
+    @Override
+    protected void writeBody(final ByteBuffer buffer)
+    {
         for (final QSection section : sections)
         {
-            section.write(output);
+            section.write(buffer);
         }
     }
 
@@ -161,4 +274,49 @@ public final class SectionContainerBlob
     {
         visitor.visit(this);
     }
+
+    /**
+     * The list returned from {@link SectionContainerBlob#getSections()}. It
+     * decodes undecoded sections as they are retrieved.
+     */
+    private final class SectionList
+        extends AbstractList<QSection>
+        implements RandomAccess
+    {
+        @Override
+        public QSection get(final int index)
+        {
+            return decode(index);
+        }
+
+        @Override
+        public int size()
+        {
+            return sections.size();
+        }
+
+        @Override
+        public QSection set(final int index, final QSection section)
+        {
+            final QSection old = decode(index);
+            sections.set(index, section);
+            return old;
+        }
+
+        @Override
+        public void add(final int index, final QSection section)
+        {
+            sections.add(index, section);
+            ++modCount;
+        }
+
+        @Override
+        public QSection remove(final int index)
+        {
+            final QSection old = decode(index);
+            sections.remove(index);
+            ++modCount;
+            return old;
+        }
+    }
 }
@@ -20,13 +20,11 @@
 
 package org.stuntaz.libqcw.blobs.workspace;
 
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
 import java.util.List;
 
 import org.stuntaz.libqcw.IWorkspaceVisitor;
+import org.stuntaz.libqcw.blobs.ChildList;
 import org.stuntaz.libqcw.blobs.QRecord;
 
 /**
@@ -40,7 +38,8 @@ public final class SectionHeaderBlob
     extends QRecord
 {
     private final int numSections;
-    List<SectionHeaderInfoBlob> infos = new ArrayList<SectionHeaderInfoBlob>();
+    final ChildList<SectionHeaderInfoBlob> infos = new ChildList<SectionHeaderInfoBlob>(
+        this);
 
     /**
      * Creates a new SectionHeaderBlob with the specified number of sections.
@@ -85,15 +84,15 @@ public final class SectionHeaderBlob
         return totalBytes;
     }
 
-    public void parse(final InputStream stream)
-        throws IOException
+    public void parse(final ByteBuffer buffer)
     {
-        final int size = parseRecordHeader(stream);
+        final int size = parseRecordHeader(buffer);
 
+        infos.ensureCapacity(numSections);
         for (int i = 0; i < numSections; ++i)
         {
             final SectionHeaderInfoBlob info = new SectionHeaderInfoBlob();
-            info.parse(stream);
+            info.parse(buffer);
             infos.add(info);
         }
 
@@ -102,14 +101,11 @@ public final class SectionHeaderBlob
     }
 
     @Override
-    public void write(final OutputStream output)
-        throws IOException
+    protected void writeBody(final ByteBuffer buffer)
     {
-        super.write(output);
-
         for (final SectionHeaderInfoBlob info : infos)
         {
-            info.write(output);
+            info.write(buffer);
         }
     }
 
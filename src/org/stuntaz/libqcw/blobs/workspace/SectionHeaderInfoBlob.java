@@ -20,9 +20,7 @@
 
 package org.stuntaz.libqcw.blobs.workspace;
 
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 import org.stuntaz.libqcw.IWorkspaceVisitor;
 import org.stuntaz.libqcw.blobs.QByteBuffer;
@@ -41,15 +39,29 @@ import org.stuntaz.libqcw.defines.QWorkspaceSection;
 public final class SectionHeaderInfoBlob
     extends QRecord
 {
-    private QWorkspaceSection sectionType;
+    private static final int QWORD_SIZE = QUtils.getSize(QWord.class);
+
+    private int sectionType;
     private QByteBuffer unknown1 = null;
 
     /**
      * Returns the type of this section.
      * 
-     * @return the type of the section
+     * @return the type of the section, or null if its type code has no
+     *      {@link QWorkspaceSection} constant
      */
     public QWorkspaceSection getSectionType()
+    {
+        assert (isValid());
+        return QWorkspaceSection.find(sectionType);
+    }
+
+    /**
+     * Returns the type code of this section, as stored in the file.
+     * 
+     * @return the type code of the section
+     */
+    public int getSectionTypeValue()
     {
         assert (isValid());
         return sectionType;
@@ -58,29 +70,25 @@ public final class SectionHeaderInfoBlob
     @Override
     protected int getInternalSize()
     {
-        return QUtils.getSize(QWord.class) + unknown1.getSize();
+        return QWORD_SIZE + unknown1.getSize();
     }
 
-    public void parse(final InputStream stream)
-        throws IOException
+    public void parse(final ByteBuffer buffer)
     {
-        final int size = parseRecordHeader(stream);
+        final int size = parseRecordHeader(buffer);
 
-        sectionType = QWorkspaceSection.forValue(QUtils.readQWord(stream));
-        unknown1 = new QByteBuffer(QUtils.readQByteBuffer(stream));
+        sectionType = QUtils.readQWord(buffer);
+        unknown1 = new QByteBuffer(QUtils.readQByteBuffer(buffer));
 
         setValid();
         assert (size == getInternalSize());
     }
 
     @Override
-    public void write(final OutputStream output)
-        throws IOException
+    protected void writeBody(final ByteBuffer buffer)
     {
-        super.write(output);
-
-        QUtils.writeQWord(sectionType.getValue(), output);
-        unknown1.write(output);
+        QUtils.writeQWord(sectionType, buffer);
+        unknown1.write(buffer);
     }
 
     /**
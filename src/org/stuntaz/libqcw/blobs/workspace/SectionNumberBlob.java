@@ -20,9 +20,7 @@
 
 package org.stuntaz.libqcw.blobs.workspace;
 
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 import org.stuntaz.libqcw.IWorkspaceVisitor;
 import org.stuntaz.libqcw.blobs.QRecord;
@@ -57,22 +55,19 @@ public final class SectionNumberBlob
         return numSections.getSize();
     }
 
-    public void parse(final InputStream stream)
-        throws IOException
+    public void parse(final ByteBuffer buffer)
     {
-        final int size = parseRecordHeader(stream);
-        numSections = new QWord(QUtils.readQWord(stream));
+        final int size = parseRecordHeader(buffer);
+        numSections = new QWord(QUtils.readQWord(buffer));
 
         setValid();
         assert (size == getInternalSize());
     }
 
     @Override
-    public void write(final OutputStream output)
-        throws IOException
+    protected void writeBody(final ByteBuffer buffer)
     {
-        super.write(output);
-        numSections.write(output);
+        numSections.write(buffer);
     }
 
     /**
@@ -0,0 +1,165 @@
+/*
+ * libqcw - A library for parsing, manipulating, and writing QCharts (TM) 
+ * workspace files.
+ *
+ * Copyright (C) 2008-2009 Jon Nall
+ * QCharts is a registered service mark of eSignal, Inc.
+ * RagingBull is a registered service mark of eSignal, Inc.
+ *
+ * Licensed under the Open Software License version 3.0 (the "License"); you
+ * may not use this file except in compliance with the License. You should
+ * have received a copy of the License along with this software; if not, you
+ * may obtain a copy of the License at
+ *
+ * http://opensource.org/licenses/osl-3.0.php
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package org.stuntaz.libqcw.blobs.workspace;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import org.stuntaz.libqcw.IWorkspaceVisitor;
+import org.stuntaz.libqcw.QCWException;
+import org.stuntaz.libqcw.blobs.QCodecRegistry;
+import org.stuntaz.libqcw.blobs.QSection;
+import org.stuntaz.libqcw.defines.QWorkspaceSection;
+
+/**
+ * Holds the original bytes of a section that has not been decoded yet. These
+ * placeholders only live inside a lazy {@link SectionContainerBlob}, which
+ * replaces them with the decoded section the first time it is requested.
+ * Until then the section is written back exactly as it was read.
+ * 
+ * @author nall
+ *
+ */
+final class UndecodedSectionBlob
+    extends QSection
+{
+    private final QWorkspaceSection sectionType;
+    private final ByteBuffer bytes;
+    private final boolean hashKnown;
+    private final long knownHash;
+
+    /**
+     * Creates a new placeholder for a section of the specified type.
+     * 
+     * @param sectionType the type of the section
+     * @param bytes a read-only view of the section's records
+     */
+    UndecodedSectionBlob(
+        final QWorkspaceSection sectionType,
+        final ByteBuffer bytes)
+    {
+        this.sectionType = sectionType;
+        this.bytes = bytes;
+        this.hashKnown = false;
+        this.knownHash = 0;
+        setValid();
+    }
+
+    /**
+     * Creates a new placeholder for a section whose content hash is already
+     * known, so that it can be hashed without being decoded.
+     * 
+     * @param sectionType the type of the section
+     * @param bytes a read-only view of the section's records
+     * @param knownHash the content hash of the decoded section
+     */
+    UndecodedSectionBlob(
+        final QWorkspaceSection sectionType,
+        final ByteBuffer bytes,
+        final long knownHash)
+    {
+        this.sectionType = sectionType;
+        this.bytes = bytes;
+        this.hashKnown = true;
+        this.knownHash = knownHash;
+        setValid();
+    }
+
+    /**
+     * Returns a view of the section's bytes, positioned at its start.
+     * 
+     * @return a read-only buffer containing the section
+     */
+    ByteBuffer getBytes()
+    {
+        return bytes.duplicate().order(bytes.order());
+    }
+
+    @Override
+    protected int getInternalSize()
+    {
+        return bytes.limit();
+    }
+
+    /**
+     * Returns the hash the section would have once decoded, so that lazy and
+     * fully decoded workspaces hash alike. The section is decoded to compute
+     * it, but is not kept, unless the hash was supplied when this placeholder
+     * was created.
+     */
+    @Override
+    protected long computeContentHash()
+    {
+        if (hashKnown)
+        {
+            return knownHash;
+        }
+
+        final QSection decoded = QCodecRegistry.createSection(sectionType);
+        if (decoded == null)
+        {
+            return super.computeContentHash();
+        }
+
+        decoded.parse(getBytes());
+        return decoded.getContentHash();
+    }
+
+    @Override
+    public QWorkspaceSection getSectionType()
+    {
+        return sectionType;
+    }
+
+    public void parse(final InputStream stream)
+        throws IOException
+    {
+        throw new QCWException("Undecoded sections cannot be parsed");
+    }
+
+    public void parse(final ByteBuffer buffer)
+    {
+        throw new QCWException("Undecoded sections cannot be parsed");
+    }
+
+    @Override
+    public void write(final OutputStream output)
+        throws IOException
+    {
+        final byte[] b = new byte[bytes.limit()];
+        getBytes().get(b);
+        output.write(b);
+    }
+
+    @Override
+    public void write(final ByteBuffer buffer)
+    {
+        buffer.put(getBytes());
+    }
+
+    @Override
+    public void accept(final IWorkspaceVisitor visitor)
+    {
+        throw new QCWException("Undecoded sections cannot be visited");
+    }
+}
@@ -23,11 +23,14 @@ package org.stuntaz.libqcw.blobs.workspace;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
 import org.stuntaz.libqcw.IWorkspaceVisitor;
+import org.stuntaz.libqcw.blobs.IBlob;
+import org.stuntaz.libqcw.blobs.QHash;
 import org.stuntaz.libqcw.blobs.QSection;
 import org.stuntaz.libqcw.blobs.barchart.BarChartBlob;
 import org.stuntaz.libqcw.blobs.barchart.BarChartSectionBlob;
@@ -45,10 +48,31 @@ import org.stuntaz.libqcw.defines.QWorkspaceSection;
  *
  */
 public final class WorkspaceBlob
+    implements IBlob
 {
     private SectionNumberBlob sectionNumber = null;
     private SectionHeaderBlob sectionHeader = null;
     private SectionContainerBlob sectionContainer = null;
+    private final boolean lazySections;
+
+    /**
+     * Creates a new WorkspaceBlob that decodes all sections when parsed.
+     */
+    public WorkspaceBlob()
+    {
+        this(false);
+    }
+
+    /**
+     * Creates a new WorkspaceBlob.
+     * 
+     * @param lazySections true if sections should only be decoded when they
+     *      are requested (see {@link SectionContainerBlob})
+     */
+    public WorkspaceBlob(final boolean lazySections)
+    {
+        this.lazySections = lazySections;
+    }
 
     /**
      * Get the blob representing the number of sections in this workspace
@@ -80,10 +104,21 @@ public final class WorkspaceBlob
         return sectionContainer.getSections();
     }
 
+    /**
+     * Get the container holding the sections of this workspace
+     * 
+     * @return the workspace section container blob
+     */
+    public SectionContainerBlob getSectionContainer()
+    {
+        return sectionContainer;
+    }
+
     /**
      * Get the charts in this workspace. This is a convenience method that is
      * equivalent to iterating over the results of {@link #getSections()} and
      * returning all charts found in any {@link QWorkspaceSection#BarChart} sections.
+     * Only bar chart sections are decoded if the sections are lazy.
      * 
      * @return a set of bar charts found in the workspace
      */
@@ -91,12 +126,13 @@ public final class WorkspaceBlob
     {
         final Set<BarChartBlob> charts = new HashSet<BarChartBlob>();
 
-        for (final QSection s : getSections())
+        final List<QSection> sections = getSections();
+        for (int i = 0; i < sections.size(); ++i)
         {
-            if (s.getSectionType() == QWorkspaceSection.BarChart)
+            if (sectionContainer.getSectionType(i) == QWorkspaceSection.BarChart)
             {
-                charts.add(((BarChartSectionBlob) s).getLayoutWrapper()
-                    .getChart());
+                charts.add(((BarChartSectionBlob) sections.get(i))
+                    .getLayoutWrapper().getChart());
             }
         }
 
@@ -116,6 +152,19 @@ public final class WorkspaceBlob
 
     }
 
+    /**
+     * Returns the content hash of this workspace, which combines the hashes
+     * of its parts (see {@link IBlob#getContentHash()}).
+     * 
+     * @return the content hash of this workspace
+     */
+    public long getContentHash()
+    {
+        long h = QHash.mix(QHash.SEED, sectionNumber.getContentHash());
+        h = QHash.mix(h, sectionHeader.getContentHash());
+        return QHash.finish(QHash.mix(h, sectionContainer.getContentHash()));
+    }
+
     /**
      * Parse a workspace blob from the specified input stream.
      * 
@@ -131,10 +180,29 @@ public final class WorkspaceBlob
         sectionHeader = new SectionHeaderBlob(sectionNumber.getSectionCount());
         sectionHeader.parse(stream);
 
-        sectionContainer = new SectionContainerBlob(sectionHeader);
+        sectionContainer = new SectionContainerBlob(sectionHeader,
+            lazySections);
         sectionContainer.parse(stream);
     }
 
+    /**
+     * Parse a workspace blob from the specified buffer.
+     * 
+     * @param buffer the little endian buffer from which to read
+     */
+    public void parse(final ByteBuffer buffer)
+    {
+        sectionNumber = new SectionNumberBlob();
+        sectionNumber.parse(buffer);
+
+        sectionHeader = new SectionHeaderBlob(sectionNumber.getSectionCount());
+        sectionHeader.parse(buffer);
+
+        sectionContainer = new SectionContainerBlob(sectionHeader,
+            lazySections);
+        sectionContainer.parse(buffer);
+    }
+
     /**
      * Writes this workspace blob to the specified output stream.
      * 
@@ -149,6 +217,18 @@ public final class WorkspaceBlob
         sectionContainer.write(output);
     }
 
+    /**
+     * Writes this workspace blob to the specified buffer.
+     * 
+     * @param buffer the little endian buffer to which to write
+     */
+    public void write(final ByteBuffer buffer)
+    {
+        sectionNumber.write(buffer);
+        sectionHeader.write(buffer);
+        sectionContainer.write(buffer);
+    }
+
     /**
      * Accepts the specified workspace visitor.
      * 
@@ -0,0 +1,200 @@
+/*
+ * libqcw - A library for parsing, manipulating, and writing QCharts (TM) 
+ * workspace files.
+ *
+ * Copyright (C) 2008-2009 Jon Nall
+ * QCharts is a registered service mark of eSignal, Inc.
+ * RagingBull is a registered service mark of eSignal, Inc.
+ *
+ * Licensed under the Open Software License version 3.0 (the "License"); you
+ * may not use this file except in compliance with the License. You should
+ * have received a copy of the License along with this software; if not, you
+ * may obtain a copy of the License at
+ *
+ * http://opensource.org/licenses/osl-3.0.php
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package org.stuntaz.libqcw.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+import org.stuntaz.libqcw.blobs.QHash;
+import org.stuntaz.libqcw.blobs.QUtils;
+
+/**
+ * Identifies a version of a file by its path, length and modification time,
+ * plus a hash of its first and last {@link #SAMPLE_SIZE} bytes. Taking a
+ * fingerprint only reads those samples, so it is cheap even for large files.
+ * Two fingerprints are equal if all four parts are equal; an edit that keeps
+ * the length and modification time and only touches the middle of a large
+ * file is not detected.
+ * 
+ * @author nall
+ *
+ */
+public final class FileFingerprint
+{
+    /**
+     * The number of bytes sampled at each end of the file.
+     */
+    public static final int SAMPLE_SIZE = 4096;
+
+    private final String path;
+    private final long length;
+    private final long lastModified;
+    private final long sampleHash;
+
+    /**
+     * Creates a new fingerprint.
+     * 
+     * @param path the absolute path of the file
+     * @param length the length of the file in bytes
+     * @param lastModified the modification time of the file
+     * @param sampleHash the hash of the sampled bytes
+     */
+    public FileFingerprint(
+        final String path,
+        final long length,
+        final long lastModified,
+        final long sampleHash)
+    {
+        this.path = path;
+        this.length = length;
+        this.lastModified = lastModified;
+        this.sampleHash = sampleHash;
+    }
+
+    /**
+     * Returns the current fingerprint of the specified file.
+     * 
+     * @param file the file
+     * @return the fingerprint of the file
+     * @throws IOException if the file cannot be read
+     */
+    public static FileFingerprint of(final File file)
+        throws IOException
+    {
+        final long lastModified = file.lastModified();
+        final RandomAccessFile input = new RandomAccessFile(file, "r");
+        try
+        {
+            final long length = input.length();
+            final byte[] head = new byte[(int) Math.min(length, SAMPLE_SIZE)];
+            input.readFully(head);
+
+            final byte[] tail = new byte[head.length];
+            input.seek(length - tail.length);
+            input.readFully(tail);
+
+            return new FileFingerprint(file.getAbsolutePath(), length,
+                lastModified, hashSamples(ByteBuffer.wrap(head), ByteBuffer
+                    .wrap(tail)));
+        }
+        finally
+        {
+            input.close();
+        }
+    }
+
+    /**
+     * Returns the fingerprint of the specified file, whose contents have
+     * already been read into memory.
+     * 
+     * @param file the file
+     * @param lastModified the modification time of the file before it was
+     *      read
+     * @param contents the contents of the file, from the buffer's position
+     *      to its limit
+     * @return the fingerprint of the file
+     */
+    public static FileFingerprint of(
+        final File file,
+        final long lastModified,
+        final ByteBuffer contents)
+    {
+        final int start = contents.position();
+        final int end = contents.limit();
+        final int sample = Math.min(end - start, SAMPLE_SIZE);
+
+        return new FileFingerprint(file.getAbsolutePath(), end - start,
+            lastModified, hashSamples(QUtils.slice(contents, start, start
+                + sample), QUtils.slice(contents, end - sample, end)));
+    }
+
+    private static long hashSamples(final ByteBuffer head, final ByteBuffer tail)
+    {
+        return QHash.finish(QHash.mix(QHash.mix(QHash.SEED, QHash.hash(head)),
+            QHash.hash(tail)));
+    }
+
+    /**
+     * Returns the absolute path of the file.
+     * 
+     * @return the path of the file
+     */
+    public String getPath()
+    {
+        return path;
+    }
+
+    /**
+     * Returns the length of the file in bytes.
+     * 
+     * @return the length of the file
+     */
+    public long getLength()
+    {
+        return length;
+    }
+
+    /**
+     * Returns the modification time of the file.
+     * 
+     * @return the modification time, in milliseconds since the epoch
+     */
+    public long getLastModified()
+    {
+        return lastModified;
+    }
+
+    /**
+     * Returns the hash of the bytes sampled from the file.
+     * 
+     * @return the hash of the sampled bytes
+     */
+    public long getSampleHash()
+    {
+        return sampleHash;
+    }
+
+    @Override
+    public boolean equals(final Object obj)
+    {
+        if (this == obj) return true;
+        if (!(obj instanceof FileFingerprint)) return false;
+
+        final FileFingerprint other = (FileFingerprint) obj;
+        return length == other.length && lastModified == other.lastModified
+            && sampleHash == other.sampleHash && path.equals(other.path);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return path.hashCode() ^ (int) (sampleHash ^ (sampleHash >>> 32));
+    }
+
+    @Override
+    public String toString()
+    {
+        return path + " [" + length + " bytes, modified " + lastModified
+            + ", samples " + Long.toHexString(sampleHash) + "]";
+    }
+}
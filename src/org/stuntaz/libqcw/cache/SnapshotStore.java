@@ -0,0 +1,387 @@
+/*
+ * libqcw - A library for parsing, manipulating, and writing QCharts (TM) 
+ * workspace files.
+ *
+ * Copyright (C) 2008-2009 Jon Nall
+ * QCharts is a registered service mark of eSignal, Inc.
+ * RagingBull is a registered service mark of eSignal, Inc.
+ *
+ * Licensed under the Open Software License version 3.0 (the "License"); you
+ * may not use this file except in compliance with the License. You should
+ * have received a copy of the License along with this software; if not, you
+ * may obtain a copy of the License at
+ *
+ * http://opensource.org/licenses/osl-3.0.php
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package org.stuntaz.libqcw.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.stuntaz.libqcw.QCWException;
+import org.stuntaz.libqcw.blobs.QHash;
+import org.stuntaz.libqcw.blobs.QSection;
+import org.stuntaz.libqcw.blobs.QUtils;
+import org.stuntaz.libqcw.blobs.barchart.BarChartSectionBlob;
+import org.stuntaz.libqcw.blobs.barchart.StudyLineGroupBlob;
+import org.stuntaz.libqcw.blobs.barchart.SymbolEntryBlob;
+import org.stuntaz.libqcw.blobs.files.WorkspaceFileBlob;
+import org.stuntaz.libqcw.blobs.workspace.SectionContainerBlob;
+import org.stuntaz.libqcw.blobs.workspace.WorkspaceBlob;
+
+/**
+ * Loads workspace files through snapshots kept on disk, either next to each
+ * workspace file or in a cache directory. A snapshot records the
+ * {@link FileFingerprint} of the file it describes, the type and content
+ * hash of each section, and the symbols referenced by each bar chart.
+ * Symbol names are stored once per snapshot and referred to by index.
+ * 
+ * When a snapshot matches the current fingerprint of its file, the file is
+ * only split into sections, which are decoded when they are first requested
+ * (see {@link WorkspaceSnapshot}). Otherwise the file is parsed in full and
+ * its snapshot is rewritten. A snapshot that cannot be written, e.g.
+ * because the directory is read only, does not cause the load to fail.
+ * 
+ * A snapshot file has the following layout, in little endian order:
+ * 
+ * <pre>
+ * DWORD   magic ('QCWS')
+ * DWORD   version
+ * QSTRING path
+ * QWORD   length, last modified, sample hash
+ * DWORD   number of names, then a QSTRING per name
+ * DWORD   number of sections, then per section:
+ *         DWORD type, QWORD content hash,
+ *         DWORD number of symbols, then a DWORD name index per symbol
+ * QWORD   hash of everything above
+ * </pre>
+ * 
+ * This class is thread safe, but several processes writing the snapshot of
+ * the same file at once may leave the older of two identical snapshots.
+ * 
+ * @author nall
+ *
+ */
+public final class SnapshotStore
+{
+    /**
+     * The extension of snapshot files.
+     */
+    public static final String EXTENSION = ".snap";
+
+    private static final int MAGIC = 0x53574351;
+    private static final int VERSION = 1;
+
+    private final File directory;
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     * Creates a store which keeps each snapshot next to its workspace file.
+     */
+    public SnapshotStore()
+    {
+        this(null);
+    }
+
+    /**
+     * Creates a store which keeps snapshots in the specified directory.
+     * 
+     * @param directory the directory in which to keep snapshots, or null to
+     *      keep each snapshot next to its workspace file
+     */
+    public SnapshotStore(final File directory)
+    {
+        this.directory = directory;
+    }
+
+    /**
+     * Returns the snapshot file used for the specified workspace file. In a
+     * cache directory, the name includes a hash of the full path, so that
+     * files with the same name in different directories don't collide.
+     * 
+     * @param file the workspace file
+     * @return the snapshot file
+     */
+    public File getSnapshotFile(final File file)
+    {
+        if (directory == null)
+        {
+            return new File(file.getPath() + EXTENSION);
+        }
+
+        final String path = file.getAbsolutePath();
+        final long hash = QHash.finish(QHash.mix(QHash.SEED, path.hashCode()));
+        return new File(directory, file.getName() + "-"
+            + Long.toHexString(hash) + EXTENSION);
+    }
+
+    /**
+     * Loads the specified workspace file, using its snapshot if it is up to
+     * date and writing a new snapshot otherwise.
+     * 
+     * @param file the workspace file
+     * @return the workspace and the information from its snapshot
+     * @throws QCWException if the file cannot be read or parsed
+     */
+    public WorkspaceSnapshot load(final File file)
+    {
+        final long lastModified = file.lastModified();
+        final ByteBuffer contents;
+        try
+        {
+            contents = QUtils.read(file);
+        }
+        catch (final IOException e)
+        {
+            throw new QCWException("I/O error detected while reading file: "
+                + e.getMessage());
+        }
+        final FileFingerprint fingerprint = FileFingerprint.of(file,
+            lastModified, contents);
+
+        final File snapshotFile = getSnapshotFile(file);
+        final WorkspaceSnapshot snapshot = readSnapshot(snapshotFile,
+            fingerprint, contents);
+        if (snapshot != null)
+        {
+            synchronized (this)
+            {
+                ++hits;
+            }
+            return snapshot;
+        }
+
+        synchronized (this)
+        {
+            ++misses;
+        }
+
+        final WorkspaceFileBlob qcw = new WorkspaceFileBlob();
+        qcw.parse(contents.duplicate());
+        final WorkspaceBlob workspace = qcw.getWorkspace();
+        final List<List<String>> symbolNames = collectSymbolNames(workspace);
+
+        try
+        {
+            QUtils.writeFully(snapshotFile, writeSnapshot(fingerprint,
+                workspace, symbolNames));
+        }
+        catch (final IOException e)
+        {
+            // The snapshot is only an optimization
+        }
+
+        return new WorkspaceSnapshot(fingerprint, workspace, WorkspaceSnapshot
+            .freeze(symbolNames), false);
+    }
+
+    /**
+     * Returns the number of loads which used an up to date snapshot.
+     * 
+     * @return the number of hits
+     */
+    public synchronized long getHitCount()
+    {
+        return hits;
+    }
+
+    /**
+     * Returns the number of loads which had to parse the file.
+     * 
+     * @return the number of misses
+     */
+    public synchronized long getMissCount()
+    {
+        return misses;
+    }
+
+    /**
+     * Returns the symbols referenced by each section of a workspace, in the
+     * order they first appear.
+     */
+    private static List<List<String>> collectSymbolNames(
+        final WorkspaceBlob workspace)
+    {
+        final List<QSection> sections = workspace.getSections();
+        final List<List<String>> symbolNames = new ArrayList<List<String>>(
+            sections.size());
+        for (final QSection section : sections)
+        {
+            if (!(section instanceof BarChartSectionBlob))
+            {
+                symbolNames.add(Collections.<String> emptyList());
+                continue;
+            }
+
+            final Set<String> names = new LinkedHashSet<String>();
+            for (final StudyLineGroupBlob group : ((BarChartSectionBlob) section)
+                .getLayoutWrapper().getChart().getStudyLines())
+            {
+                for (final SymbolEntryBlob symbol : group.getSymbols())
+                {
+                    names.add(symbol.getSymbolName());
+                }
+            }
+            symbolNames.add(new ArrayList<String>(names));
+        }
+        return symbolNames;
+    }
+
+    private static ByteBuffer writeSnapshot(
+        final FileFingerprint fingerprint,
+        final WorkspaceBlob workspace,
+        final List<List<String>> symbolNames)
+    {
+        // Number the distinct names
+        final Map<String, Integer> indexes = new HashMap<String, Integer>();
+        final List<String> names = new ArrayList<String>();
+        int capacity = 64 + QUtils.getQStringSize(fingerprint.getPath());
+        for (final List<String> section : symbolNames)
+        {
+            capacity += 16 + 4 * section.size();
+            for (final String name : section)
+            {
+                if (!indexes.containsKey(name))
+                {
+                    indexes.put(name, Integer.valueOf(names.size()));
+                    names.add(name);
+                    capacity += QUtils.getQStringSize(name);
+                }
+            }
+        }
+
+        final ByteBuffer buffer = QUtils.allocate(capacity);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        QUtils.writeQString(fingerprint.getPath(), buffer);
+        buffer.putLong(fingerprint.getLength());
+        buffer.putLong(fingerprint.getLastModified());
+        buffer.putLong(fingerprint.getSampleHash());
+
+        buffer.putInt(names.size());
+        for (final String name : names)
+        {
+            QUtils.writeQString(name, buffer);
+        }
+
+        final List<QSection> sections = workspace.getSections();
+        buffer.putInt(sections.size());
+        for (int i = 0; i < sections.size(); ++i)
+        {
+            final QSection section = sections.get(i);
+            buffer.putInt(section.getSectionTypeValue());
+            buffer.putLong(section.getContentHash());
+            buffer.putInt(symbolNames.get(i).size());
+            for (final String name : symbolNames.get(i))
+            {
+                buffer.putInt(indexes.get(name).intValue());
+            }
+        }
+
+        buffer.putLong(QHash.hash(QUtils.slice(buffer, 0, buffer.position())));
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Loads a workspace using its snapshot. Returns null if there is no
+     * snapshot, or if it is damaged or out of date.
+     */
+    private static WorkspaceSnapshot readSnapshot(
+        final File snapshotFile,
+        final FileFingerprint fingerprint,
+        final ByteBuffer contents)
+    {
+        if (!snapshotFile.isFile()) return null;
+
+        try
+        {
+            final ByteBuffer buffer = QUtils.read(snapshotFile);
+            if (buffer.remaining() < 16 || buffer.getInt() != MAGIC
+                || buffer.getInt() != VERSION)
+            {
+                return null;
+            }
+
+            final int end = buffer.limit() - 8;
+            if (QHash.hash(QUtils.slice(buffer, 0, end)) != buffer.getLong(end))
+            {
+                return null;
+            }
+            buffer.limit(end);
+
+            final FileFingerprint recorded = new FileFingerprint(QUtils
+                .readQString(buffer), buffer.getLong(), buffer.getLong(),
+                buffer.getLong());
+            if (!recorded.equals(fingerprint)) return null;
+
+            final String[] names = new String[buffer.getInt()];
+            for (int i = 0; i < names.length; ++i)
+            {
+                names[i] = QUtils.readQString(buffer);
+            }
+
+            final WorkspaceFileBlob qcw = new WorkspaceFileBlob(true);
+            qcw.parse(contents.duplicate());
+            final SectionContainerBlob container = qcw.getWorkspace()
+                .getSectionContainer();
+
+            final int count = buffer.getInt();
+            if (count != container.getSections().size()) return null;
+
+            final long[] hashes = new long[count];
+            final List<List<String>> symbolNames = new ArrayList<List<String>>(
+                count);
+            for (int i = 0; i < count; ++i)
+            {
+                final int type = buffer.getInt();
+                if (type != container.getSectionTypeValue(i)) return null;
+
+                hashes[i] = buffer.getLong();
+
+                final int symbols = buffer.getInt();
+                final List<String> section = new ArrayList<String>(symbols);
+                for (int s = 0; s < symbols; ++s)
+                {
+                    section.add(names[buffer.getInt()]);
+                }
+                symbolNames.add(section);
+            }
+            container.setSectionHashes(hashes);
+
+            return new WorkspaceSnapshot(fingerprint, qcw.getWorkspace(),
+                WorkspaceSnapshot.freeze(symbolNames), true);
+        }
+        catch (final IOException e)
+        {
+            return null;
+        }
+        catch (final BufferUnderflowException e)
+        {
+            return null;
+        }
+        catch (final IndexOutOfBoundsException e)
+        {
+            return null;
+        }
+        catch (final QCWException e)
+        {
+            return null;
+        }
+    }
+}
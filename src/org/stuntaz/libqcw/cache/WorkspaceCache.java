@@ -0,0 +1,550 @@
+/*
+ * libqcw - A library for parsing, manipulating, and writing QCharts (TM) 
+ * workspace files.
+ *
+ * Copyright (C) 2008-2009 Jon Nall
+ * QCharts is a registered service mark of eSignal, Inc.
+ * RagingBull is a registered service mark of eSignal, Inc.
+ *
+ * Licensed under the Open Software License version 3.0 (the "License"); you
+ * may not use this file except in compliance with the License. You should
+ * have received a copy of the License along with this software; if not, you
+ * may obtain a copy of the License at
+ *
+ * http://opensource.org/licenses/osl-3.0.php
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package org.stuntaz.libqcw.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import org.stuntaz.libqcw.BasicQCWVisitor;
+import org.stuntaz.libqcw.QCWException;
+import org.stuntaz.libqcw.blobs.IBlob;
+import org.stuntaz.libqcw.blobs.QUtils;
+import org.stuntaz.libqcw.blobs.UnsupportedBlob;
+import org.stuntaz.libqcw.blobs.barchart.BarChartBlob;
+import org.stuntaz.libqcw.blobs.barchart.BarChartSectionBlob;
+import org.stuntaz.libqcw.blobs.barchart.BarChartWrapperBlob;
+import org.stuntaz.libqcw.blobs.barchart.BasicLineBlob;
+import org.stuntaz.libqcw.blobs.barchart.LineHeaderBlob;
+import org.stuntaz.libqcw.blobs.barchart.StudyHeaderBlob;
+import org.stuntaz.libqcw.blobs.barchart.StudyLayoutBlob;
+import org.stuntaz.libqcw.blobs.barchart.StudyLineGroupBlob;
+import org.stuntaz.libqcw.blobs.barchart.SymbolEntryBlob;
+import org.stuntaz.libqcw.blobs.barchart.UnsupportedLineBlob;
+import org.stuntaz.libqcw.blobs.barchart.UnsupportedStudyBlob;
+import org.stuntaz.libqcw.blobs.barchart.VolumeStudyBlob;
+import org.stuntaz.libqcw.blobs.browser.BrowserBlob;
+import org.stuntaz.libqcw.blobs.files.WorkspaceFileBlob;
+import org.stuntaz.libqcw.blobs.hotlist.HotlistBlob;
+import org.stuntaz.libqcw.blobs.islandbook.IslandBookBlob;
+import org.stuntaz.libqcw.blobs.level2.Level2Blob;
+import org.stuntaz.libqcw.blobs.optionsmontage.OptionsMontageBlob;
+import org.stuntaz.libqcw.blobs.quotesheet.QuotesheetBlob;
+import org.stuntaz.libqcw.blobs.ragingbull.RagingBullBlob;
+import org.stuntaz.libqcw.blobs.singlequote.SingleQuoteBlob;
+import org.stuntaz.libqcw.blobs.tabularbar.TabularBarBlob;
+import org.stuntaz.libqcw.blobs.timeandsales.TimeAndSalesBlob;
+import org.stuntaz.libqcw.blobs.workspace.SectionContainerBlob;
+import org.stuntaz.libqcw.blobs.workspace.SectionHeaderBlob;
+import org.stuntaz.libqcw.blobs.workspace.SectionHeaderInfoBlob;
+import org.stuntaz.libqcw.blobs.workspace.SectionNumberBlob;
+import org.stuntaz.libqcw.blobs.workspace.WorkspaceBlob;
+
+/**
+ * A cache of parsed workspace files. A file is parsed the first time it is
+ * requested and again only if its {@link FileFingerprint} has changed since.
+ * 
+ * The cache is bounded by the estimated memory held by its entries, which is
+ * {@link #RETAINED_BYTES_PER_FILE_BYTE} times the size of each file. When
+ * adding a workspace would exceed the bound, the least recently used
+ * workspaces are evicted. A file too large to fit on its own is parsed but
+ * not cached.
+ * 
+ * The workspace returned by {@link #get(File)} is shared by every caller and
+ * must not be modified. Callers that want to modify a workspace should use
+ * {@link #fork(File)} instead, which returns a private copy that is built
+ * from the cached bytes of the file: each section is copied the first time
+ * it is requested from the copy, so sections that are never requested cost
+ * nothing.
+ * 
+ * This class is thread safe. The shared workspaces can be read by several
+ * threads at once, since everything they would otherwise compute on first
+ * use (sizes, content hashes and symbol indexes) is computed before they are
+ * returned.
+ * 
+ * @author nall
+ *
+ */
+public final class WorkspaceCache
+{
+    /**
+     * The estimated memory held by a cached workspace, per byte of its
+     * file. This covers the parsed workspace and the file contents kept for
+     * {@link #fork(File)}.
+     */
+    public static final int RETAINED_BYTES_PER_FILE_BYTE = 4;
+
+    private final long maxWeight;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(
+        16, 0.75f, true);
+    private long weight = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    /**
+     * Creates a new, empty cache.
+     * 
+     * @param maxWeight the maximum estimated memory, in bytes, held by the
+     *      cached workspaces
+     */
+    public WorkspaceCache(final long maxWeight)
+    {
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * Returns the parsed workspace in the specified file. The returned
+     * workspace is shared and must not be modified.
+     * 
+     * @param file the workspace file
+     * @return the shared workspace
+     * @throws QCWException if the file cannot be read or parsed
+     */
+    public WorkspaceBlob get(final File file)
+    {
+        return getEntry(file).workspace;
+    }
+
+    /**
+     * Returns a private copy of the workspace in the specified file, which
+     * the caller may modify.
+     * 
+     * @param file the workspace file
+     * @return a new copy of the workspace
+     * @throws QCWException if the file cannot be read or parsed
+     */
+    public WorkspaceBlob fork(final File file)
+    {
+        final WorkspaceFileBlob qcw = new WorkspaceFileBlob(true);
+        qcw.parse(getEntry(file).contents.duplicate());
+        return qcw.getWorkspace();
+    }
+
+    /**
+     * Removes the specified file from the cache, if it is present.
+     * 
+     * @param file the workspace file
+     */
+    public synchronized void remove(final File file)
+    {
+        final Entry entry = entries.remove(file.getAbsolutePath());
+        if (entry != null)
+        {
+            weight -= entry.weight;
+        }
+    }
+
+    /**
+     * Removes all workspaces from the cache. The statistics are kept.
+     */
+    public synchronized void clear()
+    {
+        entries.clear();
+        weight = 0;
+    }
+
+    /**
+     * Returns the number of workspaces in the cache.
+     * 
+     * @return the number of cached workspaces
+     */
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+
+    /**
+     * Returns the estimated memory held by the cached workspaces.
+     * 
+     * @return the total weight of the cached workspaces, in bytes
+     */
+    public synchronized long getWeight()
+    {
+        return weight;
+    }
+
+    /**
+     * Returns the maximum estimated memory held by the cached workspaces.
+     * 
+     * @return the maximum weight, in bytes
+     */
+    public long getMaxWeight()
+    {
+        return maxWeight;
+    }
+
+    /**
+     * Returns the number of requests answered from the cache.
+     * 
+     * @return the number of hits
+     */
+    public synchronized long getHitCount()
+    {
+        return hits;
+    }
+
+    /**
+     * Returns the number of requests which had to parse the file.
+     * 
+     * @return the number of misses
+     */
+    public synchronized long getMissCount()
+    {
+        return misses;
+    }
+
+    /**
+     * Returns the number of workspaces evicted to make room for others.
+     * 
+     * @return the number of evictions
+     */
+    public synchronized long getEvictionCount()
+    {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return "WorkspaceCache [" + entries.size() + " workspaces, " + weight
+            + "/" + maxWeight + " bytes, " + hits + " hits, " + misses
+            + " misses, " + evictions + " evictions]";
+    }
+
+    private Entry getEntry(final File file)
+    {
+        final FileFingerprint fingerprint;
+        try
+        {
+            fingerprint = FileFingerprint.of(file);
+        }
+        catch (final IOException e)
+        {
+            throw new QCWException("I/O error detected while reading file: "
+                + e.getMessage());
+        }
+
+        final Entry cached = lookup(fingerprint);
+        if (cached != null) return cached;
+
+        // Parse outside the lock so that other files can be served meanwhile
+        final Entry entry = load(file);
+        store(entry);
+        return entry;
+    }
+
+    private synchronized Entry lookup(final FileFingerprint fingerprint)
+    {
+        final Entry entry = entries.get(fingerprint.getPath());
+        if (entry != null && entry.fingerprint.equals(fingerprint))
+        {
+            ++hits;
+            return entry;
+        }
+
+        ++misses;
+        return null;
+    }
+
+    private synchronized void store(final Entry entry)
+    {
+        final Entry old = entries.remove(entry.fingerprint.getPath());
+        if (old != null)
+        {
+            weight -= old.weight;
+        }
+        if (entry.weight > maxWeight) return;
+
+        final Iterator<Entry> lru = entries.values().iterator();
+        while (weight + entry.weight > maxWeight)
+        {
+            weight -= lru.next().weight;
+            lru.remove();
+            ++evictions;
+        }
+
+        entries.put(entry.fingerprint.getPath(), entry);
+        weight += entry.weight;
+    }
+
+    /**
+     * Reads and parses a file. The contents are read into memory rather than
+     * mapped, since the workspace keeps views of them and the file may
+     * change after it has been read.
+     */
+    private static Entry load(final File file)
+    {
+        final long lastModified = file.lastModified();
+        final ByteBuffer contents;
+        try
+        {
+            contents = QUtils.read(file).asReadOnlyBuffer();
+        }
+        catch (final IOException e)
+        {
+            throw new QCWException("I/O error detected while reading file: "
+                + e.getMessage());
+        }
+
+        final WorkspaceFileBlob qcw = new WorkspaceFileBlob();
+        qcw.parse(contents.duplicate());
+        qcw.getWorkspace().accept(new CacheFiller());
+
+        return new Entry(FileFingerprint.of(file, lastModified, contents),
+            contents, qcw.getWorkspace());
+    }
+
+    private static final class Entry
+    {
+        final FileFingerprint fingerprint;
+        final ByteBuffer contents;
+        final WorkspaceBlob workspace;
+        final long weight;
+
+        Entry(
+            final FileFingerprint fingerprint,
+            final ByteBuffer contents,
+            final WorkspaceBlob workspace)
+        {
+            this.fingerprint = fingerprint;
+            this.contents = contents;
+            this.workspace = workspace;
+            this.weight = fingerprint.getLength()
+                * RETAINED_BYTES_PER_FILE_BYTE;
+        }
+    }
+
+    /**
+     * Computes the sizes, content hashes and symbol indexes that blobs
+     * otherwise compute and cache on first use, so that a shared workspace is
+     * never written to by the threads reading it.
+     */
+    private static final class CacheFiller
+        extends BasicQCWVisitor
+    {
+        private static void fill(final IBlob blob)
+        {
+            blob.getSize();
+            blob.getContentHash();
+        }
+
+        @Override
+        public void visit(final WorkspaceBlob workspace)
+        {
+            fill(workspace);
+            super.visit(workspace);
+        }
+
+        @Override
+        public void visit(final SectionNumberBlob sectionNumber)
+        {
+            fill(sectionNumber);
+            super.visit(sectionNumber);
+        }
+
+        @Override
+        public void visit(final SectionHeaderBlob sectionHeader)
+        {
+            fill(sectionHeader);
+            super.visit(sectionHeader);
+        }
+
+        @Override
+        public void visit(final SectionHeaderInfoBlob sectionHeader)
+        {
+            fill(sectionHeader);
+            super.visit(sectionHeader);
+        }
+
+        @Override
+        public void visit(final SectionContainerBlob sectionContainer)
+        {
+            fill(sectionContainer);
+            super.visit(sectionContainer);
+        }
+
+        @Override
+        public void visit(final UnsupportedBlob object)
+        {
+            fill(object);
+            super.visit(object);
+        }
+
+        @Override
+        public void visit(final BrowserBlob browser)
+        {
+            fill(browser);
+            super.visit(browser);
+        }
+
+        @Override
+        public void visit(final HotlistBlob hotList)
+        {
+            fill(hotList);
+            super.visit(hotList);
+        }
+
+        @Override
+        public void visit(final IslandBookBlob islandBook)
+        {
+            fill(islandBook);
+            super.visit(islandBook);
+        }
+
+        @Override
+        public void visit(final Level2Blob level2)
+        {
+            fill(level2);
+            super.visit(level2);
+        }
+
+        @Override
+        public void visit(final OptionsMontageBlob montage)
+        {
+            fill(montage);
+            super.visit(montage);
+        }
+
+        @Override
+        public void visit(final QuotesheetBlob sheet)
+        {
+            fill(sheet);
+            super.visit(sheet);
+        }
+
+        @Override
+        public void visit(final RagingBullBlob bull)
+        {
+            fill(bull);
+            super.visit(bull);
+        }
+
+        @Override
+        public void visit(final SingleQuoteBlob quote)
+        {
+            fill(quote);
+            super.visit(quote);
+        }
+
+        @Override
+        public void visit(final TabularBarBlob tabularBar)
+        {
+            fill(tabularBar);
+            super.visit(tabularBar);
+        }
+
+        @Override
+        public void visit(final TimeAndSalesBlob timeAndSales)
+        {
+            fill(timeAndSales);
+            super.visit(timeAndSales);
+        }
+
+        @Override
+        public void visit(final BarChartBlob barChart)
+        {
+            fill(barChart);
+            super.visit(barChart);
+        }
+
+        @Override
+        public void visit(final BarChartWrapperBlob layoutWrapper)
+        {
+            fill(layoutWrapper);
+            super.visit(layoutWrapper);
+        }
+
+        @Override
+        public void visit(final BarChartSectionBlob layoutSection)
+        {
+            fill(layoutSection);
+            super.visit(layoutSection);
+        }
+
+        @Override
+        public void visit(final StudyLayoutBlob studyLayout)
+        {
+            fill(studyLayout);
+            super.visit(studyLayout);
+        }
+
+        @Override
+        public void visit(final StudyHeaderBlob studyHeader)
+        {
+            fill(studyHeader);
+            super.visit(studyHeader);
+        }
+
+        @Override
+        public void visit(final VolumeStudyBlob volumeStudy)
+        {
+            fill(volumeStudy);
+            super.visit(volumeStudy);
+        }
+
+        @Override
+        public void visit(final UnsupportedStudyBlob study)
+        {
+            fill(study);
+            super.visit(study);
+        }
+
+        @Override
+        public void visit(final StudyLineGroupBlob linesGroup)
+        {
+            fill(linesGroup);
+            // Any lookup builds the symbol index
+            linesGroup.containsSymbol("");
+            super.visit(linesGroup);
+        }
+
+        @Override
+        public void visit(final SymbolEntryBlob symbol)
+        {
+            fill(symbol);
+            super.visit(symbol);
+        }
+
+        @Override
+        public void visit(final LineHeaderBlob header)
+        {
+            fill(header);
+            header.getLineInfo().accept(this);
+        }
+
+        @Override
+        public void visit(final BasicLineBlob line)
+        {
+            fill(line);
+            super.visit(line);
+        }
+
+        @Override
+        public void visit(final UnsupportedLineBlob line)
+        {
+            fill(line);
+            super.visit(line);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * libqcw - A library for parsing, manipulating, and writing QCharts (TM) 
+ * workspace files.
+ *
+ * Copyright (C) 2008-2009 Jon Nall
+ * QCharts is a registered service mark of eSignal, Inc.
+ * RagingBull is a registered service mark of eSignal, Inc.
+ *
+ * Licensed under the Open Software License version 3.0 (the "License"); you
+ * may not use this file except in compliance with the License. You should
+ * have received a copy of the License along with this software; if not, you
+ * may obtain a copy of the License at
+ *
+ * http://opensource.org/licenses/osl-3.0.php
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package org.stuntaz.libqcw.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.stuntaz.libqcw.blobs.workspace.WorkspaceBlob;
+
+/**
+ * A workspace loaded through a {@link SnapshotStore}, together with the
+ * information recorded in its snapshot. When the snapshot was up to date,
+ * the workspace is lazy (see
+ * {@link org.stuntaz.libqcw.blobs.workspace.SectionContainerBlob}) and
+ * already knows the content hash of every section, so it can be hashed,
+ * compared and written without decoding anything. The symbols referenced by
+ * each bar chart are also available without decoding it.
+ * 
+ * @author nall
+ *
+ */
+public final class WorkspaceSnapshot
+{
+    private final FileFingerprint fingerprint;
+    private final WorkspaceBlob workspace;
+    private final List<List<String>> symbolNames;
+    private final boolean fromSnapshot;
+
+    WorkspaceSnapshot(
+        final FileFingerprint fingerprint,
+        final WorkspaceBlob workspace,
+        final List<List<String>> symbolNames,
+        final boolean fromSnapshot)
+    {
+        this.fingerprint = fingerprint;
+        this.workspace = workspace;
+        this.symbolNames = symbolNames;
+        this.fromSnapshot = fromSnapshot;
+    }
+
+    /**
+     * Returns the fingerprint of the file the workspace was read from.
+     * 
+     * @return the fingerprint of the workspace file
+     */
+    public FileFingerprint getFingerprint()
+    {
+        return fingerprint;
+    }
+
+    /**
+     * Returns the workspace. Each call to {@link SnapshotStore#load(java.io.File)}
+     * returns a new workspace, which the caller may modify.
+     * 
+     * @return the workspace
+     */
+    public WorkspaceBlob getWorkspace()
+    {
+        return workspace;
+    }
+
+    /**
+     * Returns true if the workspace was loaded from an up to date snapshot,
+     * or false if the file had to be parsed.
+     * 
+     * @return true if the snapshot was used
+     */
+    public boolean isFromSnapshot()
+    {
+        return fromSnapshot;
+    }
+
+    /**
+     * Returns the names of the symbols referenced by the lines of a section,
+     * in the order they first appear. Only bar chart sections have symbols.
+     * 
+     * @param section the index of the section
+     * @return the symbols of the section, which may be empty
+     */
+    public List<String> getSymbolNames(final int section)
+    {
+        return symbolNames.get(section);
+    }
+
+    /**
+     * Returns the names of the symbols referenced by any section.
+     * 
+     * @return the symbols of the workspace
+     */
+    public Set<String> getSymbolNames()
+    {
+        final Set<String> names = new LinkedHashSet<String>();
+        for (final List<String> section : symbolNames)
+        {
+            names.addAll(section);
+        }
+        return names;
+    }
+
+    /**
+     * Returns an unmodifiable copy of the specified symbol lists.
+     */
+    static List<List<String>> freeze(final List<List<String>> symbolNames)
+    {
+        final List<List<String>> frozen = new ArrayList<List<String>>(
+            symbolNames.size());
+        for (final List<String> section : symbolNames)
+        {
+            frozen.add(Collections.unmodifiableList(section));
+        }
+        return Collections.unmodifiableList(frozen);
+    }
+}
@@ -68,6 +68,15 @@ public enum QBasicLineType
         return value;
     }
 
+    private static final ValueIndex<QBasicLineType> INDEX = new ValueIndex<QBasicLineType>();
+    static
+    {
+        for (final QBasicLineType sType : values())
+        {
+            INDEX.put(sType.getValue(), sType);
+        }
+    }
+
     /**
      * Gets the subtype for the specified value
      * 
@@ -76,14 +85,12 @@ public enum QBasicLineType
      */
     public static QBasicLineType forValue(final int value)
     {
-        for (final QBasicLineType sType : values())
+        final QBasicLineType sType = INDEX.get(value);
+        if (sType == null)
         {
-            if (sType.getValue() == value)
-            {
-                return sType;
-            }
+            throw new QCWException("Unknown Line Subtype: 0x"
+                + Integer.toHexString(value));
         }
-        throw new QCWException("Unknown Line Subtype: 0x"
-            + Integer.toHexString(value));
+        return sType;
     }
 }
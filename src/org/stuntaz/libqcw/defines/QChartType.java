@@ -69,6 +69,15 @@ public enum QChartType
 
     private final short value;
 
+    private static final ValueIndex<QChartType> INDEX = new ValueIndex<QChartType>();
+    static
+    {
+        for (final QChartType cType : values())
+        {
+            INDEX.put(cType.getValue(), cType);
+        }
+    }
+
     /**
      * Returns the chart type for the specified value
      * 
@@ -77,15 +86,13 @@ public enum QChartType
      */
     public static QChartType forValue(final int value)
     {
-        for (final QChartType cType : values())
+        final QChartType cType = INDEX.get(value);
+        if (cType == null)
         {
-            if (cType.getValue() == value)
-            {
-                return cType;
-            }
+            throw new QCWException("Unknown Chart Type: 0x"
+                + Integer.toHexString(value));
         }
-        throw new QCWException("Unknown Chart Type: 0x"
-            + Integer.toHexString(value));
+        return cType;
     }
 
 }
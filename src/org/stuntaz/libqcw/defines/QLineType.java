@@ -117,6 +117,28 @@ public enum QLineType
         return value;
     }
 
+    private static final ValueIndex<QLineType> INDEX = new ValueIndex<QLineType>();
+    static
+    {
+        for (final QLineType lType : values())
+        {
+            INDEX.put(lType.getValue(), lType);
+        }
+    }
+
+    /**
+     * Returns the line type represented by the specified value, or null if
+     * no constant represents it. Types without a constant can still be
+     * decoded through {@link org.stuntaz.libqcw.blobs.QCodecRegistry}.
+     * 
+     * @param value the value for which to determine line type
+     * @return the line type represented by {@code value}, or null
+     */
+    public static QLineType find(final int value)
+    {
+        return INDEX.get(value);
+    }
+
     /**
      * Returns the line type represented by the specified value.
      * 
@@ -125,15 +147,13 @@ public enum QLineType
      */
     public static QLineType forValue(final int value)
     {
-        for (final QLineType lType : values())
+        final QLineType lType = INDEX.get(value);
+        if (lType == null)
         {
-            if (lType.getValue() == value)
-            {
-                return lType;
-            }
+            throw new QCWException("Unknown Line Type: 0x"
+                + Integer.toHexString(value));
         }
-        throw new QCWException("Unknown Line Type: 0x"
-            + Integer.toHexString(value));
+        return lType;
     }
 
 }
@@ -245,6 +245,28 @@ public enum QStudyType
         }
     }
 
+    private static final ValueIndex<QStudyType> INDEX = new ValueIndex<QStudyType>();
+    static
+    {
+        for (final QStudyType sType : values())
+        {
+            INDEX.put(sType.getValue(), sType);
+        }
+    }
+
+    /**
+     * Returns the study type represented by the specified value, or null if
+     * no constant represents it. Types without a constant can still be
+     * decoded through {@link org.stuntaz.libqcw.blobs.QCodecRegistry}.
+     * 
+     * @param value the value for which to determine study type
+     * @return the study type represented by {@code value}, or null
+     */
+    public static QStudyType find(final int value)
+    {
+        return INDEX.get(value);
+    }
+
     /**
      * Returns the study type represented by the specified value.
      * 
@@ -253,16 +275,13 @@ public enum QStudyType
      */
     public static QStudyType forValue(final int value)
     {
-        for (final QStudyType sType : values())
+        final QStudyType sType = INDEX.get(value);
+        if (sType == null)
         {
-            if (sType.getValue() == value)
-            {
-                return sType;
-            }
+            throw new QCWException("Unknown Study Type: 0x"
+                + Integer.toHexString(value));
         }
-
-        throw new QCWException("Unknown Study Type: 0x"
-            + Integer.toHexString(value));
+        return sType;
     }
 
 }
@@ -33,49 +33,49 @@ public enum QWorkspaceSection
     /**
      * A bar chart section
      */
-    BarChart(1),
+    BarChart(1, 2),
 
     /**
      * A time and sales section
      */
-    TimeAndSales(2),
+    TimeAndSales(2, 2),
 
     /**
      * A tabular bar sections
      */
-    TabularBar(3),
+    TabularBar(3, 2),
 
     /**
      * A quote sheet section
      */
-    QuoteSheet(4),
+    QuoteSheet(4, 3),
 
     // TODO: What is QWorkspaceSection 5?
     //
     /**
      * An internet browser secton
      */
-    Browser(6),
+    Browser(6, 1),
 
     /**
      * A Level II section
      */
-    LevelII(7),
+    LevelII(7, 2),
 
     /**
      * A hot list section
      */
-    HotList(8),
+    HotList(8, 1),
 
     /**
      * A single quote section
      */
-    SingleQuote(9),
+    SingleQuote(9, 2),
 
     /**
      * An Island Book section
      */
-    IslandBook(10),
+    IslandBook(10, 2),
 
     //
     // TODO: What is QWorkspaceSection 11?
@@ -84,18 +84,20 @@ public enum QWorkspaceSection
     /**
      * An options montage section
      */
-    OptionsMontage(12),
+    OptionsMontage(12, 6),
 
     /**
      * A Raging Bull message board section
      */
-    RagingBull(13);
+    RagingBull(13, 1);
 
     private int value;
+    private int recordCount;
 
-    QWorkspaceSection(final int value)
+    QWorkspaceSection(final int value, final int recordCount)
     {
         this.value = value;
+        this.recordCount = recordCount;
     }
 
     /**
@@ -108,6 +110,40 @@ public enum QWorkspaceSection
         return value;
     }
 
+    /**
+     * Returns the number of records that make up a section of this type. This
+     * allows a section to be skipped without decoding it.
+     * 
+     * @return the number of top-level records in a section of this type
+     */
+    public int getRecordCount()
+    {
+        return recordCount;
+    }
+
+    private static final ValueIndex<QWorkspaceSection> INDEX = new ValueIndex<QWorkspaceSection>();
+    static
+    {
+        for (final QWorkspaceSection wsType : values())
+        {
+            INDEX.put(wsType.getValue(), wsType);
+        }
+    }
+
+    /**
+     * Returns the workspace section type represented by the specified value,
+     * or null if no constant represents it. Types without a constant can
+     * still be decoded through {@link org.stuntaz.libqcw.blobs.QCodecRegistry}.
+     * 
+     * @param value the value for which to determine workspace section type
+     * @return the workspace section type represented by {@code value}, or
+     *      null
+     */
+    public static QWorkspaceSection find(final int value)
+    {
+        return INDEX.get(value);
+    }
+
     /**
      * Returns the workspace section type represented by the specified value.
      * 
@@ -116,15 +152,13 @@ public enum QWorkspaceSection
      */
     public static QWorkspaceSection forValue(final int value)
     {
-        for (final QWorkspaceSection wsType : values())
+        final QWorkspaceSection wsType = INDEX.get(value);
+        if (wsType == null)
         {
-            if (wsType.getValue() == value)
-            {
-                return wsType;
-            }
+            throw new QCWException("Unknown Workspace Section: 0x"
+                + Integer.toHexString(value));
         }
-        throw new QCWException("Unknown Workspace Section: 0x"
-            + Integer.toHexString(value));
+        return wsType;
     }
 
 }
@@ -0,0 +1,78 @@
+/*
+ * libqcw - A library for parsing, manipulating, and writing QCharts (TM) 
+ * workspace files.
+ *
+ * Copyright (C) 2008-2009 Jon Nall
+ * QCharts is a registered service mark of eSignal, Inc.
+ * RagingBull is a registered service mark of eSignal, Inc.
+ *
+ * Licensed under the Open Software License version 3.0 (the "License"); you
+ * may not use this file except in compliance with the License. You should
+ * have received a copy of the License along with this software; if not, you
+ * may obtain a copy of the License at
+ *
+ * http://opensource.org/licenses/osl-3.0.php
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package org.stuntaz.libqcw.defines;
+
+/**
+ * Maps the numeric values found in the file format to enumeration constants
+ * in constant time. The values of each enumeration are clustered, so they are
+ * stored in an array indexed by their offset from the smallest value.
+ * 
+ * Indexes are filled in from the static initializer of their enumeration and
+ * are read-only afterwards.
+ * 
+ * @author nall
+ *
+ * @param <E> the type of the enumeration
+ */
+final class ValueIndex<E>
+{
+    private int min = 0;
+    private Object[] table = new Object[0];
+
+    /**
+     * Adds the specified constant to this index.
+     * 
+     * @param value the value of the constant in the file format
+     * @param constant the constant
+     */
+    void put(final int value, final E constant)
+    {
+        if (table.length == 0)
+        {
+            min = value;
+        }
+
+        final int newMin = Math.min(min, value);
+        final int newLength = Math.max(min + table.length, value + 1) - newMin;
+        if (newMin != min || newLength != table.length)
+        {
+            final Object[] grown = new Object[newLength];
+            System.arraycopy(table, 0, grown, min - newMin, table.length);
+            table = grown;
+            min = newMin;
+        }
+
+        table[value - min] = constant;
+    }
+
+    /**
+     * Returns the constant with the specified value.
+     * 
+     * @param value the value to look up
+     * @return the constant with that value, or null if there is none
+     */
+    @SuppressWarnings("unchecked")
+    E get(final int value)
+    {
+        final int i = value - min;
+        return (i >= 0 && i < table.length) ? (E) table[i] : null;
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * libqcw - A library for parsing, manipulating, and writing QCharts (TM) 
+ * workspace files.
+ *
+ * Copyright (C) 2008-2009 Jon Nall
+ * QCharts is a registered service mark of eSignal, Inc.
+ * RagingBull is a registered service mark of eSignal, Inc.
+ *
+ * Licensed under the Open Software License version 3.0 (the "License"); you
+ * may not use this file except in compliance with the License. You should
+ * have received a copy of the License along with this software; if not, you
+ * may obtain a copy of the License at
+ *
+ * http://opensource.org/licenses/osl-3.0.php
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package org.stuntaz.libqcw.diff;
+
+import org.stuntaz.libqcw.blobs.IBlob;
+
+/**
+ * A single difference between two versions of a workspace.
+ * 
+ * @author nall
+ *
+ */
+public final class Change
+{
+    private final ChangeType type;
+    private final ChangeLevel level;
+    private final String path;
+    private final IBlob oldValue;
+    private final IBlob newValue;
+
+    Change(
+        final ChangeType type,
+        final ChangeLevel level,
+        final String path,
+        final IBlob oldValue,
+        final IBlob newValue)
+    {
+        this.type = type;
+        this.level = level;
+        this.path = path;
+        this.oldValue = oldValue;
+        this.newValue = newValue;
+    }
+
+    /**
+     * Returns how the element changed.
+     * 
+     * @return the type of this change
+     */
+    public ChangeType getType()
+    {
+        return type;
+    }
+
+    /**
+     * Returns the kind of element that changed.
+     * 
+     * @return the level of this change
+     */
+    public ChangeLevel getLevel()
+    {
+        return level;
+    }
+
+    /**
+     * Returns a description of where the element is, e.g.
+     * {@code section 4 (BarChart INDEX:OEX)/pane 0/INDEX:OEX/line 2}.
+     * Indexes of removed elements refer to the old version, all others to the
+     * new version.
+     * 
+     * @return the path of the element that changed
+     */
+    public String getPath()
+    {
+        return path;
+    }
+
+    /**
+     * Returns the element in the old version.
+     * 
+     * @return the old element, or null if it was added
+     */
+    public IBlob getOldValue()
+    {
+        return oldValue;
+    }
+
+    /**
+     * Returns the element in the new version.
+     * 
+     * @return the new element, or null if it was removed
+     */
+    public IBlob getNewValue()
+    {
+        return newValue;
+    }
+
+    @Override
+    public String toString()
+    {
+        return type.getSymbol() + " " + level + " " + path;
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * libqcw - A library for parsing, manipulating, and writing QCharts (TM) 
+ * workspace files.
+ *
+ * Copyright (C) 2008-2009 Jon Nall
+ * QCharts is a registered service mark of eSignal, Inc.
+ * RagingBull is a registered service mark of eSignal, Inc.
+ *
+ * Licensed under the Open Software License version 3.0 (the "License"); you
+ * may not use this file except in compliance with the License. You should
+ * have received a copy of the License along with this software; if not, you
+ * may obtain a copy of the License at
+ *
+ * http://opensource.org/licenses/osl-3.0.php
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package org.stuntaz.libqcw.diff;
+
+/**
+ * The kinds of element a {@link Change} can describe, from the outermost to
+ * the innermost.
+ * 
+ * @author nall
+ *
+ */
+public enum ChangeLevel
+{
+    /**
+     * A workspace section. Only sections other than bar charts are reported
+     * as modified at this level.
+     */
+    Section,
+
+    /**
+     * The settings of a bar chart: everything but its panes.
+     */
+    Chart,
+
+    /**
+     * The layout or studies of a pane of a bar chart, or the pane as a whole
+     * if it was added or removed.
+     */
+    Pane,
+
+    /**
+     * The lines drawn on a symbol in a pane. Symbols are only reported as
+     * modified at this level if their lines can't be compared one by one.
+     */
+    Symbol,
+
+    /**
+     * A single line or note.
+     */
+    Line
+}
@@ -0,0 +1,62 @@
+/*
+ * libqcw - A library for parsing, manipulating, and writing QCharts (TM) 
+ * workspace files.
+ *
+ * Copyright (C) 2008-2009 Jon Nall
+ * QCharts is a registered service mark of eSignal, Inc.
+ * RagingBull is a registered service mark of eSignal, Inc.
+ *
+ * Licensed under the Open Software License version 3.0 (the "License"); you
+ * may not use this file except in compliance with the License. You should
+ * have received a copy of the License along with this software; if not, you
+ * may obtain a copy of the License at
+ *
+ * http://opensource.org/licenses/osl-3.0.php
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package org.stuntaz.libqcw.diff;
+
+/**
+ * How an element differs between two versions of a workspace.
+ * 
+ * @author nall
+ *
+ */
+public enum ChangeType
+{
+    /**
+     * The element only exists in the new version.
+     */
+    Added('+'),
+
+    /**
+     * The element only exists in the old version.
+     */
+    Removed('-'),
+
+    /**
+     * The element exists in both versions, but its content differs.
+     */
+    Modified('~');
+
+    private final char symbol;
+
+    private ChangeType(final char symbol)
+    {
+        this.symbol = symbol;
+    }
+
+    /**
+     * Returns the character used for this type of change in listings.
+     * 
+     * @return '+', '-' or '~'
+     */
+    public char getSymbol()
+    {
+        return this.symbol;
+    }
+}
@@ -0,0 +1,430 @@
+/*
+ * libqcw - A library for parsing, manipulating, and writing QCharts (TM) 
+ * workspace files.
+ *
+ * Copyright (C) 2008-2009 Jon Nall
+ * QCharts is a registered service mark of eSignal, Inc.
+ * RagingBull is a registered service mark of eSignal, Inc.
+ *
+ * Licensed under the Open Software License version 3.0 (the "License"); you
+ * may not use this file except in compliance with the License. You should
+ * have received a copy of the License along with this software; if not, you
+ * may obtain a copy of the License at
+ *
+ * http://opensource.org/licenses/osl-3.0.php
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package org.stuntaz.libqcw.diff;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.stuntaz.libqcw.blobs.IBlob;
+import org.stuntaz.libqcw.blobs.QSection;
+import org.stuntaz.libqcw.blobs.barchart.BarChartBlob;
+import org.stuntaz.libqcw.blobs.barchart.BarChartSectionBlob;
+import org.stuntaz.libqcw.blobs.barchart.ILineBlob;
+import org.stuntaz.libqcw.blobs.barchart.StudyLineGroupBlob;
+import org.stuntaz.libqcw.blobs.barchart.SymbolEntryBlob;
+import org.stuntaz.libqcw.blobs.workspace.WorkspaceBlob;
+
+/**
+ * Computes the differences between two versions of a workspace. The
+ * comparison walks sections, bar charts, panes, symbols and lines, and skips
+ * any part whose content hash (see {@link IBlob#getContentHash()}) is the
+ * same in both versions, so the time it takes depends on the number of
+ * differences rather than the size of the workspaces once they are hashed.
+ * 
+ * Sections and lines are matched by content, so an element inserted in the
+ * middle of a list is reported as a single addition. Elements that could not
+ * be matched but sit at the same place in both lists are reported as
+ * modified. Symbols are matched by name and panes by position.
+ * 
+ * @author nall
+ *
+ */
+public final class WorkspaceDiff
+{
+    // Above this many cells, lists are compared by position only
+    private static final long MAX_LCS_CELLS = 1 << 20;
+
+    private final List<Change> changes = new ArrayList<Change>();
+
+    private WorkspaceDiff()
+    {
+        // Do nothing
+    }
+
+    /**
+     * Returns the differences between two versions of a workspace, in the
+     * order they appear in the workspaces.
+     * 
+     * @param oldWorkspace the old version
+     * @param newWorkspace the new version
+     * @return the changes, which are empty if the workspaces are identical
+     */
+    public static List<Change> diff(
+        final WorkspaceBlob oldWorkspace,
+        final WorkspaceBlob newWorkspace)
+    {
+        final WorkspaceDiff diff = new WorkspaceDiff();
+        if (oldWorkspace.getContentHash() != newWorkspace.getContentHash())
+        {
+            diff.diffSections(oldWorkspace.getSections(), newWorkspace
+                .getSections());
+        }
+        return diff.changes;
+    }
+
+    /**
+     * Returns the differences between two versions of a bar chart.
+     * 
+     * @param oldChart the old version
+     * @param newChart the new version
+     * @return the changes, which are empty if the charts are identical
+     */
+    public static List<Change> diff(
+        final BarChartBlob oldChart,
+        final BarChartBlob newChart)
+    {
+        final WorkspaceDiff diff = new WorkspaceDiff();
+        diff.diffChart("chart", oldChart, newChart);
+        return diff.changes;
+    }
+
+    private void diffSections(
+        final List<QSection> oldSections,
+        final List<QSection> newSections)
+    {
+        for (final int[] pair : align(oldSections, newSections))
+        {
+            final QSection oldSection = (pair[0] < 0) ? null : oldSections
+                .get(pair[0]);
+            final QSection newSection = (pair[1] < 0) ? null : newSections
+                .get(pair[1]);
+
+            if (oldSection == null)
+            {
+                add(ChangeType.Added, ChangeLevel.Section, sectionPath(
+                    pair[1], newSection), null, newSection);
+            }
+            else if (newSection == null)
+            {
+                add(ChangeType.Removed, ChangeLevel.Section, sectionPath(
+                    pair[0], oldSection), oldSection, null);
+            }
+            else if (oldSection.getSectionTypeValue() != newSection
+                .getSectionTypeValue())
+            {
+                add(ChangeType.Removed, ChangeLevel.Section, sectionPath(
+                    pair[0], oldSection), oldSection, null);
+                add(ChangeType.Added, ChangeLevel.Section, sectionPath(
+                    pair[1], newSection), null, newSection);
+            }
+            else if (oldSection.getContentHash() != newSection
+                .getContentHash())
+            {
+                diffSection(sectionPath(pair[1], newSection), oldSection,
+                    newSection);
+            }
+        }
+    }
+
+    private void diffSection(
+        final String path,
+        final QSection oldSection,
+        final QSection newSection)
+    {
+        if (!(oldSection instanceof BarChartSectionBlob))
+        {
+            add(ChangeType.Modified, ChangeLevel.Section, path, oldSection,
+                newSection);
+            return;
+        }
+
+        final BarChartBlob oldChart = ((BarChartSectionBlob) oldSection)
+            .getLayoutWrapper().getChart();
+        final BarChartBlob newChart = ((BarChartSectionBlob) newSection)
+            .getLayoutWrapper().getChart();
+
+        if (oldChart.getContentHash() == newChart.getContentHash())
+        {
+            // Only the undecoded parts of the section differ
+            add(ChangeType.Modified, ChangeLevel.Section, path, oldSection,
+                newSection);
+        }
+        else
+        {
+            diffChart(path, oldChart, newChart);
+        }
+    }
+
+    private void diffChart(
+        final String path,
+        final BarChartBlob oldChart,
+        final BarChartBlob newChart)
+    {
+        if (oldChart.getContentHash() == newChart.getContentHash())
+        {
+            return;
+        }
+
+        if (oldChart.getSettingsHash() != newChart.getSettingsHash())
+        {
+            add(ChangeType.Modified, ChangeLevel.Chart, path, oldChart,
+                newChart);
+        }
+
+        final int oldPanes = oldChart.getStudyLayouts().size();
+        final int newPanes = newChart.getStudyLayouts().size();
+        for (int i = 0; i < Math.max(oldPanes, newPanes); ++i)
+        {
+            final String panePath = path + "/pane " + i;
+            if (i >= newPanes)
+            {
+                add(ChangeType.Removed, ChangeLevel.Pane, panePath, oldChart
+                    .getStudies().get(i), null);
+                continue;
+            }
+            if (i >= oldPanes)
+            {
+                add(ChangeType.Added, ChangeLevel.Pane, panePath, null,
+                    newChart.getStudies().get(i));
+                continue;
+            }
+
+            if (oldChart.getStudyLayouts().get(i).getContentHash() != newChart
+                .getStudyLayouts().get(i).getContentHash()
+                || oldChart.getStudies().get(i).getContentHash() != newChart
+                    .getStudies().get(i).getContentHash())
+            {
+                add(ChangeType.Modified, ChangeLevel.Pane, panePath, oldChart
+                    .getStudies().get(i), newChart.getStudies().get(i));
+            }
+
+            diffSymbols(panePath, oldChart.getStudyLines().get(i), newChart
+                .getStudyLines().get(i));
+        }
+    }
+
+    private void diffSymbols(
+        final String path,
+        final StudyLineGroupBlob oldLines,
+        final StudyLineGroupBlob newLines)
+    {
+        if (oldLines.getContentHash() == newLines.getContentHash())
+        {
+            return;
+        }
+
+        for (final SymbolEntryBlob oldSym : oldLines.getSymbols())
+        {
+            final String name = oldSym.getSymbolName();
+            final SymbolEntryBlob newSym = newLines.getSymbol(name);
+            if (newSym == null)
+            {
+                add(ChangeType.Removed, ChangeLevel.Symbol, path + "/" + name,
+                    oldSym, null);
+            }
+            else if (oldSym.getContentHash() != newSym.getContentHash())
+            {
+                diffLines(path + "/" + name, oldSym, newSym);
+            }
+        }
+
+        for (final SymbolEntryBlob newSym : newLines.getSymbols())
+        {
+            final String name = newSym.getSymbolName();
+            if (!oldLines.containsSymbol(name))
+            {
+                add(ChangeType.Added, ChangeLevel.Symbol, path + "/" + name,
+                    null, newSym);
+            }
+        }
+    }
+
+    private void diffLines(
+        final String path,
+        final SymbolEntryBlob oldSym,
+        final SymbolEntryBlob newSym)
+    {
+        final List<ILineBlob> oldLines = oldSym.getLineHeaders();
+        final List<ILineBlob> newLines = newSym.getLineHeaders();
+        final int before = changes.size();
+        for (final int[] pair : align(oldLines, newLines))
+        {
+            if (pair[0] < 0)
+            {
+                add(ChangeType.Added, ChangeLevel.Line, path + "/line "
+                    + pair[1], null, newLines.get(pair[1]));
+            }
+            else if (pair[1] < 0)
+            {
+                add(ChangeType.Removed, ChangeLevel.Line, path + "/line "
+                    + pair[0], oldLines.get(pair[0]), null);
+            }
+            else if (oldLines.get(pair[0]).getContentHash() != newLines.get(
+                pair[1]).getContentHash())
+            {
+                add(ChangeType.Modified, ChangeLevel.Line, path + "/line "
+                    + pair[1], oldLines.get(pair[0]), newLines.get(pair[1]));
+            }
+        }
+
+        if (changes.size() == before)
+        {
+            // Same lines, but the symbol itself differs
+            add(ChangeType.Modified, ChangeLevel.Symbol, path, oldSym, newSym);
+        }
+    }
+
+    private void add(
+        final ChangeType type,
+        final ChangeLevel level,
+        final String path,
+        final IBlob oldValue,
+        final IBlob newValue)
+    {
+        changes.add(new Change(type, level, path, oldValue, newValue));
+    }
+
+    private static String sectionPath(final int index, final QSection section)
+    {
+        final StringBuilder path = new StringBuilder("section ");
+        path.append(index).append(" (");
+        if (section.getSectionType() != null)
+        {
+            path.append(section.getSectionType());
+        }
+        else
+        {
+            path.append("0x").append(
+                Integer.toHexString(section.getSectionTypeValue()));
+        }
+        if (section instanceof BarChartSectionBlob)
+        {
+            final String symbol = ((BarChartSectionBlob) section)
+                .getLayoutWrapper().getChart().getChartTitleSymbol();
+            if (symbol != null && symbol.length() > 0)
+            {
+                path.append(' ').append(symbol);
+            }
+        }
+        return path.append(')').toString();
+    }
+
+    /**
+     * Matches the elements of two lists by content hash. Common leading and
+     * trailing elements are matched first, and the longest common
+     * subsequence of the rest after that. The result lists the pairs in
+     * order as {old index, new index}; an index of -1 marks an element only
+     * found in the other list. Unmatched elements between two matches are
+     * paired by position, so such pairs may have different hashes.
+     */
+    private static List<int[]> align(
+        final List<? extends IBlob> oldList,
+        final List<? extends IBlob> newList)
+    {
+        final long[] a = hashes(oldList);
+        final long[] b = hashes(newList);
+        final List<int[]> pairs = new ArrayList<int[]>(Math.max(a.length,
+            b.length));
+
+        int prefix = 0;
+        while (prefix < a.length && prefix < b.length
+            && a[prefix] == b[prefix])
+        {
+            pairs.add(new int[] { prefix, prefix });
+            ++prefix;
+        }
+
+        int suffix = 0;
+        while (suffix < a.length - prefix && suffix < b.length - prefix
+            && a[a.length - 1 - suffix] == b[b.length - 1 - suffix])
+        {
+            ++suffix;
+        }
+
+        final int m = a.length - prefix - suffix;
+        final int n = b.length - prefix - suffix;
+
+        // Find the matches in the middle, in order
+        final List<int[]> matches = new ArrayList<int[]>();
+        if (m > 0 && n > 0 && (long) m * n <= MAX_LCS_CELLS)
+        {
+            final int[][] lcs = new int[m + 1][n + 1];
+            for (int i = m - 1; i >= 0; --i)
+            {
+                for (int j = n - 1; j >= 0; --j)
+                {
+                    lcs[i][j] = (a[prefix + i] == b[prefix + j]) ? lcs[i + 1][j + 1] + 1
+                        : Math.max(lcs[i + 1][j], lcs[i][j + 1]);
+                }
+            }
+
+            int i = 0;
+            int j = 0;
+            while (i < m && j < n)
+            {
+                if (a[prefix + i] == b[prefix + j])
+                {
+                    matches.add(new int[] { prefix + i, prefix + j });
+                    ++i;
+                    ++j;
+                }
+                else if (lcs[i + 1][j] >= lcs[i][j + 1])
+                {
+                    ++i;
+                }
+                else
+                {
+                    ++j;
+                }
+            }
+        }
+        matches.add(new int[] { a.length - suffix, b.length - suffix });
+
+        // Pair up the gaps before each match, then the match itself
+        int i = prefix;
+        int j = prefix;
+        for (final int[] match : matches)
+        {
+            while (i < match[0] && j < match[1])
+            {
+                pairs.add(new int[] { i++, j++ });
+            }
+            while (i < match[0])
+            {
+                pairs.add(new int[] { i++, -1 });
+            }
+            while (j < match[1])
+            {
+                pairs.add(new int[] { -1, j++ });
+            }
+            if (match[0] < a.length - suffix)
+            {
+                pairs.add(new int[] { i++, j++ });
+            }
+        }
+
+        for (int k = 0; k < suffix; ++k)
+        {
+            pairs.add(new int[] { i++, j++ });
+        }
+        return pairs;
+    }
+
+    private static long[] hashes(final List<? extends IBlob> list)
+    {
+        final long[] hashes = new long[list.size()];
+        for (int i = 0; i < hashes.length; ++i)
+        {
+            hashes[i] = list.get(i).getContentHash();
+        }
+        return hashes;
+    }
+}
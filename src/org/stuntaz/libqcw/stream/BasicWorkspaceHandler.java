@@ -0,0 +1,96 @@
+/*
+ * libqcw - A library for parsing, manipulating, and writing QCharts (TM) 
+ * workspace files.
+ *
+ * Copyright (C) 2008-2009 Jon Nall
+ * QCharts is a registered service mark of eSignal, Inc.
+ * RagingBull is a registered service mark of eSignal, Inc.
+ *
+ * Licensed under the Open Software License version 3.0 (the "License"); you
+ * may not use this file except in compliance with the License. You should
+ * have received a copy of the License along with this software; if not, you
+ * may obtain a copy of the License at
+ *
+ * http://opensource.org/licenses/osl-3.0.php
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package org.stuntaz.libqcw.stream;
+
+import org.stuntaz.libqcw.defines.QLineType;
+import org.stuntaz.libqcw.defines.QWorkspaceSection;
+
+/**
+ * Class that implements a basic IWorkspaceHandler. This implementation
+ * ignores every event and is meant to serve as a base class.
+ * 
+ * @author nall
+ *
+ */
+public class BasicWorkspaceHandler
+    implements IWorkspaceHandler
+{
+    /**
+     * @see org.stuntaz.libqcw.stream.IWorkspaceHandler#onSection(org.stuntaz.libqcw.defines.QWorkspaceSection, int)
+     */
+    public void onSection(final QWorkspaceSection type, final int size)
+    {
+        // Do nothing
+    }
+
+    /**
+     * @see org.stuntaz.libqcw.stream.IWorkspaceHandler#onChart(java.lang.String)
+     */
+    public void onChart(final String title)
+    {
+        // Do nothing
+    }
+
+    /**
+     * @see org.stuntaz.libqcw.stream.IWorkspaceHandler#onSymbol(java.lang.String)
+     */
+    public void onSymbol(final String name)
+    {
+        // Do nothing
+    }
+
+    /**
+     * @see org.stuntaz.libqcw.stream.IWorkspaceHandler#onNote(java.lang.String)
+     */
+    public void onNote(final String text)
+    {
+        // Do nothing
+    }
+
+    /**
+     * @see org.stuntaz.libqcw.stream.IWorkspaceHandler#onLine(org.stuntaz.libqcw.defines.QLineType, long, double, long, double)
+     */
+    public void onLine(
+        final QLineType type,
+        final long time1,
+        final double price1,
+        final long time2,
+        final double price2)
+    {
+        // Do nothing
+    }
+
+    /**
+     * @see org.stuntaz.libqcw.stream.IWorkspaceHandler#onUnsupportedLine(org.stuntaz.libqcw.defines.QLineType)
+     */
+    public void onUnsupportedLine(final QLineType type)
+    {
+        // Do nothing
+    }
+
+    /**
+     * @see org.stuntaz.libqcw.stream.IWorkspaceHandler#endChart()
+     */
+    public void endChart()
+    {
+        // Do nothing
+    }
+}
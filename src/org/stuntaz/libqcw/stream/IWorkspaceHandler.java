@@ -0,0 +1,101 @@
+/*
+ * libqcw - A library for parsing, manipulating, and writing QCharts (TM) 
+ * workspace files.
+ *
+ * Copyright (C) 2008-2009 Jon Nall
+ * QCharts is a registered service mark of eSignal, Inc.
+ * RagingBull is a registered service mark of eSignal, Inc.
+ *
+ * Licensed under the Open Software License version 3.0 (the "License"); you
+ * may not use this file except in compliance with the License. You should
+ * have received a copy of the License along with this software; if not, you
+ * may obtain a copy of the License at
+ *
+ * http://opensource.org/licenses/osl-3.0.php
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package org.stuntaz.libqcw.stream;
+
+import org.stuntaz.libqcw.blobs.QTime;
+import org.stuntaz.libqcw.defines.QLineType;
+import org.stuntaz.libqcw.defines.QWorkspaceSection;
+
+/**
+ * Interface for receiving events from a {@link WorkspaceEventParser}. Events
+ * are delivered in file order. No blob objects are created, so only the
+ * values passed to these methods are available.
+ * 
+ * @author nall
+ *
+ */
+public interface IWorkspaceHandler
+{
+    /**
+     * Called for every section of a workspace, before any of its content.
+     * 
+     * @param type the type of the section, or null if its type code has no
+     *      {@link QWorkspaceSection} constant
+     * @param size the size of the section in bytes
+     */
+    public void onSection(final QWorkspaceSection type, final int size);
+
+    /**
+     * Called at the start of every bar chart.
+     * 
+     * @param title the title of the chart (e.g. "INDEX:OEX,D"), or
+     *      {@code null} for charts in layout (QCL) files which have no title
+     */
+    public void onChart(final String title);
+
+    /**
+     * Called for every symbol entry of a chart's study lines.
+     * 
+     * @param name the fully qualified symbol name (e.g. INDEX:OEX.X)
+     */
+    public void onSymbol(final String name);
+
+    /**
+     * Called for every note of the current symbol, just before the
+     * {@link #onLine(QLineType, long, double, long, double)} event for its
+     * position.
+     * 
+     * @param text the text of the note
+     */
+    public void onNote(final String text);
+
+    /**
+     * Called for every basic line and note of the current symbol. Times are
+     * in the 32-bit format of the file and may be converted with
+     * {@link QTime#toMillis(long)}.
+     * 
+     * @param type the type of the line
+     * @param time1 the time of the starting point
+     * @param price1 the value of the starting point
+     * @param time2 the time of the ending point
+     * @param price2 the value of the ending point
+     */
+    public void onLine(
+        final QLineType type,
+        final long time1,
+        final double price1,
+        final long time2,
+        final double price2);
+
+    /**
+     * Called for every line of the current symbol whose content is not
+     * decoded (retracements, projections, etc).
+     * 
+     * @param type the type of the line, or null if its type code has no
+     *      {@link QLineType} constant
+     */
+    public void onUnsupportedLine(final QLineType type);
+
+    /**
+     * Called at the end of every bar chart.
+     */
+    public void endChart();
+}
@@ -0,0 +1,537 @@
+/*
+ * libqcw - A library for parsing, manipulating, and writing QCharts (TM) 
+ * workspace files.
+ *
+ * Copyright (C) 2008-2009 Jon Nall
+ * QCharts is a registered service mark of eSignal, Inc.
+ * RagingBull is a registered service mark of eSignal, Inc.
+ *
+ * Licensed under the Open Software License version 3.0 (the "License"); you
+ * may not use this file except in compliance with the License. You should
+ * have received a copy of the License along with this software; if not, you
+ * may obtain a copy of the License at
+ *
+ * http://opensource.org/licenses/osl-3.0.php
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package org.stuntaz.libqcw.stream;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.stuntaz.libqcw.QCWException;
+import org.stuntaz.libqcw.blobs.QString;
+import org.stuntaz.libqcw.blobs.QUtils;
+import org.stuntaz.libqcw.defines.QLineType;
+import org.stuntaz.libqcw.defines.QWorkspaceSection;
+
+/**
+ * A pull cursor over the records of a workspace (QCW) or layout (QCL) file.
+ * Each call to {@link #next()} moves to the next record in file order,
+ * descending into child records first, and reports its
+ * {@link #getKind() kind}, {@link #getOffset() offset} and
+ * {@link #getSize() size}. Calling {@link #skip()} before {@link #next()}
+ * jumps over the children of the current record using its length, so parts
+ * of the file that are not of interest are never decoded.
+ * 
+ * Only the values needed to find the records are read: counts, terminators,
+ * and the types of sections and lines. Use {@link #getBody()} to decode the
+ * content of a record.
+ * 
+ * A typical loop looks like:
+ * 
+ * <pre>
+ * final RecordCursor cursor = new RecordCursor(QUtils.map(file), true);
+ * while (cursor.next())
+ * {
+ *     if (cursor.getKind() == RecordKind.StudyHeader)
+ *     {
+ *         ...
+ *     }
+ * }
+ * </pre>
+ * 
+ * @author nall
+ *
+ */
+public final class RecordCursor
+{
+    private final ByteBuffer buffer;
+    private final boolean workspaceContext;
+    private final List<Frame> frames = new ArrayList<Frame>();
+    private int[] sectionTypes = new int[0];
+    private int[] sectionRecords = new int[0];
+
+    private RecordKind kind;
+    private int offset;
+    private int bodyOffset;
+    private int bodySize;
+    private boolean skipChildren;
+    private int sectionType = -1;
+    private int lineTypeValue;
+    private QLineType lineType;
+
+    /**
+     * Creates a new RecordCursor over the specified file contents. The buffer
+     * must be positioned at the start of the file; its position is not
+     * changed by the cursor.
+     * 
+     * @param buffer the contents of the file
+     * @param workspaceContext true if the buffer holds a workspace (QCW)
+     *      file, false if it holds a layout (QCL) file
+     * @throws QCWException if the file does not start with the expected magic
+     *      number
+     */
+    public RecordCursor(final ByteBuffer buffer, final boolean workspaceContext)
+    {
+        this.buffer = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        this.workspaceContext = workspaceContext;
+
+        try
+        {
+            final int magic = QUtils.readWord(this.buffer);
+            if (magic != 0x0001)
+            {
+                throw new QCWException("Unexpected magic number in header: "
+                    + magic);
+            }
+        }
+        catch (final BufferUnderflowException e)
+        {
+            throw new QCWException("Unexpected end of file at offset 0x"
+                + Integer.toHexString(this.buffer.position()));
+        }
+
+        frames.add(new Frame(null, this.buffer.limit(), null));
+    }
+
+    /**
+     * Moves to the next record. If the current record has children and
+     * {@link #skip()} was not called, this is its first child.
+     * 
+     * @return true if the cursor is on a record, false if the end of the file
+     *      was reached
+     * @throws QCWException if the file is malformed
+     */
+    public boolean next()
+    {
+        try
+        {
+            if (kind != null)
+            {
+                if (kind.hasChildren() && !skipChildren)
+                {
+                    frames.add(new Frame(kind, bodyOffset + bodySize,
+                        lineType));
+                    buffer.position(bodyOffset);
+                }
+                else
+                {
+                    buffer.position(bodyOffset + bodySize);
+                }
+            }
+            skipChildren = false;
+
+            while (!frames.isEmpty())
+            {
+                final Frame parent = frames.get(frames.size() - 1);
+                final RecordKind child = nextChild(parent);
+                if (child != null)
+                {
+                    ++parent.step;
+                    kind = child;
+                    offset = buffer.position();
+                    bodySize = QUtils.readRecordHeader(buffer);
+                    bodyOffset = buffer.position();
+
+                    if (child == RecordKind.SectionHeader)
+                    {
+                        readSectionTypes();
+                    }
+                    return true;
+                }
+
+                buffer.position(parent.end);
+                frames.remove(frames.size() - 1);
+                if (parent.kind == RecordKind.SectionContainer)
+                {
+                    sectionType = -1;
+                }
+            }
+
+            kind = null;
+            return false;
+        }
+        catch (final BufferUnderflowException e)
+        {
+            throw new QCWException("Unexpected end of file at offset 0x"
+                + Integer.toHexString(buffer.position()));
+        }
+    }
+
+    /**
+     * Causes the next call to {@link #next()} to move past the children of
+     * the current record rather than into them. This is free: the record's
+     * length is used to find its end.
+     */
+    public void skip()
+    {
+        skipChildren = true;
+    }
+
+    /**
+     * Returns the kind of the current record.
+     * 
+     * @return the kind of the current record, or null if {@link #next()} has
+     *      not been called or returned false
+     */
+    public RecordKind getKind()
+    {
+        return this.kind;
+    }
+
+    /**
+     * Returns the offset of the current record in the file.
+     * 
+     * @return the offset of the first byte of the current record's header
+     */
+    public int getOffset()
+    {
+        return this.offset;
+    }
+
+    /**
+     * Returns the size of the current record, including its header.
+     * 
+     * @return the size of the current record in bytes
+     */
+    public int getSize()
+    {
+        return bodyOffset + bodySize - offset;
+    }
+
+    /**
+     * Returns the offset of the body of the current record in the file, just
+     * past its header.
+     * 
+     * @return the offset of the first byte of the current record's body
+     */
+    public int getBodyOffset()
+    {
+        return this.bodyOffset;
+    }
+
+    /**
+     * Returns a read-only, little endian view of the body of the current
+     * record. No bytes are copied.
+     * 
+     * @return a view of the current record's body
+     */
+    public ByteBuffer getBody()
+    {
+        return QUtils.slice(buffer, bodyOffset, bodyOffset + bodySize);
+    }
+
+    /**
+     * Returns the nesting depth of the current record. Records at the top
+     * level of the file have a depth of 0.
+     * 
+     * @return the depth of the current record
+     */
+    public int getDepth()
+    {
+        return frames.size() - 1;
+    }
+
+    /**
+     * Returns the type of the section containing the current record.
+     * 
+     * @return the type of the enclosing section, or null if the current
+     *      record is not part of a section or the section's type code has no
+     *      {@link QWorkspaceSection} constant
+     */
+    public QWorkspaceSection getSectionType()
+    {
+        return (sectionType < 0) ? null : QWorkspaceSection.find(sectionType);
+    }
+
+    /**
+     * Returns the type code of the section containing the current record.
+     * 
+     * @return the type code of the enclosing section, or -1 if the current
+     *      record is not part of a section
+     */
+    public int getSectionTypeValue()
+    {
+        return this.sectionType;
+    }
+
+    /**
+     * Returns the type of the current line. This is only meaningful when the
+     * current record is a {@link RecordKind#LineHeader},
+     * {@link RecordKind#BasicLine} or {@link RecordKind#UnsupportedLine}.
+     * 
+     * @return the type of the current line, or null if its type code has no
+     *      {@link QLineType} constant
+     */
+    public QLineType getLineType()
+    {
+        return this.lineType;
+    }
+
+    /**
+     * Returns the type code of the current line. This is only meaningful when
+     * the current record is a {@link RecordKind#LineHeader},
+     * {@link RecordKind#BasicLine} or {@link RecordKind#UnsupportedLine}.
+     * 
+     * @return the type code of the current line
+     */
+    public int getLineTypeValue()
+    {
+        return this.lineTypeValue;
+    }
+
+    /**
+     * Determines the kind of the next child of the specified record, reading
+     * any values which precede it. The buffer is positioned at the end of the
+     * previous child, or at the start of the parent's body.
+     * 
+     * @return the kind of the next child, or null if there are no more
+     */
+    private RecordKind nextChild(final Frame parent)
+    {
+        if (parent.kind == null)
+        {
+            if (workspaceContext)
+            {
+                switch (parent.step)
+                {
+                case 0:
+                    return RecordKind.SectionNumber;
+                case 1:
+                    return RecordKind.SectionHeader;
+                case 2:
+                    return RecordKind.SectionContainer;
+                default:
+                    return null;
+                }
+            }
+            return (parent.step == 0) ? RecordKind.BarChartWrapper : null;
+        }
+
+        switch (parent.kind)
+        {
+        case SectionHeader:
+            return (buffer.position() < parent.end) ? RecordKind.SectionHeaderInfo
+                : null;
+
+        case SectionContainer:
+            return nextSectionRecord(parent);
+
+        case BarChartWrapper:
+            return (parent.step == 0) ? RecordKind.BarChart : null;
+
+        case BarChart:
+            return nextChartRecord(parent);
+
+        case StudyLineGroup:
+            if (parent.step == 0)
+            {
+                parent.count = QUtils.readQDword(buffer);
+            }
+            return (parent.step < parent.count) ? RecordKind.SymbolEntry : null;
+
+        case SymbolEntry:
+            if (parent.step == 0)
+            {
+                // Symbol name
+                new QString().parse(buffer);
+                parent.count = QUtils.readQDword(buffer);
+            }
+            if (parent.step >= parent.count)
+            {
+                return null;
+            }
+
+            lineTypeValue = QUtils.readQDword(buffer);
+            lineType = QLineType.find(lineTypeValue);
+            if (lineType == QLineType.BasicLine || lineType == QLineType.Note)
+            {
+                return RecordKind.LineHeader;
+            }
+            return RecordKind.UnsupportedLine;
+
+        case LineHeader:
+            if (parent.step != 0)
+            {
+                return null;
+            }
+
+            lineType = parent.lineType;
+            lineTypeValue = lineType.getValue();
+            if (lineType == QLineType.Note)
+            {
+                // Font and text
+                QUtils.readQByteBufferView(buffer);
+                new QString().parse(buffer);
+            }
+            skipQDwords(2);
+            return RecordKind.BasicLine;
+
+        default:
+            return null;
+        }
+    }
+
+    private RecordKind nextSectionRecord(final Frame parent)
+    {
+        // count is the index of the current section and index the number of
+        // its records already returned
+        while (parent.count < sectionTypes.length
+            && parent.index >= sectionRecords(parent.count))
+        {
+            ++parent.count;
+            parent.index = 0;
+        }
+        if (parent.count >= sectionTypes.length)
+        {
+            return null;
+        }
+
+        sectionType = sectionTypes[parent.count];
+        final int record = parent.index++;
+        if (sectionType == QWorkspaceSection.BarChart.getValue()
+            && record == 1)
+        {
+            return RecordKind.BarChartWrapper;
+        }
+        return RecordKind.Unsupported;
+    }
+
+    /**
+     * Returns the number of records in the specified section. The buffer
+     * must be positioned at the start of the section the first time this is
+     * called for it, since sections without a {@link QWorkspaceSection}
+     * constant are measured by parsing them.
+     */
+    private int sectionRecords(final int index)
+    {
+        if (sectionRecords[index] < 0)
+        {
+            sectionRecords[index] = QUtils.skipSection(buffer.duplicate()
+                .order(buffer.order()), sectionTypes[index]);
+        }
+        return sectionRecords[index];
+    }
+
+    private RecordKind nextChartRecord(final Frame parent)
+    {
+        if (parent.step == 0)
+        {
+            // Magic
+            QUtils.readQWord(buffer);
+            if (workspaceContext)
+            {
+                // Title
+                new QString(true).parse(buffer);
+            }
+            // Font, unknown1-3, chart type, unknown4-11
+            QUtils.readQByteBufferView(buffer);
+            skipQDwords(3);
+            QUtils.readQWord(buffer);
+            skipQDwords(8);
+
+            parent.count = QUtils.readQDword(buffer);
+
+            // unknown12
+            QUtils.readQDword(buffer);
+        }
+
+        final int paneRecords = 3 * parent.count;
+        if (parent.step < paneRecords)
+        {
+            final int pane = parent.step / 3;
+            switch (parent.step % 3)
+            {
+            case 0:
+                if (pane != 0)
+                {
+                    // Terminator after the previous pane's lines
+                    QUtils.readQDword(buffer);
+                }
+                return RecordKind.StudyLayout;
+            case 1:
+                return RecordKind.StudyHeader;
+            default:
+                if (pane != 0)
+                {
+                    // Terminator
+                    QUtils.readQDword(buffer);
+                }
+                return RecordKind.StudyLineGroup;
+            }
+        }
+
+        // Unknown13, daily snapshot, data window, unknown14
+        return (parent.step < paneRecords + 4) ? RecordKind.Unsupported : null;
+    }
+
+    private void readSectionTypes()
+    {
+        final ByteBuffer body = getBody();
+        final List<Integer> types = new ArrayList<Integer>();
+        while (body.hasRemaining())
+        {
+            final int size = QUtils.readRecordHeader(body);
+            final int end = body.position() + size;
+            types.add(Integer.valueOf(QUtils.readQWord(body)));
+            body.position(end);
+        }
+
+        sectionTypes = new int[types.size()];
+        sectionRecords = new int[types.size()];
+        for (int i = 0; i < sectionTypes.length; ++i)
+        {
+            sectionTypes[i] = types.get(i).intValue();
+            final QWorkspaceSection known = QWorkspaceSection
+                .find(sectionTypes[i]);
+            sectionRecords[i] = (known == null) ? -1 : known
+                .getRecordCount();
+        }
+    }
+
+    private void skipQDwords(final int count)
+    {
+        for (int i = 0; i < count; ++i)
+        {
+            QUtils.readQDword(buffer);
+        }
+    }
+
+    /**
+     * The state of a record whose children are being iterated.
+     */
+    private static final class Frame
+    {
+        final RecordKind kind;
+        final int end;
+        final QLineType lineType;
+        int step;
+        int count;
+        int index;
+
+        Frame(final RecordKind kind, final int end, final QLineType lineType)
+        {
+            this.kind = kind;
+            this.end = end;
+            this.lineType = lineType;
+        }
+    }
+}
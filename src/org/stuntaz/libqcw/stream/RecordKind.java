@@ -0,0 +1,120 @@
+/*
+ * libqcw - A library for parsing, manipulating, and writing QCharts (TM) 
+ * workspace files.
+ *
+ * Copyright (C) 2008-2009 Jon Nall
+ * QCharts is a registered service mark of eSignal, Inc.
+ * RagingBull is a registered service mark of eSignal, Inc.
+ *
+ * Licensed under the Open Software License version 3.0 (the "License"); you
+ * may not use this file except in compliance with the License. You should
+ * have received a copy of the License along with this software; if not, you
+ * may obtain a copy of the License at
+ *
+ * http://opensource.org/licenses/osl-3.0.php
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package org.stuntaz.libqcw.stream;
+
+/**
+ * Enumeration of the kinds of records reported by a {@link RecordCursor}.
+ * Records carry no type information in the file format; the kind is known
+ * from the position of the record in the grammar.
+ * 
+ * @author nall
+ *
+ */
+public enum RecordKind
+{
+    /**
+     * The record holding the number of sections of a workspace.
+     */
+    SectionNumber(false),
+
+    /**
+     * The record holding one {@link #SectionHeaderInfo} per section.
+     */
+    SectionHeader(true),
+
+    /**
+     * The record describing the type of a single section.
+     */
+    SectionHeaderInfo(false),
+
+    /**
+     * The record holding the records of every section.
+     */
+    SectionContainer(true),
+
+    /**
+     * A record whose content is not decoded. These are the records of
+     * sections other than bar charts and the undecoded parts of a bar chart.
+     */
+    Unsupported(false),
+
+    /**
+     * The record wrapping a {@link #BarChart}.
+     */
+    BarChartWrapper(true),
+
+    /**
+     * A bar chart.
+     */
+    BarChart(true),
+
+    /**
+     * The layout of a single pane of a bar chart.
+     */
+    StudyLayout(false),
+
+    /**
+     * The studies of a single pane of a bar chart.
+     */
+    StudyHeader(false),
+
+    /**
+     * The lines drawn in a single pane of a bar chart, grouped by symbol.
+     */
+    StudyLineGroup(true),
+
+    /**
+     * The lines drawn on a single symbol.
+     */
+    SymbolEntry(true),
+
+    /**
+     * A basic line or note.
+     */
+    LineHeader(true),
+
+    /**
+     * The coordinates and style of a basic line or note.
+     */
+    BasicLine(false),
+
+    /**
+     * A line whose content is not decoded (retracements, projections, etc).
+     */
+    UnsupportedLine(false);
+
+    private final boolean hasChildren;
+
+    private RecordKind(final boolean hasChildren)
+    {
+        this.hasChildren = hasChildren;
+    }
+
+    /**
+     * Returns true if records of this kind contain other records.
+     * 
+     * @return true if this kind of record has child records
+     */
+    public boolean hasChildren()
+    {
+        return this.hasChildren;
+    }
+}
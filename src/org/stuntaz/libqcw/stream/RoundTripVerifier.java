@@ -0,0 +1,445 @@
+/*
+ * libqcw - A library for parsing, manipulating, and writing QCharts (TM) 
+ * workspace files.
+ *
+ * Copyright (C) 2008-2009 Jon Nall
+ * QCharts is a registered service mark of eSignal, Inc.
+ * RagingBull is a registered service mark of eSignal, Inc.
+ *
+ * Licensed under the Open Software License version 3.0 (the "License"); you
+ * may not use this file except in compliance with the License. You should
+ * have received a copy of the License along with this software; if not, you
+ * may obtain a copy of the License at
+ *
+ * http://opensource.org/licenses/osl-3.0.php
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package org.stuntaz.libqcw.stream;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.stuntaz.libqcw.QCWException;
+import org.stuntaz.libqcw.blobs.QUtils;
+import org.stuntaz.libqcw.blobs.files.LayoutFileBlob;
+import org.stuntaz.libqcw.blobs.files.WorkspaceFileBlob;
+
+/**
+ * Verifies that a parsed file is written back exactly as it was read. The
+ * output is compared with the original in chunks as it is written and both
+ * are hashed along the way, so no copy of the output is kept. When the two
+ * differ, the first differing offset is located in the record structure of
+ * the original with a {@link RecordCursor}.
+ * 
+ * @author nall
+ *
+ */
+public final class RoundTripVerifier
+{
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final String DIGEST_ALGORITHM = "SHA-1";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * The outcome of verifying a single file.
+     */
+    public static final class Result
+    {
+        private final int inputLength;
+        private final long outputLength;
+        private final int divergence;
+        private final String recordPath;
+        private final String inputDigest;
+        private final String outputDigest;
+
+        Result(
+            final int inputLength,
+            final long outputLength,
+            final int divergence,
+            final String recordPath,
+            final String inputDigest,
+            final String outputDigest)
+        {
+            this.inputLength = inputLength;
+            this.outputLength = outputLength;
+            this.divergence = divergence;
+            this.recordPath = recordPath;
+            this.inputDigest = inputDigest;
+            this.outputDigest = outputDigest;
+        }
+
+        /**
+         * Returns true if the output was identical to the input.
+         * 
+         * @return true if the round trip succeeded
+         */
+        public boolean isIdentical()
+        {
+            return divergence < 0;
+        }
+
+        /**
+         * Returns the offset of the first byte at which the output differs
+         * from the input. If one is a prefix of the other, this is the length
+         * of the shorter one.
+         * 
+         * @return the first differing offset, or -1 if there is none
+         */
+        public int getDivergenceOffset()
+        {
+            return divergence;
+        }
+
+        /**
+         * Returns the path of the records of the input enclosing the first
+         * differing offset, e.g.
+         * {@code SectionContainer/BarChartWrapper[5](BarChart)/BarChart/StudyLineGroup[8]/SymbolEntry[2] +0x1d}.
+         * 
+         * @return the record path, or null if the output was identical
+         */
+        public String getRecordPath()
+        {
+            return recordPath;
+        }
+
+        /**
+         * Returns the size of the input.
+         * 
+         * @return the number of bytes read
+         */
+        public int getInputLength()
+        {
+            return inputLength;
+        }
+
+        /**
+         * Returns the size of the output.
+         * 
+         * @return the number of bytes written
+         */
+        public long getOutputLength()
+        {
+            return outputLength;
+        }
+
+        /**
+         * Returns the SHA-1 digest of the input as a hexadecimal string.
+         * 
+         * @return the digest of the input
+         */
+        public String getInputDigest()
+        {
+            return inputDigest;
+        }
+
+        /**
+         * Returns the SHA-1 digest of the output as a hexadecimal string.
+         * 
+         * @return the digest of the output
+         */
+        public String getOutputDigest()
+        {
+            return outputDigest;
+        }
+
+        @Override
+        public String toString()
+        {
+            if (isIdentical())
+            {
+                return "identical (" + inputLength + " bytes, sha1 "
+                    + inputDigest + ")";
+            }
+            return "round trip differs at offset 0x"
+                + Integer.toHexString(divergence) + " in " + recordPath + " ("
+                + outputLength + " bytes written vs " + inputLength + " read)";
+        }
+    }
+
+    private RoundTripVerifier()
+    {
+        // Do nothing
+    }
+
+    /**
+     * Parses the specified workspace (QCW) or layout (QCL) file, writes it
+     * back, and compares the result with the file. Files whose name ends in
+     * .qcl are treated as layouts.
+     * 
+     * @param file the file to verify
+     * @return the outcome of the comparison
+     * @throws QCWException if the file can't be read or parsed
+     */
+    public static Result verify(final File file)
+    {
+        final ByteBuffer original;
+        try
+        {
+            original = QUtils.map(file);
+        }
+        catch (final IOException e)
+        {
+            throw new QCWException("I/O error detected while reading file: "
+                + e.getMessage());
+        }
+
+        if (file.getName().toLowerCase().endsWith(".qcl"))
+        {
+            final LayoutFileBlob qcl = new LayoutFileBlob();
+            qcl.parse(original.duplicate());
+            return verify(qcl, original);
+        }
+
+        final WorkspaceFileBlob qcw = new WorkspaceFileBlob();
+        qcw.parse(original.duplicate());
+        return verify(qcw, original);
+    }
+
+    /**
+     * Writes the specified workspace and compares the result with the
+     * contents of the file it was parsed from.
+     * 
+     * @param qcw the parsed workspace
+     * @param original the contents of the workspace file, from its start to
+     *      its end. Its position is not changed.
+     * @return the outcome of the comparison
+     */
+    public static Result verify(
+        final WorkspaceFileBlob qcw,
+        final ByteBuffer original)
+    {
+        final Comparison comparison = new Comparison(original);
+        qcw.write(comparison);
+        return comparison.finish(true);
+    }
+
+    /**
+     * Writes the specified layout and compares the result with the contents
+     * of the file it was parsed from.
+     * 
+     * @param qcl the parsed layout
+     * @param original the contents of the layout file, from its start to its
+     *      end. Its position is not changed.
+     * @return the outcome of the comparison
+     */
+    public static Result verify(
+        final LayoutFileBlob qcl,
+        final ByteBuffer original)
+    {
+        final Comparison comparison = new Comparison(original);
+        try
+        {
+            qcl.write(comparison);
+        }
+        catch (final IOException e)
+        {
+            throw new QCWException("I/O error detected while writing file: "
+                + e.getMessage());
+        }
+        return comparison.finish(false);
+    }
+
+    /**
+     * Describes the records of a file that enclose the specified offset, from
+     * the outermost to the innermost, followed by the offset within the
+     * innermost record. Each record is named by its {@link RecordKind} and
+     * its index among its siblings.
+     * 
+     * @param contents the contents of the file, from its start to its end
+     * @param workspaceContext true if the file is a workspace (QCW) file,
+     *      false if it is a layout (QCL) file
+     * @param offset the offset to describe
+     * @return the path of records enclosing the offset
+     */
+    public static String describeOffset(
+        final ByteBuffer contents,
+        final boolean workspaceContext,
+        final int offset)
+    {
+        final List<String> path = new ArrayList<String>();
+        final List<Integer> siblings = new ArrayList<Integer>();
+        int start = 0;
+
+        try
+        {
+            final RecordCursor cursor = new RecordCursor(contents,
+                workspaceContext);
+            while (cursor.next() && cursor.getOffset() <= offset)
+            {
+                final int depth = cursor.getDepth();
+                while (siblings.size() > depth + 1)
+                {
+                    siblings.remove(siblings.size() - 1);
+                }
+                if (siblings.size() == depth)
+                {
+                    siblings.add(0);
+                }
+                final int index = siblings.get(depth);
+                siblings.set(depth, index + 1);
+
+                if (offset >= cursor.getOffset() + cursor.getSize())
+                {
+                    // Before the offset; don't look inside
+                    cursor.skip();
+                    continue;
+                }
+
+                while (path.size() > depth)
+                {
+                    path.remove(path.size() - 1);
+                }
+
+                final StringBuilder name = new StringBuilder(cursor.getKind()
+                    .name());
+                name.append('[').append(index).append(']');
+                if (depth == 1 && cursor.getSectionType() != null)
+                {
+                    name.append('(').append(cursor.getSectionType()).append(
+                        ')');
+                }
+                else if (depth == 1 && cursor.getSectionTypeValue() >= 0)
+                {
+                    name.append("(0x").append(
+                        Integer.toHexString(cursor.getSectionTypeValue()))
+                        .append(')');
+                }
+                path.add(name.toString());
+                start = cursor.getOffset();
+            }
+        }
+        catch (final QCWException e)
+        {
+            // Describe as much as could be found
+        }
+
+        if (path.isEmpty())
+        {
+            return (offset < 2) ? "file header" : "end of file";
+        }
+
+        final StringBuilder result = new StringBuilder();
+        for (final String name : path)
+        {
+            if (result.length() > 0)
+            {
+                result.append('/');
+            }
+            result.append(name);
+        }
+        return result.append(" +0x").append(Integer.toHexString(offset - start))
+            .toString();
+    }
+
+    private static String toHex(final byte[] bytes)
+    {
+        final char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; ++i)
+        {
+            chars[2 * i] = HEX[(bytes[i] >> 4) & 0xF];
+            chars[2 * i + 1] = HEX[bytes[i] & 0xF];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * An output stream which compares what is written to it with the
+     * original contents of a file.
+     */
+    private static final class Comparison
+        extends OutputStream
+    {
+        private final ByteBuffer original;
+        private final ByteBuffer remaining;
+        private final MessageDigest inputDigest;
+        private final MessageDigest outputDigest;
+        private long written = 0;
+        private int divergence = -1;
+
+        Comparison(final ByteBuffer original)
+        {
+            this.original = original.duplicate();
+            this.remaining = original.duplicate();
+
+            try
+            {
+                inputDigest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+                outputDigest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+            }
+            catch (final NoSuchAlgorithmException e)
+            {
+                throw new QCWException(DIGEST_ALGORITHM + " is not available");
+            }
+        }
+
+        @Override
+        public void write(final int b)
+        {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len)
+        {
+            outputDigest.update(b, off, len);
+
+            for (int pos = off; pos < off + len; pos += CHUNK_SIZE)
+            {
+                final int n = Math.min(CHUNK_SIZE, off + len - pos);
+                final int k = Math.min(n, remaining.remaining());
+
+                final ByteBuffer expected = remaining.slice();
+                expected.limit(k);
+                remaining.position(remaining.position() + k);
+                inputDigest.update(expected.duplicate());
+
+                if (divergence < 0)
+                {
+                    if (!expected.equals(ByteBuffer.wrap(b, pos, k)))
+                    {
+                        int i = 0;
+                        while (expected.get(i) == b[pos + i])
+                        {
+                            ++i;
+                        }
+                        divergence = (int) written + i;
+                    }
+                    else if (k < n)
+                    {
+                        // The output is longer than the input
+                        divergence = (int) written + k;
+                    }
+                }
+                written += n;
+            }
+        }
+
+        Result finish(final boolean workspaceContext)
+        {
+            if (remaining.hasRemaining())
+            {
+                if (divergence < 0)
+                {
+                    // The output is shorter than the input
+                    divergence = (int) written;
+                }
+                inputDigest.update(remaining);
+            }
+
+            final String path = (divergence < 0) ? null : describeOffset(
+                original, workspaceContext, divergence);
+            return new Result(original.remaining(), written, divergence, path,
+                toHex(inputDigest.digest()), toHex(outputDigest.digest()));
+        }
+    }
+}
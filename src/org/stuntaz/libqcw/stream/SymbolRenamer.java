@@ -0,0 +1,307 @@
+/*
+ * libqcw - A library for parsing, manipulating, and writing QCharts (TM) 
+ * workspace files.
+ *
+ * Copyright (C) 2008-2009 Jon Nall
+ * QCharts is a registered service mark of eSignal, Inc.
+ * RagingBull is a registered service mark of eSignal, Inc.
+ *
+ * Licensed under the Open Software License version 3.0 (the "License"); you
+ * may not use this file except in compliance with the License. You should
+ * have received a copy of the License along with this software; if not, you
+ * may obtain a copy of the License at
+ *
+ * http://opensource.org/licenses/osl-3.0.php
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package org.stuntaz.libqcw.stream;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.stuntaz.libqcw.QCWException;
+import org.stuntaz.libqcw.blobs.QString;
+import org.stuntaz.libqcw.blobs.QUtils;
+
+/**
+ * Renames symbols in a workspace (QCW) or layout (QCL) file without building
+ * the object model. The file is copied record by record with a
+ * {@link RecordCursor}. Only the symbol entries whose names change are
+ * re-encoded, and only the lengths of the records enclosing them (line
+ * groups, charts and the section container) are recomputed. Everything else
+ * is copied verbatim and never decoded.
+ * 
+ * This only handles plain renames. If a new name is already used by another
+ * symbol of the same line group, or two symbols of a group would get the
+ * same name, the lines need to be merged and a {@link QCWException} is
+ * thrown; use the object model for that case.
+ * 
+ * @author nall
+ *
+ */
+public final class SymbolRenamer
+{
+    private final Map<String, String> renames;
+    private int renameCount;
+
+    // Rewrite state
+    private ByteBuffer input;
+    private ByteBuffer output;
+    private int mark;
+    private final List<OpenRecord> open = new ArrayList<OpenRecord>();
+
+    /**
+     * Creates a new SymbolRenamer.
+     * 
+     * @param renames maps old symbol names (e.g. INDEX:OEX.X) to new ones
+     */
+    public SymbolRenamer(final Map<String, String> renames)
+    {
+        this.renames = new HashMap<String, String>(renames);
+    }
+
+    /**
+     * Returns the number of symbol entries renamed by the last rewrite.
+     * 
+     * @return the number of renamed symbol entries
+     */
+    public int getRenameCount()
+    {
+        return this.renameCount;
+    }
+
+    /**
+     * Rewrites the specified file, writing the result to {@code out}. The
+     * input and output may be the same file.
+     * 
+     * @param in the file to read
+     * @param out the file to write
+     * @param workspaceContext true for workspace (QCW) files, false for
+     *      layout (QCL) files
+     * @throws QCWException if an I/O error occurs, the file is malformed, or
+     *      a rename would require a merge
+     */
+    public void rewrite(
+        final File in,
+        final File out,
+        final boolean workspaceContext)
+    {
+        try
+        {
+            // Don't keep a mapping of the file being replaced
+            final ByteBuffer input = in.getAbsoluteFile().equals(
+                out.getAbsoluteFile()) ? QUtils.read(in) : QUtils.map(in);
+            QUtils.writeFully(out, rewrite(input, workspaceContext));
+        }
+        catch (final IOException e)
+        {
+            throw new QCWException("I/O error detected while rewriting file: "
+                + e.getMessage());
+        }
+    }
+
+    /**
+     * Rewrites the specified file contents. The buffer must be positioned at
+     * the start of the file; its position is not changed.
+     * 
+     * @param file the contents of the file
+     * @param workspaceContext true for workspace (QCW) files, false for
+     *      layout (QCL) files
+     * @return a flipped, little endian buffer holding the rewritten file
+     * @throws QCWException if the file is malformed or a rename would require
+     *      a merge
+     */
+    public ByteBuffer rewrite(final ByteBuffer file, final boolean workspaceContext)
+    {
+        input = file.duplicate();
+        output = QUtils.allocate(input.remaining() + 1024);
+        mark = input.position();
+        renameCount = 0;
+        open.clear();
+
+        try
+        {
+            final RecordCursor cursor = new RecordCursor(file, workspaceContext);
+            while (cursor.next())
+            {
+                close(cursor.getDepth());
+
+                switch (cursor.getKind())
+                {
+                case SectionContainer:
+                case BarChartWrapper:
+                case BarChart:
+                    open.add(new OpenRecord(cursor));
+                    break;
+
+                case StudyLineGroup:
+                    open.add(new OpenRecord(cursor));
+                    checkConflicts(cursor);
+                    break;
+
+                case SymbolEntry:
+                    renameSymbol(cursor);
+                    cursor.skip();
+                    break;
+
+                default:
+                    cursor.skip();
+                    break;
+                }
+            }
+            close(0);
+
+            copyTo(input.limit());
+            output.flip();
+            return output;
+        }
+        finally
+        {
+            input = null;
+            output = null;
+        }
+    }
+
+    /**
+     * Patches the lengths of the open records at or below the specified
+     * depth, which have been fully copied.
+     */
+    private void close(final int depth)
+    {
+        while (!open.isEmpty() && open.get(open.size() - 1).depth >= depth)
+        {
+            final OpenRecord record = open.remove(open.size() - 1);
+            if (record.delta != 0)
+            {
+                output.putInt(record.lengthOffset, record.bodySize
+                    + record.delta);
+            }
+        }
+    }
+
+    private void renameSymbol(final RecordCursor cursor)
+    {
+        final ByteBuffer body = cursor.getBody();
+        final QString name = new QString();
+        name.parse(body);
+
+        final String newName = renames.get(name.getValue());
+        if (newName == null)
+        {
+            return;
+        }
+
+        // Copy everything up to and including the record header, then the
+        // new name and the rest of the body
+        final int bodyOffset = cursor.getBodyOffset();
+        copyTo(bodyOffset);
+        final int lengthOffset = output.position() - 4;
+
+        final QString encoded = new QString(newName);
+        ensureRemaining(encoded.getSize());
+        encoded.write(output);
+
+        final int delta = encoded.getSize() - name.getSize();
+        mark = bodyOffset + name.getSize();
+        copyTo(cursor.getOffset() + cursor.getSize());
+
+        output.putInt(lengthOffset, body.limit() + delta);
+        for (final OpenRecord record : open)
+        {
+            record.delta += delta;
+        }
+        ++renameCount;
+    }
+
+    /**
+     * Throws if renaming the symbols of the current line group would give two
+     * of them the same name.
+     */
+    private void checkConflicts(final RecordCursor cursor)
+    {
+        final ByteBuffer body = cursor.getBody();
+        final int numSyms = QUtils.readQDword(body);
+        final List<String> names = new ArrayList<String>(numSyms);
+        for (int i = 0; i < numSyms; ++i)
+        {
+            final int size = QUtils.readRecordHeader(body);
+            final int end = body.position() + size;
+            final QString name = new QString();
+            name.parse(body);
+            names.add(name.getValue());
+            body.position(end);
+        }
+
+        final Set<String> seen = new HashSet<String>();
+        for (final String name : names)
+        {
+            final String newName = renames.get(name);
+            final String result = (newName == null) ? name : newName;
+            if (!seen.add(result))
+            {
+                throw new QCWException("Cannot rename to " + result
+                    + ": symbol already has lines in the same pane");
+            }
+        }
+    }
+
+    /**
+     * Copies the input from the mark up to the specified offset.
+     */
+    private void copyTo(final int offset)
+    {
+        final int length = offset - mark;
+        ensureRemaining(length);
+        final ByteBuffer range = input.duplicate();
+        range.limit(offset);
+        range.position(mark);
+        output.put(range);
+        mark = offset;
+    }
+
+    private void ensureRemaining(final int length)
+    {
+        if (output.remaining() < length)
+        {
+            final ByteBuffer larger = QUtils.allocate(Math.max(output
+                .capacity() * 2, output.position() + length));
+            output.flip();
+            larger.put(output);
+            output = larger;
+        }
+    }
+
+    /**
+     * A record which encloses records that may change size.
+     */
+    private final class OpenRecord
+    {
+        final int depth;
+        final int lengthOffset;
+        final int bodySize;
+        int delta;
+
+        OpenRecord(final RecordCursor cursor)
+        {
+            this.depth = cursor.getDepth();
+            this.bodySize = cursor.getOffset() + cursor.getSize()
+                - cursor.getBodyOffset();
+
+            // The input has been copied up to the mark, so the output offset
+            // of any later input offset is shifted by the same amount
+            this.lengthOffset = cursor.getBodyOffset() - 4 + output.position()
+                - mark;
+        }
+    }
+}
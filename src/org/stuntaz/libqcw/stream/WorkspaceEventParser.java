@@ -0,0 +1,320 @@
+/*
+ * libqcw - A library for parsing, manipulating, and writing QCharts (TM) 
+ * workspace files.
+ *
+ * Copyright (C) 2008-2009 Jon Nall
+ * QCharts is a registered service mark of eSignal, Inc.
+ * RagingBull is a registered service mark of eSignal, Inc.
+ *
+ * Licensed under the Open Software License version 3.0 (the "License"); you
+ * may not use this file except in compliance with the License. You should
+ * have received a copy of the License along with this software; if not, you
+ * may obtain a copy of the License at
+ *
+ * http://opensource.org/licenses/osl-3.0.php
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package org.stuntaz.libqcw.stream;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.stuntaz.libqcw.QCWException;
+import org.stuntaz.libqcw.blobs.QUtils;
+import org.stuntaz.libqcw.defines.QLineType;
+import org.stuntaz.libqcw.defines.QWorkspaceSection;
+
+/**
+ * An event-driven parser for workspace (QCW) and layout (QCL) files. It walks
+ * the same grammar as {@link org.stuntaz.libqcw.blobs.files.WorkspaceFileBlob}
+ * and {@link org.stuntaz.libqcw.blobs.files.LayoutFileBlob} but creates no
+ * blob objects: the values of interest are passed to an
+ * {@link IWorkspaceHandler} as they are found and everything else is skipped
+ * using the record lengths. This makes scanning large files (e.g. to list the
+ * symbols with lines drawn on them) much cheaper than building the tree.
+ * 
+ * @author nall
+ *
+ */
+public final class WorkspaceEventParser
+{
+    private final IWorkspaceHandler handler;
+
+    /**
+     * Creates a new WorkspaceEventParser.
+     * 
+     * @param handler the handler which will receive the events
+     */
+    public WorkspaceEventParser(final IWorkspaceHandler handler)
+    {
+        this.handler = handler;
+    }
+
+    /**
+     * Parses the specified workspace file.
+     * 
+     * @param file the workspace file to parse
+     * @throws QCWException if the file cannot be read or is malformed
+     */
+    public void parseWorkspace(final File file)
+    {
+        parseWorkspace(map(file));
+    }
+
+    /**
+     * Parses a workspace from the specified buffer, which must be positioned
+     * at the start of the file.
+     * 
+     * @param buffer the buffer from which to read
+     * @throws QCWException if the workspace is malformed
+     */
+    public void parseWorkspace(final ByteBuffer buffer)
+    {
+        final ByteBuffer input = buffer.order(ByteOrder.LITTLE_ENDIAN);
+        try
+        {
+            readMagic(input);
+            readWorkspace(input);
+        }
+        catch (final BufferUnderflowException e)
+        {
+            throw new QCWException("Unexpected end of file at offset 0x"
+                + Integer.toHexString(input.position()));
+        }
+    }
+
+    /**
+     * Parses the specified layout file.
+     * 
+     * @param file the layout file to parse
+     * @throws QCWException if the file cannot be read or is malformed
+     */
+    public void parseLayout(final File file)
+    {
+        parseLayout(map(file));
+    }
+
+    /**
+     * Parses a layout from the specified buffer, which must be positioned at
+     * the start of the file.
+     * 
+     * @param buffer the buffer from which to read
+     * @throws QCWException if the layout is malformed
+     */
+    public void parseLayout(final ByteBuffer buffer)
+    {
+        final ByteBuffer input = buffer.order(ByteOrder.LITTLE_ENDIAN);
+        try
+        {
+            readMagic(input);
+            readChartWrapper(input, false);
+        }
+        catch (final BufferUnderflowException e)
+        {
+            throw new QCWException("Unexpected end of file at offset 0x"
+                + Integer.toHexString(input.position()));
+        }
+    }
+
+    private static ByteBuffer map(final File file)
+    {
+        try
+        {
+            return QUtils.map(file);
+        }
+        catch (final IOException e)
+        {
+            throw new QCWException("I/O error detected while reading file: "
+                + e.getMessage());
+        }
+    }
+
+    private static void readMagic(final ByteBuffer buffer)
+    {
+        final int magic = QUtils.readWord(buffer);
+        if (magic != 0x0001)
+        {
+            throw new QCWException("Unexpected magic number in header: "
+                + magic);
+        }
+    }
+
+    private void readWorkspace(final ByteBuffer buffer)
+    {
+        // Section count
+        QUtils.readRecordHeader(buffer);
+        final int numSections = QUtils.readQWord(buffer);
+
+        // Section headers give the type of each section
+        final int[] types = new int[numSections];
+        QUtils.readRecordHeader(buffer);
+        for (int i = 0; i < numSections; ++i)
+        {
+            final int end = recordEnd(buffer);
+            types[i] = QUtils.readQWord(buffer);
+            buffer.position(end);
+        }
+
+        QUtils.readRecordHeader(buffer);
+        for (final int type : types)
+        {
+            final int start = buffer.position();
+            QUtils.skipSection(buffer, type);
+            final int end = buffer.position();
+
+            handler.onSection(QWorkspaceSection.find(type), end - start);
+            if (type == QWorkspaceSection.BarChart.getValue())
+            {
+                buffer.position(start);
+                QUtils.skipRecord(buffer);
+                readChartWrapper(buffer, true);
+            }
+            buffer.position(end);
+        }
+    }
+
+    private void readChartWrapper(
+        final ByteBuffer buffer,
+        final boolean workspaceContext)
+    {
+        final int wrapperEnd = recordEnd(buffer);
+        final int chartEnd = recordEnd(buffer);
+
+        // Magic
+        QUtils.readQWord(buffer);
+
+        final String title = workspaceContext ? QUtils.readQString(buffer,
+            true) : null;
+        handler.onChart(title);
+
+        // Font
+        QUtils.readQByteBufferView(buffer);
+
+        // unknown1-3, chart type, unknown4-11
+        skipQDwords(buffer, 3);
+        QUtils.readQWord(buffer);
+        skipQDwords(buffer, 8);
+
+        final int numStudies = QUtils.readQDword(buffer);
+
+        // unknown12
+        QUtils.readQDword(buffer);
+
+        for (int i = 0; i < numStudies; ++i)
+        {
+            // Layout and header
+            QUtils.skipRecord(buffer);
+            QUtils.skipRecord(buffer);
+
+            if (i != 0)
+            {
+                // Terminator
+                QUtils.readQDword(buffer);
+            }
+
+            readLineGroup(buffer);
+
+            if ((i + 1) < numStudies)
+            {
+                // Terminator
+                QUtils.readQDword(buffer);
+            }
+        }
+
+        // Nothing else in the chart or wrapper produces events
+        buffer.position(chartEnd);
+        buffer.position(wrapperEnd);
+        handler.endChart();
+    }
+
+    private void readLineGroup(final ByteBuffer buffer)
+    {
+        final int end = recordEnd(buffer);
+        final int numSyms = QUtils.readQDword(buffer);
+
+        for (int i = 0; i < numSyms; ++i)
+        {
+            readSymbol(buffer);
+        }
+        buffer.position(end);
+    }
+
+    private void readSymbol(final ByteBuffer buffer)
+    {
+        final int end = recordEnd(buffer);
+        handler.onSymbol(QUtils.readQString(buffer));
+
+        final int numLines = QUtils.readQDword(buffer);
+        for (int i = 0; i < numLines; ++i)
+        {
+            final QLineType type = QLineType.find(QUtils.readQDword(buffer));
+
+            if (type == QLineType.BasicLine || type == QLineType.Note)
+            {
+                readLine(buffer, type);
+            }
+            else
+            {
+                handler.onUnsupportedLine(type);
+                QUtils.skipRecord(buffer);
+            }
+        }
+
+        // Skip the terminator
+        buffer.position(end);
+    }
+
+    private void readLine(final ByteBuffer buffer, final QLineType type)
+    {
+        final int end = recordEnd(buffer);
+
+        if (type == QLineType.Note)
+        {
+            // Font
+            QUtils.readQByteBufferView(buffer);
+            handler.onNote(QUtils.readQString(buffer));
+        }
+
+        // unknown2, unknown3
+        skipQDwords(buffer, 2);
+
+        // Basic line: subtype, options, width and RGB precede the points
+        QUtils.readRecordHeader(buffer);
+        skipQDwords(buffer, 4);
+
+        final long time1 = QUtils.readQDword(buffer) & 0xFFFFFFFFL;
+        final double price1 = Double.longBitsToDouble(QUtils
+            .readQQword(buffer));
+        final long time2 = QUtils.readQDword(buffer) & 0xFFFFFFFFL;
+        final double price2 = Double.longBitsToDouble(QUtils
+            .readQQword(buffer));
+        handler.onLine(type, time1, price1, time2, price2);
+
+        buffer.position(end);
+    }
+
+    /**
+     * Reads the header of the record at the current position and returns the
+     * offset just past its end.
+     */
+    private static int recordEnd(final ByteBuffer buffer)
+    {
+        final int size = QUtils.readRecordHeader(buffer);
+        return buffer.position() + size;
+    }
+
+    private static void skipQDwords(final ByteBuffer buffer, final int count)
+    {
+        for (int i = 0; i < count; ++i)
+        {
+            QUtils.readQDword(buffer);
+        }
+    }
+}
@@ -0,0 +1,417 @@
+/*
+ * libqcw - A library for parsing, manipulating, and writing QCharts (TM) 
+ * workspace files.
+ *
+ * Copyright (C) 2008-2009 Jon Nall
+ * QCharts is a registered service mark of eSignal, Inc.
+ * RagingBull is a registered service mark of eSignal, Inc.
+ *
+ * Licensed under the Open Software License version 3.0 (the "License"); you
+ * may not use this file except in compliance with the License. You should
+ * have received a copy of the License along with this software; if not, you
+ * may obtain a copy of the License at
+ *
+ * http://opensource.org/licenses/osl-3.0.php
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package org.stuntaz.libqcw.tools;
+
+import java.io.File;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.stuntaz.libqcw.blobs.QDword;
+import org.stuntaz.libqcw.blobs.QString;
+import org.stuntaz.libqcw.blobs.QUtils;
+import org.stuntaz.libqcw.blobs.barchart.BarChartBlob;
+import org.stuntaz.libqcw.blobs.barchart.StudyLineGroupBlob;
+import org.stuntaz.libqcw.blobs.barchart.SymbolEntryBlob;
+import org.stuntaz.libqcw.blobs.files.WorkspaceFileBlob;
+import org.stuntaz.libqcw.blobs.workspace.WorkspaceBlob;
+
+/**
+ * Micro benchmarks for the parser and writer. Each benchmark is run for a
+ * warmup period and then measured for the same period, and the tool prints
+ * its throughput, the time per operation, the bytes allocated per operation
+ * and the number of garbage collections while it was measured. Allocation
+ * is only reported on JVMs which can measure it per thread.
+ * 
+ * The benchmarks cover primitive reads and writes, {@link QString} parsing,
+ * the parsing and writing of the largest {@link SymbolEntryBlob} and
+ * {@link BarChartBlob} of the first workspace, {@link WorkspaceBlob#getSize()}
+ * with and without a cached size, and a full parse and write of each
+ * workspace.
+ * 
+ * @author nall
+ *
+ */
+public final class BenchmarkTool
+{
+    private static final int PRIMITIVE_COUNT = 4096;
+
+    // Results are added here so the JIT can't discard the benchmarked code
+    private static volatile long sink;
+
+    /**
+     * @param args command line arguments: {@code [-time <ms>]} followed by
+     *      the workspace files to use
+     */
+    public static void main(final String[] args)
+    {
+        long millis = 1000;
+        final List<File> files = new ArrayList<File>();
+        for (int i = 0; i < args.length; ++i)
+        {
+            if (args[i].equals("-time") && i + 1 < args.length)
+            {
+                millis = Long.parseLong(args[++i]);
+            }
+            else
+            {
+                files.add(new File(args[i]));
+            }
+        }
+
+        if (files.isEmpty())
+        {
+            System.err.println("usage: BenchmarkTool [-time <ms>] "
+                + "<input_qcw>...");
+            System.exit(1);
+        }
+
+        final List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+        addPrimitiveBenchmarks(benchmarks);
+        addBlobBenchmarks(benchmarks, files.get(0));
+        for (final File file : files)
+        {
+            addWorkspaceBenchmarks(benchmarks, file);
+        }
+
+        System.out.println(String.format("%-40s %14s %12s %12s %6s",
+            "Benchmark", "ops/s", "ns/op", "B/op", "GCs"));
+        for (final Benchmark benchmark : benchmarks)
+        {
+            benchmark.measure(millis * 1000000L);
+        }
+    }
+
+    private static void addPrimitiveBenchmarks(final List<Benchmark> benchmarks)
+    {
+        final ByteBuffer dwords = QUtils.allocate(PRIMITIVE_COUNT
+            * QUtils.getSize(QDword.class));
+        final ByteBuffer strings = QUtils.allocate(PRIMITIVE_COUNT
+            * QUtils.getQStringSize("SYM" + PRIMITIVE_COUNT));
+        for (int i = 0; i < PRIMITIVE_COUNT; ++i)
+        {
+            QUtils.writeQDword(i, dwords);
+            QUtils.writeQString("SYM" + i, strings);
+        }
+        strings.flip();
+
+        benchmarks.add(new Benchmark("QUtils.readQDword x" + PRIMITIVE_COUNT)
+        {
+            @Override
+            long run()
+            {
+                final ByteBuffer buffer = dwords.duplicate().order(
+                    dwords.order());
+                buffer.clear();
+                long sum = 0;
+                for (int i = 0; i < PRIMITIVE_COUNT; ++i)
+                {
+                    sum += QUtils.readQDword(buffer);
+                }
+                return sum;
+            }
+        });
+
+        benchmarks.add(new Benchmark("QUtils.writeQDword x" + PRIMITIVE_COUNT)
+        {
+            @Override
+            long run()
+            {
+                final ByteBuffer buffer = dwords.duplicate().order(
+                    dwords.order());
+                buffer.clear();
+                for (int i = 0; i < PRIMITIVE_COUNT; ++i)
+                {
+                    QUtils.writeQDword(i, buffer);
+                }
+                return buffer.position();
+            }
+        });
+
+        benchmarks.add(new Benchmark("QString.parse x" + PRIMITIVE_COUNT)
+        {
+            @Override
+            long run()
+            {
+                final ByteBuffer buffer = strings.duplicate().order(
+                    strings.order());
+                long sum = 0;
+                for (int i = 0; i < PRIMITIVE_COUNT; ++i)
+                {
+                    final QString string = new QString();
+                    string.parse(buffer);
+                    sum += string.getValue().length();
+                }
+                return sum;
+            }
+        });
+    }
+
+    private static void addBlobBenchmarks(
+        final List<Benchmark> benchmarks,
+        final File file)
+    {
+        final WorkspaceBlob workspace = parse(file).getWorkspace();
+
+        // Use the largest symbol and chart, as they exercise the most code
+        SymbolEntryBlob symbol = null;
+        BarChartBlob chart = null;
+        for (final BarChartBlob c : workspace.getCharts())
+        {
+            if (chart == null || c.getSize() > chart.getSize())
+            {
+                chart = c;
+            }
+            for (final StudyLineGroupBlob group : c.getStudyLines())
+            {
+                for (final SymbolEntryBlob s : group.getSymbols())
+                {
+                    if (symbol == null || s.getSize() > symbol.getSize())
+                    {
+                        symbol = s;
+                    }
+                }
+            }
+        }
+
+        if (symbol != null)
+        {
+            final SymbolEntryBlob blob = symbol;
+            final ByteBuffer bytes = QUtils.writeToBuffer(blob, blob.getSize());
+            benchmarks.add(new Benchmark("SymbolEntryBlob.parse ("
+                + bytes.limit() + " B)")
+            {
+                @Override
+                long run()
+                {
+                    return new SymbolEntryBlob(bytes.duplicate().order(
+                        bytes.order())).getLineHeaders().size();
+                }
+            });
+            benchmarks.add(new Benchmark("SymbolEntryBlob.write ("
+                + bytes.limit() + " B)")
+            {
+                @Override
+                long run()
+                {
+                    final ByteBuffer buffer = QUtils.allocate(bytes.limit());
+                    blob.write(buffer);
+                    return buffer.position();
+                }
+            });
+        }
+
+        if (chart != null)
+        {
+            final BarChartBlob blob = chart;
+            final ByteBuffer bytes = QUtils.writeToBuffer(blob, blob.getSize());
+            benchmarks.add(new Benchmark("BarChartBlob.parse (" + bytes.limit()
+                + " B)")
+            {
+                @Override
+                long run()
+                {
+                    final BarChartBlob parsed = new BarChartBlob(true);
+                    parsed.parse(bytes.duplicate().order(bytes.order()));
+                    return parsed.getStudyLines().size();
+                }
+            });
+            benchmarks.add(new Benchmark("BarChartBlob.write (" + bytes.limit()
+                + " B)")
+            {
+                @Override
+                long run()
+                {
+                    final ByteBuffer buffer = QUtils.allocate(bytes.limit());
+                    blob.write(buffer);
+                    return buffer.position();
+                }
+            });
+        }
+
+        benchmarks.add(new Benchmark("WorkspaceBlob.getSize (cached)")
+        {
+            @Override
+            long run()
+            {
+                return workspace.getSize();
+            }
+        });
+
+        if (symbol != null)
+        {
+            // Renaming changes the size, which invalidates every ancestor
+            final SymbolEntryBlob blob = symbol;
+            final String name = blob.getSymbolName();
+            benchmarks.add(new Benchmark("WorkspaceBlob.getSize (renamed)")
+            {
+                private boolean renamed = false;
+
+                @Override
+                long run()
+                {
+                    renamed = !renamed;
+                    blob.setSymbolName(renamed ? name + "_" : name);
+                    return workspace.getSize();
+                }
+            });
+        }
+    }
+
+    private static void addWorkspaceBenchmarks(
+        final List<Benchmark> benchmarks,
+        final File file)
+    {
+        final ByteBuffer bytes = QUtils.writeToBuffer(parse(file)
+            .getWorkspace(), (int) file.length());
+        final String size = (file.length() / 1024) + " KB";
+
+        benchmarks.add(new Benchmark("WorkspaceBlob.parse (" + size + ")")
+        {
+            @Override
+            long run()
+            {
+                return parseWorkspace(bytes).getSize();
+            }
+        });
+
+        final WorkspaceBlob workspace = parseWorkspace(bytes);
+        benchmarks.add(new Benchmark("WorkspaceBlob.write (" + size + ")")
+        {
+            @Override
+            long run()
+            {
+                final ByteBuffer buffer = QUtils.allocate(bytes.limit());
+                workspace.write(buffer);
+                return buffer.position();
+            }
+        });
+
+        benchmarks.add(new Benchmark("Round trip (" + size + ")")
+        {
+            @Override
+            long run()
+            {
+                final ByteBuffer buffer = QUtils.allocate(bytes.limit());
+                parseWorkspace(bytes).write(buffer);
+                return buffer.position();
+            }
+        });
+    }
+
+    private static WorkspaceFileBlob parse(final File file)
+    {
+        final WorkspaceFileBlob qcw = new WorkspaceFileBlob();
+        qcw.parse(file);
+        return qcw;
+    }
+
+    private static WorkspaceBlob parseWorkspace(final ByteBuffer bytes)
+    {
+        final WorkspaceBlob workspace = new WorkspaceBlob();
+        workspace.parse(bytes.duplicate().order(bytes.order()));
+        return workspace;
+    }
+
+    /**
+     * A single benchmark. {@link #run()} performs one operation and returns
+     * a value derived from its result.
+     */
+    private abstract static class Benchmark
+    {
+        private final String name;
+
+        Benchmark(final String name)
+        {
+            this.name = name;
+        }
+
+        abstract long run();
+
+        void measure(final long nanos)
+        {
+            // Warm up for as long as we measure
+            long end = System.nanoTime() + nanos;
+            while (System.nanoTime() < end)
+            {
+                sink += run();
+            }
+
+            final long gcs = getCollectionCount();
+            final long allocated = getAllocatedBytes();
+            long ops = 0;
+            final long start = System.nanoTime();
+            end = start + nanos;
+            long now;
+            do
+            {
+                sink += run();
+                ++ops;
+                now = System.nanoTime();
+            }
+            while (now < end);
+            final long elapsed = now - start;
+
+            final String bytesPerOp = (allocated < 0) ? "n/a" : String
+                .valueOf((getAllocatedBytes() - allocated) / ops);
+            System.out.println(String.format("%-40s %14.1f %12.1f %12s %6d",
+                name, ops * 1e9 / elapsed, (double) elapsed / ops,
+                bytesPerOp, getCollectionCount() - gcs));
+        }
+    }
+
+    private static long getCollectionCount()
+    {
+        long count = 0;
+        for (final GarbageCollectorMXBean gc : ManagementFactory
+            .getGarbageCollectorMXBeans())
+        {
+            count += Math.max(gc.getCollectionCount(), 0);
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of bytes allocated by the current thread so far, or
+     * -1 if the JVM can't tell. This uses a HotSpot extension, so it is
+     * looked up reflectively.
+     */
+    private static long getAllocatedBytes()
+    {
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        try
+        {
+            final Method method = Class.forName(
+                "com.sun.management.ThreadMXBean").getMethod(
+                "getThreadAllocatedBytes", long.class);
+            return ((Long) method.invoke(threads, Long.valueOf(Thread
+                .currentThread().getId()))).longValue();
+        }
+        catch (final Exception e)
+        {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * libqcw - A library for parsing, manipulating, and writing QCharts (TM) 
+ * workspace files.
+ *
+ * Copyright (C) 2008-2009 Jon Nall
+ * QCharts is a registered service mark of eSignal, Inc.
+ * RagingBull is a registered service mark of eSignal, Inc.
+ *
+ * Licensed under the Open Software License version 3.0 (the "License"); you
+ * may not use this file except in compliance with the License. You should
+ * have received a copy of the License along with this software; if not, you
+ * may obtain a copy of the License at
+ *
+ * http://opensource.org/licenses/osl-3.0.php
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package org.stuntaz.libqcw.tools;
+
+import java.io.File;
+import java.util.List;
+
+import org.stuntaz.libqcw.blobs.files.WorkspaceFileBlob;
+import org.stuntaz.libqcw.diff.Change;
+import org.stuntaz.libqcw.diff.WorkspaceDiff;
+
+/**
+ * Tool to list the differences between two workspace files.
+ * 
+ * @author nall
+ *
+ */
+public final class DiffTool
+{
+    /**
+     * @param args command line arguments. arg[0] is the old workspace and
+     *      arg[1] the new one
+     */
+    public static void main(final String[] args)
+    {
+        if (args.length != 2)
+        {
+            System.err.println("usage: DiffTool <old_qcw> <new_qcw>");
+            System.exit(1);
+        }
+
+        final WorkspaceFileBlob oldQcw = new WorkspaceFileBlob();
+        oldQcw.parse(new File(args[0]));
+        final WorkspaceFileBlob newQcw = new WorkspaceFileBlob();
+        newQcw.parse(new File(args[1]));
+
+        final long start = System.nanoTime();
+        final List<Change> changes = WorkspaceDiff.diff(oldQcw.getWorkspace(),
+            newQcw.getWorkspace());
+        final double millis = (System.nanoTime() - start) / 1e6;
+
+        for (final Change change : changes)
+        {
+            System.out.println(change);
+        }
+        System.out.println(String.format("%d changes in %.1f ms", changes
+            .size(), millis));
+
+        System.exit(changes.isEmpty() ? 0 : 1);
+    }
+}
@@ -20,23 +20,40 @@
 
 package org.stuntaz.libqcw.tools;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
 
 import org.stuntaz.libqcw.BasicQCWVisitor;
-import org.stuntaz.libqcw.QOptions;
+import org.stuntaz.libqcw.blobs.QUtils;
 import org.stuntaz.libqcw.blobs.barchart.BarChartBlob;
 import org.stuntaz.libqcw.blobs.barchart.IStudyBlob;
 import org.stuntaz.libqcw.blobs.barchart.LineHeaderBlob;
 import org.stuntaz.libqcw.blobs.barchart.StudyHeaderBlob;
 import org.stuntaz.libqcw.blobs.barchart.SymbolEntryBlob;
+import org.stuntaz.libqcw.blobs.files.LayoutFileBlob;
 import org.stuntaz.libqcw.blobs.files.WorkspaceFileBlob;
+import org.stuntaz.libqcw.stream.RoundTripVerifier;
 
 /**
  * Basic tool to parse QCW files and dump all lines.
+ * 
+ * In batch mode ({@code -batch}) the tool instead parses every QCW/QCL file
+ * found in the specified files, directories (searched recursively) and
+ * wildcard patterns (e.g. {@code users/*.qcw}) in parallel. With
+ * {@code -roundtrip} each file is also written back and compared with the
+ * original by a {@link RoundTripVerifier}, which reports the first differing
+ * offset and the records enclosing it. The status of each file is printed, followed by the
+ * aggregate throughput.
+ * 
  * @author nall
  *
  */
@@ -45,84 +62,289 @@ public final class ParseTool
 {
 
     /**
-     * @param args command line arguments. arg[0] should be the filename to parse
+     * @param args command line arguments. arg[0] should be the filename to
+     *      parse, or -batch to parse many files
      */
     public static void main(final String[] args)
     {
-        try
+        if (args.length > 0 && args[0].equals("-batch"))
         {
-            QOptions.WORKSPACE_CONTEXT = true;
+            System.exit(batch(args) ? 0 : 1);
+        }
 
-            if (args.length < 1 || args.length > 2)
-            {
-                System.err
-                    .println("usage: ParseTool <input_qcw> [<output_qcw>]");
-                System.exit(1);
-            }
+        if (args.length < 1 || args.length > 2)
+        {
+            System.err
+                .println("usage: ParseTool <input_qcw> [<output_qcw>]");
+            System.err.println("       ParseTool -batch [-roundtrip] "
+                + "[-threads <n>] <file|dir|pattern>...");
+            System.exit(1);
+        }
 
-            final String fInName = args[0];
-            final String fOutName = args.length == 2 ? args[1] : null;
+        final String fInName = args[0];
+        final String fOutName = args.length == 2 ? args[1] : null;
 
-            // This is how to read a workspace file
-            final BufferedInputStream iStream = new BufferedInputStream(
-                new FileInputStream(fInName));
+        // This is how to read a workspace file
+        final WorkspaceFileBlob qcw = new WorkspaceFileBlob();
 
-            final WorkspaceFileBlob qcw = new WorkspaceFileBlob();
+        qcw.parse(new File(fInName));
 
-            qcw.parse(iStream);
+        // This is how to write out a workspace
+        if (fOutName != null)
+        {
+            qcw.write(new File(fOutName));
+        }
 
-            // This is how to write out a workspace
-            if (fOutName != null)
+        // This is how to iterate over studies and lines in a chart
+        // This is done in an anonymous class below. More useful implementations
+        // might use a named class to avoid all of the code sitting
+        // in the middle of this function, cluttering things.
+        new BasicQCWVisitor()
+        {
+            @Override
+            public void visit(final BarChartBlob chart)
             {
-                final BufferedOutputStream oStream = new BufferedOutputStream(
-                    new FileOutputStream(fOutName));
-                qcw.write(oStream);
-                oStream.close();
+                System.out.println("Chart [" + chart.getChartTitleSymbol()
+                    + "] [" + chart.getChartTimePeriod() + "]");
+                super.visit(chart);
             }
 
-            // This is how to iterate over studies and lines in a chart
-            // This is done in an anonymous class below. More useful implementations
-            // might use a named class to avoid all of the code sitting
-            // in the middle of this function, cluttering things.
-            new BasicQCWVisitor()
+            @Override
+            public void visit(final StudyHeaderBlob studyHeader)
             {
-                @Override
-                public void visit(final BarChartBlob chart)
+                for (final IStudyBlob study : studyHeader.getStudies())
                 {
-                    System.out.println("Chart [" + chart.getChartTitleSymbol()
-                        + "] [" + chart.getChartTimePeriod() + "]");
-                    super.visit(chart);
+                    System.out.println("Study: " + study.getStudyType());
                 }
+                super.visit(studyHeader);
+            }
+
+            @Override
+            public void visit(final SymbolEntryBlob symbol)
+            {
+                System.out.println(symbol.getSymbolName() + " lines:");
+                super.visit(symbol);
+            }
+
+            @Override
+            public void visit(final LineHeaderBlob line)
+            {
+                System.out.println("\t" + line);
+                super.visit(line);
+            }
+
+        }.visit(qcw.getWorkspace());
+    }
+
+    /**
+     * Runs batch mode.
+     * 
+     * @return true if every file was processed successfully
+     */
+    private static boolean batch(final String[] args)
+    {
+        boolean roundTrip = false;
+        int threads = Runtime.getRuntime().availableProcessors();
+        final List<File> files = new ArrayList<File>();
 
-                @Override
-                public void visit(final StudyHeaderBlob studyHeader)
+        for (int i = 1; i < args.length; ++i)
+        {
+            if (args[i].equals("-roundtrip"))
+            {
+                roundTrip = true;
+            }
+            else if (args[i].equals("-threads") && i + 1 < args.length)
+            {
+                threads = Integer.parseInt(args[++i]);
+            }
+            else
+            {
+                addFiles(args[i], files);
+            }
+        }
+
+        if (files.isEmpty())
+        {
+            System.err.println("No QCW/QCL files found");
+            return false;
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final long start = System.nanoTime();
+        final List<Future<String>> results = new ArrayList<Future<String>>(
+            files.size());
+        for (final File file : files)
+        {
+            results.add(executor.submit(new BatchTask(file, roundTrip)));
+        }
+        executor.shutdown();
+
+        // Report in the order files were found
+        long totalBytes = 0;
+        int failures = 0;
+        for (int i = 0; i < files.size(); ++i)
+        {
+            String error;
+            try
+            {
+                error = results.get(i).get();
+            }
+            catch (final ExecutionException e)
+            {
+                error = e.getCause().toString();
+            }
+            catch (final InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                error = "interrupted";
+            }
+
+            totalBytes += files.get(i).length();
+            if (error == null)
+            {
+                System.out.println("OK     " + files.get(i));
+            }
+            else
+            {
+                System.out.println("FAILED " + files.get(i) + ": " + error);
+                ++failures;
+            }
+        }
+
+        final double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format(
+            "%d files (%d failed), %.1f MB in %.2f s: %.1f files/s, %.1f MB/s",
+            files.size(), failures, totalBytes / 1e6, seconds, files.size()
+                / seconds, totalBytes / 1e6 / seconds));
+
+        return failures == 0;
+    }
+
+    /**
+     * Adds the QCW/QCL files named by the specified argument, which may be a
+     * file, a directory, or a pattern whose last component contains wildcards.
+     */
+    private static void addFiles(final String arg, final List<File> files)
+    {
+        final File file = new File(arg);
+        if (file.isDirectory())
+        {
+            addDirectory(file, files);
+        }
+        else if (file.exists())
+        {
+            files.add(file);
+        }
+        else if (file.getName().indexOf('*') >= 0
+            || file.getName().indexOf('?') >= 0)
+        {
+            final File dir = file.getParentFile() == null ? new File(".")
+                : file.getParentFile();
+            final Pattern pattern = globToPattern(file.getName());
+            final File[] children = dir.listFiles();
+            if (children != null)
+            {
+                for (final File child : children)
                 {
-                    for (final IStudyBlob study : studyHeader.getStudies())
+                    if (child.isFile()
+                        && pattern.matcher(child.getName()).matches())
                     {
-                        System.out.println("Study: " + study.getStudyType());
+                        files.add(child);
                     }
-                    super.visit(studyHeader);
                 }
+            }
+        }
+        else
+        {
+            System.err.println("Skipping " + arg + ": no such file");
+        }
+    }
 
-                @Override
-                public void visit(final SymbolEntryBlob symbol)
-                {
-                    System.out.println(symbol.getSymbolName() + " lines:");
-                    super.visit(symbol);
-                }
+    private static void addDirectory(final File dir, final List<File> files)
+    {
+        final File[] children = dir.listFiles();
+        if (children == null) return;
 
-                @Override
-                public void visit(final LineHeaderBlob line)
-                {
-                    System.out.println("\t" + line);
-                    super.visit(line);
-                }
+        for (final File child : children)
+        {
+            if (child.isDirectory())
+            {
+                addDirectory(child, files);
+            }
+            else if (isWorkspace(child) || isLayout(child))
+            {
+                files.add(child);
+            }
+        }
+    }
+
+    private static Pattern globToPattern(final String glob)
+    {
+        final StringBuilder regex = new StringBuilder();
+        for (final char c : glob.toCharArray())
+        {
+            if (c == '*')
+            {
+                regex.append(".*");
+            }
+            else if (c == '?')
+            {
+                regex.append('.');
+            }
+            else
+            {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE);
+    }
+
+    private static boolean isWorkspace(final File file)
+    {
+        return file.getName().toLowerCase().endsWith(".qcw");
+    }
+
+    private static boolean isLayout(final File file)
+    {
+        return file.getName().toLowerCase().endsWith(".qcl");
+    }
 
-            }.visit(qcw.getWorkspace());
+    /**
+     * Parses, and optionally round trips, a single file. The result is null
+     * on success or a description of the failure.
+     */
+    private static final class BatchTask
+        implements Callable<String>
+    {
+        private final File file;
+        private final boolean roundTrip;
+
+        BatchTask(final File file, final boolean roundTrip)
+        {
+            this.file = file;
+            this.roundTrip = roundTrip;
         }
-        catch (final IOException e)
+
+        public String call()
+            throws IOException
         {
-            throw new RuntimeException(e);
+            if (roundTrip)
+            {
+                final RoundTripVerifier.Result result = RoundTripVerifier
+                    .verify(file);
+                return result.isIdentical() ? null : result.toString();
+            }
+
+            final ByteBuffer original = QUtils.map(file);
+            if (isLayout(file))
+            {
+                new LayoutFileBlob().parse(original);
+            }
+            else
+            {
+                new WorkspaceFileBlob().parse(original);
+            }
+            return null;
         }
     }
 }
@@ -25,7 +25,6 @@ import org.eclipse.equinox.app.IApplicationContext;
 import org.eclipse.swt.widgets.Display;
 import org.eclipse.ui.IWorkbench;
 import org.eclipse.ui.PlatformUI;
-import org.stuntaz.libqcw.QOptions;
 
 /**
  * This class controls all aspects of the application's execution
@@ -36,8 +35,6 @@ public class Application
     public Object start(IApplicationContext context)
         throws Exception
     {
-        QOptions.WORKSPACE_CONTEXT = true;
-
         Display display = PlatformUI.createDisplay();
         try
         {
@@ -20,10 +20,7 @@
 
 package org.stuntaz.qcwtool.dialogs;
 
-import java.io.BufferedInputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -51,7 +48,6 @@ import org.eclipse.swt.widgets.Table;
 import org.eclipse.swt.widgets.TableColumn;
 import org.eclipse.swt.widgets.TableItem;
 import org.eclipse.swt.widgets.Text;
-import org.stuntaz.libqcw.QCWException;
 import org.stuntaz.libqcw.blobs.files.WorkspaceFileBlob;
 import org.stuntaz.libqcw.blobs.workspace.WorkspaceBlob;
 import org.stuntaz.libqcw.defines.QStudyType;
@@ -161,17 +157,10 @@ public final class MergeToolDialog
 
                 final WorkspaceFileBlob wfb = new WorkspaceFileBlob();
                 final File f = new File(fileName);
-                try
-                {
-                    wfb.parse(new BufferedInputStream(new FileInputStream(f)));
-                    srcWorkspace = wfb.getWorkspace();
+                wfb.parseCopy(f);
+                srcWorkspace = wfb.getWorkspace();
 
-                    srcFile.setText(f.getName());
-                }
-                catch (final FileNotFoundException fnfe)
-                {
-                    throw new QCWException(fnfe.getMessage());
-                }
+                srcFile.setText(f.getName());
             }
 
         });
@@ -210,17 +199,10 @@ public final class MergeToolDialog
 
                 final WorkspaceFileBlob wfb = new WorkspaceFileBlob();
                 final File f = new File(fileName);
-                try
-                {
-                    wfb.parse(new BufferedInputStream(new FileInputStream(f)));
-                    tgtWorkspace = wfb.getWorkspace();
+                wfb.parseCopy(f);
+                tgtWorkspace = wfb.getWorkspace();
 
-                    tgtFile.setText(f.getName());
-                }
-                catch (final FileNotFoundException fnfe)
-                {
-                    throw new QCWException(fnfe.getMessage());
-                }
+                tgtFile.setText(f.getName());
             }
 
         });
@@ -20,12 +20,12 @@
 
 package org.stuntaz.qcwtool.dialogs;
 
-import java.io.BufferedReader;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import org.eclipse.jface.dialogs.MessageDialog;
 import org.eclipse.jface.layout.TableColumnLayout;
@@ -49,6 +49,8 @@ import org.eclipse.swt.widgets.Table;
 import org.eclipse.swt.widgets.TableColumn;
 import org.eclipse.swt.widgets.TableItem;
 import org.eclipse.swt.widgets.Text;
+import org.stuntaz.libqcw.QCWException;
+import org.stuntaz.qcwtool.tools.ReplacementPlan;
 
 /**
  * Dialog for specifying symbol replacement.
@@ -274,25 +276,22 @@ public final class ReplaceDialog
                 final String fileName = fd.open();
                 try
                 {
-                    final BufferedReader input = new BufferedReader(
-                        new FileReader(fileName));
-                    String line;
-                    while ((line = input.readLine()) != null)
+                    final FileReader input = new FileReader(fileName);
+                    try
                     {
-                        final String[] kvpair = line.split("=");
-                        if (kvpair.length == 2)
+                        for (final Map.Entry<String, String> rule : ReplacementPlan
+                            .readRules(input).entrySet())
                         {
-                            kvpair[0] = kvpair[0].trim();
-                            kvpair[1] = kvpair[1].trim();
                             final TableItem item = new TableItem(symbolTable,
                                 SWT.NONE);
-                            item.setText(kvpair);
-                        }
-                        else
-                        {
-                            // Ignore invalid output
+                            item.setText(new String[] { rule.getKey(),
+                                rule.getValue() });
                         }
                     }
+                    finally
+                    {
+                        input.close();
+                    }
                 }
                 catch (final FileNotFoundException e1)
                 {
@@ -304,6 +303,11 @@ public final class ReplaceDialog
                     MessageDialog.openError(shell, "Error Reading File",
                         "Error reading mapping file: " + e2.getMessage());
                 }
+                catch (final QCWException e3)
+                {
+                    MessageDialog.openError(shell, "Error Reading File",
+                        "Error reading mapping file: " + e3.getMessage());
+                }
             }
         });
 
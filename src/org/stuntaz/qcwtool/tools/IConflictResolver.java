@@ -0,0 +1,46 @@
+/*
+ * libqcw - A library for parsing, manipulating, and writing QCharts (TM) 
+ * workspace files.
+ *
+ * Copyright (C) 2008-2009 Jon Nall
+ * QCharts is a registered service mark of eSignal, Inc.
+ * RagingBull is a registered service mark of eSignal, Inc.
+ *
+ * Licensed under the Open Software License version 3.0 (the "License"); you
+ * may not use this file except in compliance with the License. You should
+ * have received a copy of the License along with this software; if not, you
+ * may obtain a copy of the License at
+ *
+ * http://opensource.org/licenses/osl-3.0.php
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package org.stuntaz.qcwtool.tools;
+
+/**
+ * Decides how to merge the lines of two symbols when lines are moved or
+ * copied to a symbol which already has lines in the same pane. Used by
+ * {@link ReplaceEngine} and {@link MergeEngine}.
+ * 
+ * @author nall
+ *
+ */
+public interface IConflictResolver
+{
+    /**
+     * Returns how to merge the lines of {@code oldSymbol} into
+     * {@code newSymbol}, which already has lines in the same pane. When
+     * engines run concurrently this may be called from several threads at
+     * once.
+     * 
+     * @param oldSymbol the symbol whose lines are being moved or copied
+     * @param newSymbol the symbol receiving them
+     * @return how to resolve the conflict
+     */
+    public MergeResolutionType resolve(
+        final String oldSymbol,
+        final String newSymbol);
+}
@@ -0,0 +1,350 @@
+/*
+ * libqcw - A library for parsing, manipulating, and writing QCharts (TM) 
+ * workspace files.
+ *
+ * Copyright (C) 2008-2009 Jon Nall
+ * QCharts is a registered service mark of eSignal, Inc.
+ * RagingBull is a registered service mark of eSignal, Inc.
+ *
+ * Licensed under the Open Software License version 3.0 (the "License"); you
+ * may not use this file except in compliance with the License. You should
+ * have received a copy of the License along with this software; if not, you
+ * may obtain a copy of the License at
+ *
+ * http://opensource.org/licenses/osl-3.0.php
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package org.stuntaz.qcwtool.tools;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.stuntaz.libqcw.QCWException;
+import org.stuntaz.libqcw.blobs.barchart.BarChartBlob;
+import org.stuntaz.libqcw.blobs.barchart.StudyHeaderBlob;
+import org.stuntaz.libqcw.blobs.barchart.StudyLineGroupBlob;
+import org.stuntaz.libqcw.blobs.barchart.SymbolEntryBlob;
+import org.stuntaz.libqcw.blobs.workspace.WorkspaceBlob;
+import org.stuntaz.libqcw.defines.QStudyType;
+
+/**
+ * Merges the lines of source charts into target charts as described by
+ * {@link MergeDirective}s. This is the engine behind {@link MergeTool}; it
+ * has no user interface.
+ * 
+ * The panes of each chart are indexed by study type once, and the symbols of
+ * each target pane are indexed by name, so each source symbol is matched
+ * against its target with a single lookup. Directives which share no chart
+ * can be merged concurrently.
+ * 
+ * @author nall
+ *
+ */
+public final class MergeEngine
+{
+    private final IConflictResolver resolver;
+
+    /**
+     * Creates a new MergeEngine.
+     * 
+     * @param resolver decides how to merge symbols present in both charts
+     */
+    public MergeEngine(final IConflictResolver resolver)
+    {
+        this.resolver = resolver;
+    }
+
+    /**
+     * Creates a new MergeEngine which resolves every conflict the same way.
+     * 
+     * @param policy how to resolve conflicts
+     */
+    public MergeEngine(final MergeResolutionType policy)
+    {
+        this(new IConflictResolver()
+        {
+            public MergeResolutionType resolve(
+                final String oldSymbol,
+                final String newSymbol)
+            {
+                return policy;
+            }
+        });
+    }
+
+    /**
+     * Applies the directives whose target chart is part of the specified
+     * workspace. Directives that share a chart are applied in order; the
+     * others are applied concurrently on up to {@code threads} threads. When
+     * {@code threads} is 1 everything runs on the calling thread, which is
+     * required if the resolver shows dialogs.
+     * 
+     * @param workspace the target workspace
+     * @param directives the merges to perform
+     * @param threads the maximum number of merges to run at once
+     * @return true if the workspace was changed
+     */
+    public boolean merge(
+        final WorkspaceBlob workspace,
+        final List<MergeDirective> directives,
+        final int threads)
+    {
+        final Set<BarChartBlob> charts = workspace.getCharts();
+        final List<List<MergeDirective>> groups = groupByChart(directives,
+            charts);
+
+        if (threads <= 1 || groups.size() <= 1)
+        {
+            boolean madeChanges = false;
+            for (final List<MergeDirective> group : groups)
+            {
+                madeChanges |= mergeAll(group);
+            }
+            return madeChanges;
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(
+            threads, groups.size()));
+        try
+        {
+            final List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>(
+                groups.size());
+            for (final List<MergeDirective> group : groups)
+            {
+                futures.add(executor.submit(new Callable<Boolean>()
+                {
+                    public Boolean call()
+                    {
+                        return mergeAll(group);
+                    }
+                }));
+            }
+
+            boolean madeChanges = false;
+            for (final Future<Boolean> future : futures)
+            {
+                madeChanges |= future.get();
+            }
+            return madeChanges;
+        }
+        catch (final ExecutionException e)
+        {
+            if (e.getCause() instanceof RuntimeException)
+            {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new QCWException("Merge failed: " + e.getCause());
+        }
+        catch (final InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new QCWException("Merge interrupted");
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Merges the studies of a single directive.
+     * 
+     * @param md the merge to perform
+     * @return true if the target chart was changed
+     */
+    public boolean merge(final MergeDirective md)
+    {
+        final PaneIndex srcPanes = new PaneIndex(md.source);
+        final PaneIndex tgtPanes = new PaneIndex(md.target);
+
+        boolean madeChanges = false;
+        for (final QStudyType type : md.studies)
+        {
+            final StudyLineGroupBlob srcLines = srcPanes.get(type,
+                md.priceEnabled);
+            final StudyLineGroupBlob tgtLines = tgtPanes.get(type,
+                md.priceEnabled);
+            if (srcLines == null || tgtLines == null) continue;
+
+            madeChanges |= mergeLines(srcLines, tgtLines);
+        }
+
+        return madeChanges;
+    }
+
+    private boolean mergeAll(final List<MergeDirective> group)
+    {
+        boolean madeChanges = false;
+        for (final MergeDirective md : group)
+        {
+            madeChanges |= merge(md);
+        }
+        return madeChanges;
+    }
+
+    /**
+     * Merges one pane as a hash join on the symbol name.
+     */
+    private boolean mergeLines(
+        final StudyLineGroupBlob srcLines,
+        final StudyLineGroupBlob tgtLines)
+    {
+        // Copy the list since symbols added to the target may also be in it
+        boolean madeChanges = false;
+        for (final SymbolEntryBlob srcSym : new ArrayList<SymbolEntryBlob>(
+            srcLines.getSymbols()))
+        {
+            final SymbolEntryBlob conflictingSym = tgtLines.getSymbol(srcSym
+                .getSymbolName());
+
+            // No conflict -- just add an entry
+            if (conflictingSym == null)
+            {
+                // Copy, since a blob can only belong to one group
+                tgtLines.addSymbolEntry(srcSym.copy());
+                madeChanges = true;
+                continue;
+            }
+
+            switch (resolver.resolve(conflictingSym.getSymbolName(),
+                conflictingSym.getSymbolName()))
+            {
+            case MergeKeepNew:
+            case MergeSkip:
+            {
+                // Do nothing
+                break;
+            }
+            case MergeUnion:
+            {
+                conflictingSym.getLineHeaders().addAll(
+                    srcSym.copyLineHeaders());
+                madeChanges = true;
+                break;
+            }
+            case MergeKeepOld:
+            {
+                conflictingSym.setLineHeaders(srcSym.copyLineHeaders());
+                madeChanges = true;
+                break;
+            }
+            }
+        }
+
+        return madeChanges;
+    }
+
+    /**
+     * Splits the directives targeting one of the specified charts into groups
+     * that share no chart, keeping their order within each group.
+     */
+    private static List<List<MergeDirective>> groupByChart(
+        final List<MergeDirective> directives,
+        final Set<BarChartBlob> charts)
+    {
+        // Union-find over the charts each directive reads and writes
+        final Map<BarChartBlob, BarChartBlob> parent = new IdentityHashMap<BarChartBlob, BarChartBlob>();
+        for (final MergeDirective md : directives)
+        {
+            if (charts.contains(md.target))
+            {
+                parent.put(find(parent, md.source), find(parent, md.target));
+            }
+        }
+
+        final Map<BarChartBlob, List<MergeDirective>> groups = new LinkedHashMap<BarChartBlob, List<MergeDirective>>();
+        for (final MergeDirective md : directives)
+        {
+            if (!charts.contains(md.target)) continue;
+
+            final BarChartBlob root = find(parent, md.target);
+            List<MergeDirective> group = groups.get(root);
+            if (group == null)
+            {
+                group = new ArrayList<MergeDirective>();
+                groups.put(root, group);
+            }
+            group.add(md);
+        }
+
+        return new ArrayList<List<MergeDirective>>(groups.values());
+    }
+
+    private static BarChartBlob find(
+        final Map<BarChartBlob, BarChartBlob> parent,
+        final BarChartBlob chart)
+    {
+        BarChartBlob root = chart;
+        BarChartBlob next;
+        while ((next = parent.get(root)) != null && next != root)
+        {
+            root = next;
+        }
+        return root;
+    }
+
+    /**
+     * The panes of a chart indexed by the type of their first study.
+     */
+    private static final class PaneIndex
+    {
+        private final BarChartBlob chart;
+        private final Map<QStudyType, Integer> byType = new HashMap<QStudyType, Integer>();
+        private int pricePane = Integer.MAX_VALUE;
+
+        PaneIndex(final BarChartBlob chart)
+        {
+            this.chart = chart;
+
+            final List<StudyHeaderBlob> studies = chart.getStudies();
+            for (int i = 0; i < studies.size(); ++i)
+            {
+                final StudyHeaderBlob header = studies.get(i);
+                if (header.isPriceStudy() && pricePane == Integer.MAX_VALUE)
+                {
+                    pricePane = i;
+                }
+                if (!header.getStudies().isEmpty())
+                {
+                    final QStudyType type = header.getStudies().get(0)
+                        .getStudyType();
+                    if (!byType.containsKey(type))
+                    {
+                        byType.put(type, i);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Returns the lines of the first pane showing the specified study, or
+         * the price pane if {@code price} is set and it comes first.
+         */
+        StudyLineGroupBlob get(final QStudyType type, final boolean price)
+        {
+            final Integer typePane = byType.get(type);
+            int pane = (typePane == null) ? Integer.MAX_VALUE : typePane;
+            if (price)
+            {
+                pane = Math.min(pane, pricePane);
+            }
+
+            return (pane == Integer.MAX_VALUE) ? null : chart.getStudyLines()
+                .get(pane);
+        }
+    }
+}
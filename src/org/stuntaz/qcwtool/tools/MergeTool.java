@@ -20,20 +20,14 @@
 
 package org.stuntaz.qcwtool.tools;
 
-import java.io.BufferedOutputStream;
-import java.io.FileOutputStream;
-import java.io.IOException;
+import java.io.File;
 import java.util.List;
 
 import org.eclipse.jface.dialogs.MessageDialog;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.widgets.FileDialog;
-import org.stuntaz.libqcw.BasicQCWVisitor;
-import org.stuntaz.libqcw.blobs.barchart.BarChartBlob;
-import org.stuntaz.libqcw.blobs.barchart.StudyLineGroupBlob;
-import org.stuntaz.libqcw.blobs.barchart.SymbolEntryBlob;
+import org.stuntaz.libqcw.QCWException;
 import org.stuntaz.libqcw.blobs.files.WorkspaceFileBlob;
-import org.stuntaz.libqcw.defines.QStudyType;
 import org.stuntaz.qcwtool.dialogs.MergeConflictDialog;
 import org.stuntaz.qcwtool.dialogs.MergeToolDialog;
 
@@ -76,28 +70,29 @@ public final class MergeTool
             return;
         }
 
-        final boolean[] madeChanges = { false };
-
         final WorkspaceFileBlob wfile = new WorkspaceFileBlob();
         wfile.setWorkspace(mtd.getTargetWorkspace());
 
-        // For each merge directive, merge the requested studies
-        for (final MergeDirective md : merges)
+        // Conflicts are resolved interactively, so merge on this thread
+        final MergeEngine engine = new MergeEngine(new IConflictResolver()
         {
-            wfile.getWorkspace().accept(new BasicQCWVisitor()
+            public MergeResolutionType resolve(
+                final String oldSymbol,
+                final String newSymbol)
             {
-                @Override
-                public void visit(final BarChartBlob chart)
+                if (needConflictPolicy)
                 {
-                    if (chart == md.target)
-                    {
-                        madeChanges[0] |= mergeCharts(md);
-                    }
+                    final MergeConflictDialog mcd = new MergeConflictDialog(
+                        getComposite().getShell(), oldSymbol, newSymbol);
+                    mcd.open();
+                    mergePolicy = mcd.getMergeType();
+                    needConflictPolicy = !mcd.useResultsHenceforth();
                 }
-            });
-        }
+                return mergePolicy;
+            }
+        });
 
-        if (madeChanges[0])
+        if (engine.merge(wfile.getWorkspace(), merges, 1))
         {
             final FileDialog fd = new FileDialog(getComposite().getShell(),
                 SWT.SAVE);
@@ -111,14 +106,10 @@ public final class MergeTool
                 if (saveFileName != null)
                 {
 
-                    final BufferedOutputStream output = new BufferedOutputStream(
-                        new FileOutputStream(saveFileName));
-                    wfile.write(output);
-                    output.flush();
-                    output.close();
+                    wfile.write(new File(saveFileName));
                 }
             }
-            catch (final IOException e)
+            catch (final QCWException e)
             {
                 MessageDialog.openError(getComposite().getShell(),
                     "Error Saving File", "Error writing new workspace file: "
@@ -133,97 +124,4 @@ public final class MergeTool
         }
 
     }
-
-    private boolean mergeCharts(final MergeDirective md)
-    {
-        boolean madeChanges = false;
-
-        for (final QStudyType type : md.studies)
-        {
-            // Find target study lines
-            final StudyLineGroupBlob srcLines = getLines(md.source, type,
-                md.priceEnabled);
-            final StudyLineGroupBlob tgtLines = getLines(md.target, type,
-                md.priceEnabled);
-
-            for (final SymbolEntryBlob srcSym : srcLines.getSymbols())
-            {
-                SymbolEntryBlob conflictingSym = null;
-                for (final SymbolEntryBlob tgtSym : tgtLines.getSymbols())
-                {
-                    if (tgtSym.getSymbolName().equals(srcSym.getSymbolName()))
-                    {
-                        conflictingSym = tgtSym;
-                        break;
-                    }
-                }
-
-                // No conflict -- just add an entry
-                if (conflictingSym == null)
-                {
-                    tgtLines.addSymbolEntry(srcSym);
-                    madeChanges = true;
-                }
-                else
-                {
-                    // conflict resolution
-                    if (needConflictPolicy)
-                    {
-                        final MergeConflictDialog mcd = new MergeConflictDialog(
-                            getComposite().getShell(),
-                            conflictingSym.getSymbolName(), conflictingSym.getSymbolName());
-                        mcd.open();
-                        mergePolicy = mcd.getMergeType();
-                        needConflictPolicy = !mcd.useResultsHenceforth();
-                    }
-
-                    switch (mergePolicy)
-                    {
-                    case MergeKeepNew:
-                    case MergeSkip:
-                    {
-                        // Do nothing
-                        break;
-                    }
-                    case MergeUnion:
-                    {
-                        conflictingSym.getLineHeaders().addAll(
-                            srcSym.getLineHeaders());
-                        madeChanges = true;
-                        break;
-                    }
-                    case MergeKeepOld:
-                    {
-                        conflictingSym.setLineHeaders(srcSym.getLineHeaders());
-                        madeChanges = true;
-                        break;
-                    }
-                    }
-                }
-            }
-        }
-
-        return madeChanges;
-    }
-
-    private StudyLineGroupBlob getLines(
-        final BarChartBlob chart,
-        final QStudyType type,
-        final boolean getLinesForPrice)
-    {
-        for (int i = 0; i < chart.getStudies().size(); ++i)
-        {
-            if (chart.getStudies().get(i).isPriceStudy() && getLinesForPrice)
-            {
-                return chart.getStudyLines().get(i);
-            }
-            else if (chart.getStudies().get(i).getStudies().get(0)
-                .getStudyType() == type)
-            {
-                return chart.getStudyLines().get(i);
-            }
-        }
-
-        return null;
-    }
 }
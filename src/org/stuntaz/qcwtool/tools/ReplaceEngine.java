@@ -0,0 +1,406 @@
+/*
+ * libqcw - A library for parsing, manipulating, and writing QCharts (TM) 
+ * workspace files.
+ *
+ * Copyright (C) 2008-2009 Jon Nall
+ * QCharts is a registered service mark of eSignal, Inc.
+ * RagingBull is a registered service mark of eSignal, Inc.
+ *
+ * Licensed under the Open Software License version 3.0 (the "License"); you
+ * may not use this file except in compliance with the License. You should
+ * have received a copy of the License along with this software; if not, you
+ * may obtain a copy of the License at
+ *
+ * http://opensource.org/licenses/osl-3.0.php
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package org.stuntaz.qcwtool.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.stuntaz.libqcw.BasicQCWVisitor;
+import org.stuntaz.libqcw.QCWException;
+import org.stuntaz.libqcw.blobs.barchart.StudyLineGroupBlob;
+import org.stuntaz.libqcw.blobs.barchart.SymbolEntryBlob;
+import org.stuntaz.libqcw.blobs.files.WorkspaceFileBlob;
+
+/**
+ * Moves the lines and notes associated with one symbol to another symbol in
+ * the charts of workspaces. This is the engine behind {@link ReplaceTool}; it
+ * has no user interface, so it may also be used from the command line or on
+ * servers, and it can process many workspaces concurrently.
+ * 
+ * When a symbol is moved to a symbol that already has lines in the same
+ * pane, the lines are merged according to a {@link MergeResolutionType}
+ * obtained from an {@link IConflictResolver}.
+ * 
+ * @author nall
+ *
+ */
+public final class ReplaceEngine
+{
+    /**
+     * The outcome of processing a single file.
+     */
+    public static final class Result
+    {
+        private final File file;
+        private final boolean changed;
+        private final Throwable error;
+
+        Result(final File file, final boolean changed, final Throwable error)
+        {
+            this.file = file;
+            this.changed = changed;
+            this.error = error;
+        }
+
+        /**
+         * Returns the file that was processed.
+         * 
+         * @return the input file
+         */
+        public File getFile()
+        {
+            return file;
+        }
+
+        /**
+         * Returns true if the file was changed and written.
+         * 
+         * @return true if the file was changed
+         */
+        public boolean isChanged()
+        {
+            return changed;
+        }
+
+        /**
+         * Returns the error which prevented the file from being processed.
+         * 
+         * @return the error, or null if the file was processed successfully
+         */
+        public Throwable getError()
+        {
+            return error;
+        }
+    }
+
+    private final ReplacementPlan plan;
+    private final boolean removeOldSymbols;
+    private final IConflictResolver resolver;
+
+    /**
+     * Creates a new ReplaceEngine.
+     * 
+     * @param plan the replacements to make
+     * @param removeOldSymbols true if the old symbols should be removed (the
+     *      lines are moved), false if they should be kept (the lines are
+     *      copied)
+     * @param resolver decides how to merge conflicting symbols
+     */
+    public ReplaceEngine(
+        final ReplacementPlan plan,
+        final boolean removeOldSymbols,
+        final IConflictResolver resolver)
+    {
+        this.plan = plan;
+        this.removeOldSymbols = removeOldSymbols;
+        this.resolver = resolver;
+    }
+
+    /**
+     * Creates a new ReplaceEngine which resolves every conflict the same way.
+     * 
+     * @param plan the replacements to make
+     * @param removeOldSymbols true if the old symbols should be removed
+     * @param policy how to resolve conflicts
+     */
+    public ReplaceEngine(
+        final ReplacementPlan plan,
+        final boolean removeOldSymbols,
+        final MergeResolutionType policy)
+    {
+        this(plan, removeOldSymbols, new IConflictResolver()
+        {
+            public MergeResolutionType resolve(
+                final String oldSymbol,
+                final String newSymbol)
+            {
+                return policy;
+            }
+        });
+    }
+
+    /**
+     * Creates a new ReplaceEngine.
+     * 
+     * @param mapping the replacement rules, as described by
+     *      {@link ReplacementPlan}
+     * @param removeOldSymbols true if the old symbols should be removed (the
+     *      lines are moved), false if they should be kept (the lines are
+     *      copied)
+     * @param resolver decides how to merge conflicting symbols
+     * @throws QCWException if the rules can't be compiled
+     */
+    public ReplaceEngine(
+        final Map<String, String> mapping,
+        final boolean removeOldSymbols,
+        final IConflictResolver resolver)
+    {
+        this(new ReplacementPlan(mapping), removeOldSymbols, resolver);
+    }
+
+    /**
+     * Creates a new ReplaceEngine which resolves every conflict the same way.
+     * 
+     * @param mapping the replacement rules, as described by
+     *      {@link ReplacementPlan}
+     * @param removeOldSymbols true if the old symbols should be removed
+     * @param policy how to resolve conflicts
+     * @throws QCWException if the rules can't be compiled
+     */
+    public ReplaceEngine(
+        final Map<String, String> mapping,
+        final boolean removeOldSymbols,
+        final MergeResolutionType policy)
+    {
+        this(new ReplacementPlan(mapping), removeOldSymbols, policy);
+    }
+
+    /**
+     * Applies the replacements to the specified workspace.
+     * 
+     * @param wfile the workspace to modify
+     * @return true if the workspace was changed
+     */
+    public boolean apply(final WorkspaceFileBlob wfile)
+    {
+        final boolean[] madeChanges = { false };
+
+        new BasicQCWVisitor()
+        {
+            @Override
+            public void visit(final StudyLineGroupBlob lines)
+            {
+                madeChanges[0] |= apply(lines);
+            }
+        }.visit(wfile.getWorkspace());
+
+        return madeChanges[0];
+    }
+
+    /**
+     * Applies the replacements to a single pane. Symbols are processed in
+     * file order, so when several symbols are moved to the same new symbol,
+     * the first one creates it and the others are merged into it.
+     */
+    private boolean apply(final StudyLineGroupBlob lines)
+    {
+        boolean madeChanges = false;
+        final List<String> removals = new ArrayList<String>();
+
+        // Iterate over a copy since entries are renamed and added as we go
+        for (final SymbolEntryBlob oldSym : new ArrayList<SymbolEntryBlob>(
+            lines.getSymbols()))
+        {
+            final String oldSymName = oldSym.getSymbolName();
+            final String newSymName = plan.resolve(oldSymName);
+            if (newSymName == null)
+            {
+                continue;
+            }
+
+            // Check if the new symbol already has lines in this pane
+            final SymbolEntryBlob newSym = lines.getSymbol(newSymName);
+            if (newSym == null)
+            {
+                // Copy/Move symbol as needed
+                if (removeOldSymbols)
+                {
+                    // We can just rename
+                    oldSym.setSymbolName(newSymName);
+                }
+                else
+                {
+                    final SymbolEntryBlob copy = oldSym.copy();
+                    copy.setSymbolName(newSymName);
+                    lines.addSymbolEntry(copy);
+                }
+
+                madeChanges = true;
+                continue;
+            }
+
+            final MergeResolutionType mergePolicy = resolver.resolve(
+                oldSymName, newSymName);
+            switch (mergePolicy)
+            {
+            case MergeUnion:
+            {
+                // Copy old lines to new symbol
+                newSym.getLineHeaders().addAll(oldSym.copyLineHeaders());
+                break;
+            }
+            case MergeKeepOld:
+            {
+                // Replace new lines w/ old lines
+                newSym.setLineHeaders(oldSym.copyLineHeaders());
+                break;
+            }
+            case MergeKeepNew:
+            case MergeSkip:
+            {
+                // No modifications to the new Symbol's entry
+                break;
+            }
+            }
+
+            if (mergePolicy != MergeResolutionType.MergeSkip)
+            {
+                if (removeOldSymbols)
+                {
+                    removals.add(oldSymName);
+                }
+                else if (mergePolicy != MergeResolutionType.MergeKeepNew)
+                {
+                    // KeepNew && !Skip && !removeOldSyms
+                    // means no change
+                    madeChanges = true;
+                }
+            }
+        }
+
+        if (!removals.isEmpty())
+        {
+            madeChanges |= lines.removeSymbols(removals);
+        }
+
+        return madeChanges;
+    }
+
+    /**
+     * Applies the replacements to the specified workspace file, writing the
+     * result to {@code out} if anything changed.
+     * 
+     * @param in the workspace file to read
+     * @param out the file to write; may be the same as {@code in}
+     * @return true if the workspace was changed and written
+     */
+    public boolean apply(final File in, final File out)
+    {
+        final WorkspaceFileBlob wfile = new WorkspaceFileBlob();
+        if (canonical(in).equals(canonical(out)))
+        {
+            // Don't keep a mapping of the file being replaced
+            wfile.parseCopy(in);
+        }
+        else
+        {
+            wfile.parse(in);
+        }
+
+        if (!apply(wfile)) return false;
+
+        wfile.write(out);
+        return true;
+    }
+
+    /**
+     * Applies the replacements to many workspace files concurrently.
+     * 
+     * @param files the workspace files to process
+     * @param outputDir the directory to which changed files are written, using
+     *      their original names, or null to overwrite the input files
+     * @param threads the maximum number of files to process at once; values
+     *      below 1 are treated as 1
+     * @return the result for each file, in the order of {@code files}
+     * @throws QCWException if two of the files would be written to the same
+     *      output file
+     */
+    public List<Result> applyAll(
+        final List<File> files,
+        final File outputDir,
+        final int threads)
+    {
+        // Reject clashes up front rather than letting the writes race
+        final List<File> outputs = new ArrayList<File>(files.size());
+        final Map<File, File> writers = new HashMap<File, File>();
+        for (final File file : files)
+        {
+            final File out = canonical((outputDir == null) ? file : new File(
+                outputDir, file.getName()));
+            final File other = writers.put(out, file);
+            if (other != null)
+            {
+                throw new QCWException("Both " + other + " and " + file
+                    + " would be written to " + out);
+            }
+            outputs.add(out);
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.max(
+            1, Math.min(threads, files.size())));
+        final List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>(
+            files.size());
+        for (int i = 0; i < files.size(); ++i)
+        {
+            final File file = files.get(i);
+            final File out = outputs.get(i);
+            futures.add(executor.submit(new Callable<Boolean>()
+            {
+                public Boolean call()
+                {
+                    return apply(file, out);
+                }
+            }));
+        }
+        executor.shutdown();
+
+        final List<Result> results = new ArrayList<Result>(files.size());
+        for (int i = 0; i < files.size(); ++i)
+        {
+            try
+            {
+                results.add(new Result(files.get(i), futures.get(i).get(),
+                    null));
+            }
+            catch (final ExecutionException e)
+            {
+                results.add(new Result(files.get(i), false, e.getCause()));
+            }
+            catch (final InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                results.add(new Result(files.get(i), false, e));
+            }
+        }
+        return results;
+    }
+
+    private static File canonical(final File file)
+    {
+        try
+        {
+            return file.getCanonicalFile();
+        }
+        catch (final IOException e)
+        {
+            return file.getAbsoluteFile();
+        }
+    }
+}
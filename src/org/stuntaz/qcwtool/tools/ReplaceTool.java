@@ -20,29 +20,22 @@
 
 package org.stuntaz.qcwtool.tools;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.io.File;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 import org.eclipse.jface.dialogs.MessageDialog;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.widgets.FileDialog;
-import org.stuntaz.libqcw.BasicQCWVisitor;
-import org.stuntaz.libqcw.blobs.barchart.StudyLineGroupBlob;
-import org.stuntaz.libqcw.blobs.barchart.SymbolEntryBlob;
+import org.stuntaz.libqcw.QCWException;
 import org.stuntaz.libqcw.blobs.files.WorkspaceFileBlob;
 import org.stuntaz.qcwtool.dialogs.MergeConflictDialog;
 import org.stuntaz.qcwtool.dialogs.ReplaceDialog;
 
 /**
- * Tool that allows symbol replacement in QCW files.
+ * Tool that allows symbol replacement in QCW files. The replacement itself is
+ * done by {@link ReplaceEngine}; this tool only gathers its parameters.
  * 
  * @author nall
  *
@@ -88,166 +81,56 @@ public final class ReplaceTool
             return;
         }
 
-        final Map<StudyLineGroupBlob, Set<SymbolEntryBlob>> removals = new HashMap<StudyLineGroupBlob, Set<SymbolEntryBlob>>();
-        final Map<StudyLineGroupBlob, Set<SymbolEntryBlob>> adds = new HashMap<StudyLineGroupBlob, Set<SymbolEntryBlob>>();
+        // Keep the order of the dialog; the first entry for a symbol wins
+        final Map<String, String> replacements = new LinkedHashMap<String, String>();
+        for (final ReplaceDialog.MappingEntry entry : mapping)
+        {
+            if (!replacements.containsKey(entry.key))
+            {
+                replacements.put(entry.key, entry.value);
+            }
+        }
 
+        final ReplacementPlan plan;
         try
         {
-            final BufferedInputStream input = new BufferedInputStream(
-                new FileInputStream(fileName));
-            final WorkspaceFileBlob wfile = new WorkspaceFileBlob();
-            wfile.parse(input);
-            input.close();
-
-            final boolean[] madeChanges = { false };
+            plan = new ReplacementPlan(replacements);
+        }
+        catch (final QCWException e)
+        {
+            MessageDialog.openError(getComposite().getShell(),
+                "Invalid Replacements", e.getMessage());
+            return;
+        }
 
-            new BasicQCWVisitor()
+        final ReplaceEngine engine = new ReplaceEngine(plan, removeOldSyms,
+            new IConflictResolver()
             {
-                private StudyLineGroupBlob curLines = null;
                 private boolean needConflictPolicy = true;
                 private MergeResolutionType mergePolicy = MergeResolutionType.MergeSkip;
 
-                @Override
-                public void visit(final StudyLineGroupBlob lines)
-                {
-                    curLines = lines;
-                    super.visit(lines);
-                }
-
-                @Override
-                public void visit(final SymbolEntryBlob oldSym)
+                public MergeResolutionType resolve(
+                    final String oldSymName,
+                    final String newSymName)
                 {
-                    for (final ReplaceDialog.MappingEntry entry : mapping)
+                    if (needConflictPolicy)
                     {
-                        final String oldSymName = entry.key;
-                        final String newSymName = entry.value;
-
-                        if (oldSym.getSymbolName().equals(oldSymName))
-                        {
-                            // 1. Check if new symbol exists by checking all
-                            //    symbol names in the current line set
-                            //    against the new symbol name
-                            boolean conflict = false;
-                            SymbolEntryBlob newSym = null;
-                            for (final SymbolEntryBlob s : curLines
-                                .getSymbols())
-                            {
-                                if (s.getSymbolName().equals(newSymName))
-                                {
-                                    newSym = s;
-                                    conflict = true;
-                                }
-                            }
-
-                            if (conflict)
-                            {
-                                if (needConflictPolicy)
-                                {
-                                    final MergeConflictDialog mcd = new MergeConflictDialog(
-                                        getComposite().getShell(), oldSymName,
-                                        newSymName);
-                                    mcd.open();
-                                    mergePolicy = mcd.getMergeType();
-                                    needConflictPolicy = !mcd
-                                        .useResultsHenceforth();
-                                }
-
-                                switch (mergePolicy)
-                                {
-                                case MergeUnion:
-                                {
-                                    // Copy old lines to new symbol
-                                    // Remove old symbol if needed
-                                    newSym.getLineHeaders().addAll(
-                                        oldSym.getLineHeaders());
-                                    break;
-                                }
-                                case MergeKeepOld:
-                                {
-                                    // Replace new lines w/ old lines
-                                    // Remove old symbol if needed
-                                    newSym.setLineHeaders(oldSym
-                                        .getLineHeaders());
-                                    break;
-                                }
-                                case MergeKeepNew:
-                                case MergeSkip:
-                                {
-                                    // No modifications to the new Symbol's entry
-                                    break;
-                                }
-                                }
-
-                                if (mergePolicy != MergeResolutionType.MergeSkip)
-                                {
-                                    if (removeOldSyms)
-                                    {
-                                        Set<SymbolEntryBlob> curSet = removals
-                                            .get(curLines);
-                                        if (curSet == null)
-                                        {
-                                            curSet = new HashSet<SymbolEntryBlob>();
-                                            removals.put(curLines, curSet);
-                                        }
-                                        curSet.add(oldSym);
-                                    }
-                                    else if (mergePolicy != MergeResolutionType.MergeKeepNew)
-                                    {
-                                        // KeepNew && !Skip && !removeOldSyms
-                                        // means no change
-                                        madeChanges[0] = true;
-                                    }
-                                }
-                            }
-                            else
-                            {
-                                // Copy/Move symbol as needed                                
-                                if (removeOldSyms)
-                                {
-                                    // We can just rename
-                                    oldSym.setSymbolName(newSymName);
-                                }
-                                else
-                                {
-                                    newSym = new SymbolEntryBlob(newSymName,
-                                        oldSym.getLineHeaders());
-
-                                    Set<SymbolEntryBlob> curSet = adds
-                                        .get(curLines);
-                                    if (curSet == null)
-                                    {
-                                        curSet = new HashSet<SymbolEntryBlob>();
-                                        adds.put(curLines, curSet);
-                                    }
-                                    curSet.add(newSym);
-                                }
-
-                                madeChanges[0] = true;
-                            }
-                        }
+                        final MergeConflictDialog mcd = new MergeConflictDialog(
+                            getComposite().getShell(), oldSymName, newSymName);
+                        mcd.open();
+                        mergePolicy = mcd.getMergeType();
+                        needConflictPolicy = !mcd.useResultsHenceforth();
                     }
-
-                    super.visit(oldSym);
+                    return mergePolicy;
                 }
-            }.visit(wfile.getWorkspace());
+            });
 
-            // Do this after the visit to avoid a ConcurrentModificationException
-            for (final StudyLineGroupBlob group : removals.keySet())
-            {
-                for (final SymbolEntryBlob sym : removals.get(group))
-                {
-                    group.removeSymbol(sym.getSymbolName());
-                }
-            }
-            for (final StudyLineGroupBlob group : adds.keySet())
-            {
-                for (final SymbolEntryBlob sym : adds.get(group))
-                {
-                    group.addSymbolEntry(sym);
-                }
-            }
+        try
+        {
+            final WorkspaceFileBlob wfile = new WorkspaceFileBlob();
+            wfile.parseCopy(new File(fileName));
 
-            if (madeChanges[0])
+            if (engine.apply(wfile))
             {
                 final FileDialog fd = new FileDialog(getComposite().getShell(),
                     SWT.SAVE);
@@ -261,14 +144,10 @@ public final class ReplaceTool
                     if (saveFileName != null)
                     {
 
-                        final BufferedOutputStream output = new BufferedOutputStream(
-                            new FileOutputStream(saveFileName));
-                        wfile.write(output);
-                        output.flush();
-                        output.close();
+                        wfile.write(new File(saveFileName));
                     }
                 }
-                catch (final IOException e)
+                catch (final QCWException e)
                 {
                     MessageDialog.openError(getComposite().getShell(),
                         "Error Saving File",
@@ -0,0 +1,497 @@
+/*
+ * libqcw - A library for parsing, manipulating, and writing QCharts (TM) 
+ * workspace files.
+ *
+ * Copyright (C) 2008-2009 Jon Nall
+ * QCharts is a registered service mark of eSignal, Inc.
+ * RagingBull is a registered service mark of eSignal, Inc.
+ *
+ * Licensed under the Open Software License version 3.0 (the "License"); you
+ * may not use this file except in compliance with the License. You should
+ * have received a copy of the License along with this software; if not, you
+ * may obtain a copy of the License at
+ *
+ * http://opensource.org/licenses/osl-3.0.php
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package org.stuntaz.qcwtool.tools;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.stuntaz.libqcw.QCWException;
+
+/**
+ * A compiled set of symbol replacement rules. Each rule maps an old symbol to
+ * a new one and takes one of three forms:
+ * <ul>
+ * <li>{@code INDEX:OEX = INDEX:$OEX} replaces a single symbol.</li>
+ * <li>{@code INDEX:* = INDEX:$*} replaces every symbol starting with
+ * {@code INDEX:}. A {@code *} in the new symbol stands for the rest of the
+ * old symbol.</li>
+ * <li>{@code /INDEX:(.*)\.X/ = INDEX:$1} replaces every symbol matching the
+ * regular expression between the slashes. In the new symbol, {@code $}
+ * followed by a digit refers to a group of the expression, any other
+ * {@code $} stands for itself (e.g. {@code /NDX.+/ = $NDX}) and
+ * {@code \} makes the next character stand for itself (e.g. {@code \$1}).
+ * </li>
+ * </ul>
+ * 
+ * Single symbols are looked up in a hash table and prefixes in a trie, so
+ * finding the rule for a symbol takes time proportional to the length of its
+ * name. Regular expressions are only tried, in order, for symbols no other
+ * rule matches. Among several matching rules, a single symbol rule wins over
+ * a prefix rule, a longer prefix over a shorter one, and the first rule for
+ * the same symbol or prefix over later ones.
+ * 
+ * Chains are followed, so with {@code A = B} and {@code B = C} both
+ * {@code A} and {@code B} are replaced by {@code C}. No rule is applied more
+ * than once in a chain, and a chain that leads back to a symbol it already
+ * passed through is rejected with a {@link QCWException}. The chains of
+ * single symbol rules are resolved when the plan is compiled.
+ * 
+ * @author nall
+ *
+ */
+public final class ReplacementPlan
+{
+    /**
+     * A node in the prefix trie.
+     */
+    private static final class Node
+    {
+        private final Map<Character, Node> children = new HashMap<Character, Node>();
+        private String replacement = null;
+    }
+
+    /**
+     * The result of applying a single rule.
+     */
+    private static final class Match
+    {
+        private final String symbol;
+        private final Object rule;
+
+        Match(final String symbol, final Object rule)
+        {
+            this.symbol = symbol;
+            this.rule = rule;
+        }
+    }
+
+    private final Map<String, String> exact = new HashMap<String, String>();
+    private final Map<String, String> resolved = new HashMap<String, String>();
+    private final Node prefixes = new Node();
+    private final Map<Pattern, String> patterns = new LinkedHashMap<Pattern, String>();
+
+    /**
+     * Compiles the specified rules.
+     * 
+     * @param rules maps old symbols, prefixes or expressions to new symbols.
+     *      The iteration order of the map is the order of the rules.
+     * @throws QCWException if a rule is malformed or a chain of rules is
+     *      circular
+     */
+    public ReplacementPlan(final Map<String, String> rules)
+    {
+        for (final Map.Entry<String, String> rule : rules.entrySet())
+        {
+            addRule(rule.getKey().trim(), rule.getValue().trim());
+        }
+
+        // Resolve the chains of single symbol rules up front
+        for (final String symbol : exact.keySet())
+        {
+            resolved.put(symbol, follow(symbol));
+        }
+    }
+
+    /**
+     * Reads the rules in the specified file, one {@code old = new} pair per
+     * line, and compiles them (see {@link #readRules(Reader)}). This is the
+     * format of {@code example_replacement_map.txt}.
+     * 
+     * @param file the file to read
+     * @return the compiled rules
+     * @throws QCWException if the file cannot be read, a rule is malformed or
+     *      a chain of rules is circular
+     */
+    public static ReplacementPlan load(final File file)
+    {
+        try
+        {
+            final Reader reader = new FileReader(file);
+            try
+            {
+                return new ReplacementPlan(readRules(reader));
+            }
+            finally
+            {
+                reader.close();
+            }
+        }
+        catch (final IOException e)
+        {
+            throw new QCWException("Error reading replacement map " + file
+                + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reads {@code old = new} pairs, one per line, from the specified reader.
+     * Blank lines are ignored, and for rules with the same old symbol only
+     * the first is kept. The pair is split at the first {@code =}, except
+     * that the {@code =} of an expression rule must follow its closing
+     * {@code /}, so the expression may itself contain {@code =} (e.g.
+     * {@code /A=(.*)/ = $1}).
+     * 
+     * @param reader the reader to read
+     * @return the rules in the order they were read
+     * @throws IOException if there is an error reading
+     * @throws QCWException if a line which is not blank is not such a pair
+     */
+    public static Map<String, String> readRules(final Reader reader)
+        throws IOException
+    {
+        final Map<String, String> rules = new LinkedHashMap<String, String>();
+        final BufferedReader input = new BufferedReader(reader);
+
+        String line;
+        int number = 0;
+        while ((line = input.readLine()) != null)
+        {
+            ++number;
+            line = line.trim();
+            if (line.length() == 0)
+            {
+                continue;
+            }
+
+            final int separator = findSeparator(line);
+            final String key = (separator < 0) ? "" : line.substring(0,
+                separator).trim();
+            final String value = (separator < 0) ? "" : line.substring(
+                separator + 1).trim();
+            if (key.length() == 0 || value.length() == 0)
+            {
+                throw new QCWException("Malformed replacement rule on line "
+                    + number + ": " + line);
+            }
+
+            if (!rules.containsKey(key))
+            {
+                rules.put(key, value);
+            }
+        }
+
+        return rules;
+    }
+
+    /**
+     * Returns the index of the {@code =} separating the old and new symbols
+     * of a trimmed rule, or -1 if there is none. For expression rules this is
+     * the first {@code =} following an unescaped {@code /} which closes the
+     * expression.
+     */
+    private static int findSeparator(final String line)
+    {
+        if (!line.startsWith("/"))
+        {
+            return line.indexOf('=');
+        }
+
+        for (int i = 1; i < line.length(); ++i)
+        {
+            final char c = line.charAt(i);
+            if (c == '\\')
+            {
+                // Skip the escaped character
+                ++i;
+            }
+            else if (c == '/')
+            {
+                int j = i + 1;
+                while (j < line.length()
+                    && Character.isWhitespace(line.charAt(j)))
+                {
+                    ++j;
+                }
+                if (j < line.length() && line.charAt(j) == '=')
+                {
+                    return j;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the symbol that replaces the specified symbol, with chains of
+     * rules followed to the end.
+     * 
+     * @param symbol the fully qualified name of the symbol to replace
+     * @return the new symbol, or null if the symbol is not replaced
+     * @throws QCWException if the chain of rules for the symbol is circular
+     */
+    public String resolve(final String symbol)
+    {
+        String result = resolved.get(symbol);
+        if (result == null)
+        {
+            result = follow(symbol);
+        }
+
+        return result.equals(symbol) ? null : result;
+    }
+
+    /**
+     * Returns the old symbols that single symbol rules move to the same new
+     * symbol. When more than one of them has lines in a pane, the lines are
+     * merged into the new symbol one after another.
+     * 
+     * @return the old symbols of each new symbol with more than one
+     */
+    public Map<String, List<String>> getCollisions()
+    {
+        final Map<String, List<String>> sources = new LinkedHashMap<String, List<String>>();
+        for (final Map.Entry<String, String> entry : resolved.entrySet())
+        {
+            List<String> symbols = sources.get(entry.getValue());
+            if (symbols == null)
+            {
+                symbols = new ArrayList<String>(1);
+                sources.put(entry.getValue(), symbols);
+            }
+            symbols.add(entry.getKey());
+        }
+
+        final Map<String, List<String>> collisions = new LinkedHashMap<String, List<String>>();
+        for (final Map.Entry<String, List<String>> entry : sources.entrySet())
+        {
+            if (entry.getValue().size() > 1)
+            {
+                Collections.sort(entry.getValue());
+                collisions.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return collisions;
+    }
+
+    /**
+     * Converts the new symbol of an expression rule into a replacement string
+     * for {@link Matcher#appendReplacement(StringBuffer, String)}, so that
+     * invalid group references are rejected when the plan is compiled rather
+     * than when a symbol matches.
+     */
+    private static String toReplacement(
+        final String key,
+        final Pattern pattern,
+        final String value)
+    {
+        final int groups = pattern.matcher("").groupCount();
+        final StringBuilder replacement = new StringBuilder(value.length() + 8);
+        for (int i = 0; i < value.length(); ++i)
+        {
+            final char c = value.charAt(i);
+            if (c == '\\')
+            {
+                if (++i == value.length())
+                {
+                    throw new QCWException("Trailing \\ in replacement rule "
+                        + key + " = " + value);
+                }
+                replacement.append('\\').append(value.charAt(i));
+            }
+            else if (c == '$' && i + 1 < value.length()
+                && Character.isDigit(value.charAt(i + 1)))
+            {
+                // Take as many digits as still name a group, like Matcher
+                int group = value.charAt(++i) - '0';
+                if (group > groups)
+                {
+                    throw new QCWException("No group " + group
+                        + " in replacement rule " + key + " = " + value);
+                }
+                while (i + 1 < value.length()
+                    && Character.isDigit(value.charAt(i + 1))
+                    && group * 10 + value.charAt(i + 1) - '0' <= groups)
+                {
+                    group = group * 10 + value.charAt(++i) - '0';
+                }
+                replacement.append('$').append(group);
+            }
+            else if (c == '$')
+            {
+                replacement.append("\\$");
+            }
+            else
+            {
+                replacement.append(c);
+            }
+        }
+        return replacement.toString();
+    }
+
+    private void addRule(final String key, final String value)
+    {
+        if (key.length() == 0 || value.length() == 0)
+        {
+            throw new QCWException("Empty symbol in replacement rule " + key
+                + " = " + value);
+        }
+
+        if (key.length() > 1 && key.startsWith("/") && key.endsWith("/"))
+        {
+            try
+            {
+                final Pattern pattern = Pattern.compile(key.substring(1, key
+                    .length() - 1));
+                patterns.put(pattern, toReplacement(key, pattern, value));
+            }
+            catch (final PatternSyntaxException e)
+            {
+                throw new QCWException("Invalid expression in replacement rule "
+                    + key + ": " + e.getDescription());
+            }
+        }
+        else if (key.endsWith("*"))
+        {
+            Node node = prefixes;
+            for (int i = 0; i < key.length() - 1; ++i)
+            {
+                final Character c = Character.valueOf(key.charAt(i));
+                Node child = node.children.get(c);
+                if (child == null)
+                {
+                    child = new Node();
+                    node.children.put(c, child);
+                }
+                node = child;
+            }
+
+            if (node.replacement == null)
+            {
+                node.replacement = value;
+            }
+        }
+        else if (!exact.containsKey(key))
+        {
+            exact.put(key, value);
+        }
+    }
+
+    /**
+     * Applies rules to the specified symbol until none matches. Each rule is
+     * applied at most once, so that a rule such as {@code INDEX:* = INDEX:$*}
+     * is not applied again to its own result.
+     */
+    private String follow(final String symbol)
+    {
+        String current = symbol;
+        Set<Object> used = null;
+        Set<String> seen = null;
+
+        for (Match next = step(current); next != null; next = step(current))
+        {
+            if (next.symbol.equals(current))
+            {
+                break;
+            }
+            if (seen == null)
+            {
+                used = new HashSet<Object>();
+                seen = new LinkedHashSet<String>();
+                seen.add(symbol);
+            }
+            if (seen.contains(next.symbol))
+            {
+                final StringBuilder chain = new StringBuilder();
+                for (final String s : seen)
+                {
+                    chain.append(s).append(" -> ");
+                }
+                chain.append(next.symbol);
+                throw new QCWException("Circular symbol replacement: " + chain);
+            }
+            if (!used.add(next.rule))
+            {
+                break;
+            }
+
+            seen.add(next.symbol);
+            current = next.symbol;
+        }
+
+        return current;
+    }
+
+    /**
+     * Applies the first matching rule to the specified symbol.
+     * 
+     * @return the new symbol and the rule that produced it, or null if no
+     *      rule matches
+     */
+    private Match step(final String symbol)
+    {
+        final String value = exact.get(symbol);
+        if (value != null)
+        {
+            return new Match(value, symbol);
+        }
+
+        // Find the longest matching prefix
+        Node node = prefixes;
+        Node prefix = (node.replacement == null) ? null : node;
+        int prefixLength = 0;
+        for (int i = 0; i < symbol.length(); ++i)
+        {
+            node = node.children.get(Character.valueOf(symbol.charAt(i)));
+            if (node == null)
+            {
+                break;
+            }
+            if (node.replacement != null)
+            {
+                prefix = node;
+                prefixLength = i + 1;
+            }
+        }
+        if (prefix != null)
+        {
+            return new Match(prefix.replacement.replace("*", symbol
+                .substring(prefixLength)), prefix);
+        }
+
+        for (final Map.Entry<Pattern, String> entry : patterns.entrySet())
+        {
+            final Matcher m = entry.getKey().matcher(symbol);
+            if (m.matches())
+            {
+                final StringBuffer sb = new StringBuffer();
+                m.appendReplacement(sb, entry.getValue());
+                return new Match(sb.toString(), entry.getKey());
+            }
+        }
+
+        return null;
+    }
+}
@@ -20,13 +20,9 @@
 
 package org.stuntaz.qcwtool.tools;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.FileInputStream;
+import java.io.File;
 import java.io.IOException;
-import java.util.Arrays;
+import java.nio.ByteBuffer;
 
 import org.eclipse.jface.dialogs.MessageDialog;
 import org.eclipse.swt.SWT;
@@ -41,6 +37,7 @@ import org.eclipse.swt.widgets.TableItem;
 import org.stuntaz.libqcw.BasicQCWVisitor;
 import org.stuntaz.libqcw.QCWException;
 import org.stuntaz.libqcw.blobs.QSection;
+import org.stuntaz.libqcw.blobs.QUtils;
 import org.stuntaz.libqcw.blobs.barchart.BarChartSectionBlob;
 import org.stuntaz.libqcw.blobs.barchart.LineHeaderBlob;
 import org.stuntaz.libqcw.blobs.browser.BrowserBlob;
@@ -56,6 +53,7 @@ import org.stuntaz.libqcw.blobs.tabularbar.TabularBarBlob;
 import org.stuntaz.libqcw.blobs.timeandsales.TimeAndSalesBlob;
 import org.stuntaz.libqcw.blobs.workspace.WorkspaceBlob;
 import org.stuntaz.libqcw.defines.QWorkspaceSection;
+import org.stuntaz.libqcw.stream.RoundTripVerifier;
 
 /**
  * Tool to parse a QCW file, then write it, and verify that what was written
@@ -102,28 +100,15 @@ public final class VerifyTool
     {
         try
         {
-            final FileInputStream fStream = new FileInputStream(fileName);
-            final BufferedInputStream streamBuf = new BufferedInputStream(
-                fStream);
-            final byte[] input = new byte[(int) fStream.getChannel().size()];
-            final int size = streamBuf.read(input);
-            assert (size == fStream.getChannel().size());
-
-            final ByteArrayInputStream stream = new ByteArrayInputStream(input);
+            final ByteBuffer input = QUtils.map(new File(fileName));
             final WorkspaceFileBlob qcw = new WorkspaceFileBlob();
 
-            qcw.parse(stream);
-
-            final ByteArrayOutputStream ostream = new ByteArrayOutputStream(qcw
-                .getWorkspace().getSize());
-            final BufferedOutputStream ostreamBuf = new BufferedOutputStream(
-                ostream);
-
-            qcw.write(ostreamBuf);
+            qcw.parse(input.duplicate());
 
-            ostreamBuf.flush();
+            final RoundTripVerifier.Result result = RoundTripVerifier.verify(
+                qcw, input);
 
-            if (Arrays.equals(input, ostream.toByteArray()))
+            if (result.isIdentical())
             {
                 final String[][] stats = getStatsTableEntries(qcw
                     .getWorkspace());
@@ -174,20 +159,11 @@ public final class VerifyTool
             }
             else
             {
-                System.out.println("l1: " + input.length);
-                System.out.println("l2: " + ostream.toByteArray().length);
-                for (int i = 0; i < input.length; ++i)
-                {
-                    if (input[i] != ostream.toByteArray()[i])
-                    {
-                        System.out.println("MISMATCH at offset 0x"
-                            + Integer.toHexString(i));
-                    }
-                }
+                System.out.println(fileName + ": " + result);
                 final MessageDialog md = new MessageDialog(getComposite()
                     .getShell(), "Verify Failed", null,
-                    "File verification failed!", MessageDialog.ERROR,
-                    new String[] { "OK" }, 0);
+                    "File verification failed: " + result,
+                    MessageDialog.ERROR, new String[] { "OK" }, 0);
                 md.open();
             }
         }
@@ -232,8 +208,12 @@ public final class VerifyTool
         {
             private void updateStats(final QSection section)
             {
-                ++counts[section.getSectionType().ordinal()];
-                sizes[section.getSectionType().ordinal()] += section.getSize();
+                final QWorkspaceSection type = section.getSectionType();
+                if (type != null)
+                {
+                    ++counts[type.ordinal()];
+                    sizes[type.ordinal()] += section.getSize();
+                }
             }
 
             @Override